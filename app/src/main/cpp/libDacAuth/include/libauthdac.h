@@ -72,8 +72,8 @@ typedef struct dacSession {
 
    void *ext; /* External data structure */
 
-   f_dac_ext_t *f_write;
-   f_dac_ext_t *f_read;
+   f_dac_ext_t *f_write; /* writes all len bytes, returns len */
+   f_dac_ext_t *f_read;  /* reads up to len bytes, returns number of bytes read, 0 or less on error */
 
    f_dac_key_verify *f_verify;
 
@@ -37,15 +37,14 @@
 #include "libauthdac.h"
 #include "libdac_internal.h"
 
-static dacStruct_t internal;
-
 /* DAC_ERRORS */int dacInit(dacSession_t *session, void *ext, int type) {
     int ret = DAC_ERROR;
 
     if (NULL != session) {
         memset((void *) session, 0, sizeof(dacSession_t));
 
-        getInternal(session) = &internal;//(dacStruct_t *) malloc(sizeof(dacStruct_t));
+        /* every session has its own state, so several sessions can be open at once */
+        getInternal(session) = (dacStruct_t *) malloc(sizeof(dacStruct_t));
 
         if (NULL != getInternal(session)) {
             memset((void *) getInternal(session), 0, sizeof(dacStruct_t));
@@ -155,7 +154,9 @@ static dacStruct_t internal;
             dacReleaseClient(session);
         }
 
-//      free((void *) getInternal(session));
+        /* keys must not stay in freed memory */
+        memset((void *) getInternal(session), 0, sizeof(dacStruct_t));
+        free((void *) getInternal(session));
         getInternal(session) = NULL;
 
         ret = DAC_OK;
@@ -0,0 +1,159 @@
+/****************************************************************************
+ * This file is part of the IOTA Access distribution
+ * (https://github.com/iotaledger/access)
+ *
+ * Copyright (c) 2020 IOTA Stiftung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  -----------------------------------------------------
+ *
+ * \project IOTA Access Client
+ * \file libdacCrypto.h
+ * \brief
+ * Header file with record layer crypto functions.
+ *
+ * AES-CBC and HMAC-SHA256 of the record layer run on ARMv8 Cryptography
+ * Extensions or AES-NI / SHA-NI when the CPU has them, and on the portable
+ * aes.c and sha256.c otherwise. The backend is selected once, at first use.
+ *
+ * ChaCha20-Poly1305 (RFC 8439) of the AEAD record mode is portable code, so
+ * it is equally fast on devices without AES instructions.
+ *
+ * \notes
+ *
+ * \history
+ * 19.10.2026. Initial version.
+ ****************************************************************************/
+
+#ifndef LIBDACCRYPTO_H_
+#define LIBDACCRYPTO_H_
+
+#include <stdint.h>
+
+#include "aes.h"
+
+//////////////////////////////////////////
+// Macros and defines
+//////////////////////////////////////////
+
+#define DAC_AEAD_KEY_L 32
+#define DAC_AEAD_NONCE_L 12
+#define DAC_AEAD_TAG_L 16
+
+//////////////////////////////////////////
+// Structure definitions
+//////////////////////////////////////////
+
+/* SHA256 states after the inner and the outer padded key block */
+typedef struct dacHmacKey {
+	uint32_t inner[8];
+	uint32_t outer[8];
+} dacHmacKey_t;
+
+//////////////////////////////////////////
+// Function declarations and definitions
+//////////////////////////////////////////
+
+/**
+ * @fn      const char *dacCryptoBackend(void)
+ *
+ * @brief   Function that returns name of the selected backend, e.g. "aes=armv8 sha256=armv8".
+ *
+ *          Setting DAC_CRYPTO_PORTABLE environment variable before first use selects
+ *          the portable backend, which is used for comparison by host tools.
+ *
+ * @return  Backend name.
+ */
+const char *dacCryptoBackend(void);
+
+/**
+ * @fn      void dacCbcEncrypt(AES_ctx_t *ctx, unsigned char *buf, uint32_t length)
+ *
+ * @brief   Function that encrypts buffer in place, same as AES_CBC_encrypt_buffer.
+ *
+ * @param   ctx       AES context, its IV is updated for the next call
+ * @param   buf       Buffer to encrypt
+ * @param   length    Buffer length, multiple of AES_BLOCKLEN
+ */
+void dacCbcEncrypt(AES_ctx_t *ctx, unsigned char *buf, uint32_t length);
+
+/**
+ * @fn      void dacCbcDecrypt(AES_ctx_t *ctx, unsigned char *buf, uint32_t length)
+ *
+ * @brief   Function that decrypts buffer in place, same as AES_CBC_decrypt_buffer.
+ *
+ * @param   ctx       AES context, its IV is updated for the next call
+ * @param   buf       Buffer to decrypt
+ * @param   length    Buffer length, multiple of AES_BLOCKLEN
+ */
+void dacCbcDecrypt(AES_ctx_t *ctx, unsigned char *buf, uint32_t length);
+
+/**
+ * @fn      void dacHmacInit(dacHmacKey_t *hmacKey, const unsigned char *key, uint16_t keyLength)
+ *
+ * @brief   Function that precomputes HMAC-SHA256 inner and outer states of the key.
+ *
+ * @param   hmacKey     Precomputed key
+ * @param   key         Integrity key
+ * @param   keyLength   Integrity key length
+ */
+void dacHmacInit(dacHmacKey_t *hmacKey, const unsigned char *key, uint16_t keyLength);
+
+/**
+ * @fn      void dacHmacCompute(const dacHmacKey_t *hmacKey, unsigned char *mac, const unsigned char *message, uint32_t messageLength)
+ *
+ * @brief   Function that computes HMAC-SHA256 of the message with precomputed key.
+ *
+ * @param   hmacKey         Precomputed key
+ * @param   mac             Computed MAC, 32 bytes
+ * @param   message         Message
+ * @param   messageLength   Message length
+ */
+void dacHmacCompute(const dacHmacKey_t *hmacKey, unsigned char *mac, const unsigned char *message, uint32_t messageLength);
+
+/**
+ * @fn      void dacAeadSeal(const unsigned char *key, const unsigned char *nonce, const unsigned char *aad, uint32_t aadLength, unsigned char *buf, uint32_t length, unsigned char *tag)
+ *
+ * @brief   Function that encrypts buffer in place with ChaCha20-Poly1305.
+ *
+ * @param   key         Key, DAC_AEAD_KEY_L bytes
+ * @param   nonce       Nonce, DAC_AEAD_NONCE_L bytes, never reused with the same key
+ * @param   aad         Additional data that is authenticated, but not encrypted
+ * @param   aadLength   Additional data length
+ * @param   buf         Buffer to encrypt
+ * @param   length      Buffer length
+ * @param   tag         Computed tag, DAC_AEAD_TAG_L bytes
+ */
+void dacAeadSeal(const unsigned char *key, const unsigned char *nonce, const unsigned char *aad, uint32_t aadLength, unsigned char *buf, uint32_t length, unsigned char *tag);
+
+/**
+ * @fn      int dacAeadOpen(const unsigned char *key, const unsigned char *nonce, const unsigned char *aad, uint32_t aadLength, unsigned char *buf, uint32_t length, const unsigned char *tag)
+ *
+ * @brief   Function that verifies tag and decrypts buffer in place with ChaCha20-Poly1305.
+ *
+ *          Buffer is left encrypted if the tag does not match.
+ *
+ * @param   key         Key, DAC_AEAD_KEY_L bytes
+ * @param   nonce       Nonce, DAC_AEAD_NONCE_L bytes
+ * @param   aad         Additional data that is authenticated, but not encrypted
+ * @param   aadLength   Additional data length
+ * @param   buf         Buffer to decrypt
+ * @param   length      Buffer length
+ * @param   tag         Received tag, DAC_AEAD_TAG_L bytes
+ *
+ * @return  0 if it succeeds, 1 if tag does not match.
+ */
+int dacAeadOpen(const unsigned char *key, const unsigned char *nonce, const unsigned char *aad, uint32_t aadLength, unsigned char *buf, uint32_t length, const unsigned char *tag);
+
+#endif /* LIBDACCRYPTO_H_ */
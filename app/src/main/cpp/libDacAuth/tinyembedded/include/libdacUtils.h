@@ -136,6 +136,17 @@ int compute_session_identifier_H(unsigned char *exchange_hash, unsigned char *Vc
      */
 int generate_enc_auth_keys(unsigned char *hash, unsigned char *shared_secret_K, unsigned char *shared_H, char magic_letter);
 
+    /**
+     * @fn  int init_hmac_keys(dacSession_t *dacSession);
+     *
+     * @brief   Function that precomputes HMAC states of both integrity keys, once they are generated
+     *
+     * @param   dacSession    Data structure that contain session related data
+     *
+     * @return  0 if it succeeds, 1 if it fails.
+     */
+int init_hmac_keys(dacSession_t *dacSession);
+
     /**
      * @fn  void print_key(unsigned char *buffer, int length);
      *
@@ -162,6 +173,45 @@ void print_key(unsigned char *buffer, int length);
      */
 int concatinate_strings(unsigned char *concatinatedString, unsigned char *str1, int str1_l, unsigned char * str2, int str2_l);
 
+/**
+ * @fn  ssize_t buffered_read(dacSession_t *session, unsigned char *data, unsigned short length);
+ *
+ * @brief   Function that reads exactly length bytes, through the read ahead buffer of the session
+ *
+ *          f_read is asked for up to READ_AHEAD_L bytes and may return fewer, as recv does.
+ *
+ * @param   session   Data structure that contain session related data
+ * @param   data      Buffer for read data
+ * @param   length    Number of bytes to read
+ *
+ * @return  length if it succeeds, 0 if it fails.
+ */
+ssize_t buffered_read(dacSession_t *session, unsigned char *data, unsigned short length);
+
+/**
+ * @fn  ssize_t deferred_write(dacSession_t *session, const unsigned char *data, unsigned short length);
+ *
+ * @brief   Function that keeps data in the session buffer, to be written together with the next record
+ *
+ *          Data is written by the next dacUtilsWrite, or before the next read at the latest.
+ *
+ * @param   session   Data structure that contain session related data
+ * @param   data      Data to be written
+ * @param   length    Data length
+ *
+ * @return  length if it succeeds, 0 if it fails.
+ */
+ssize_t deferred_write(dacSession_t *session, const unsigned char *data, unsigned short length);
+
+/**
+ * @fn  void release_buffers(dacSession_t *session);
+ *
+ * @brief   Function that wipes and frees buffers of the session
+ *
+ * @param   session   Data structure that contain session related data
+ */
+void release_buffers(dacSession_t *session);
+
 /**
  * @fn  int dacUtilsRead(dacSession_t *session, unsigned char **msg, int length);
  *
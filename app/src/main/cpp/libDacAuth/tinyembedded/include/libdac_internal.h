@@ -47,6 +47,8 @@
 
 #include "sha256.h"
 
+#include "libdacCrypto.h"
+
 #include "libauthdac.h"
 
 #include "../external/ref/apiorig.h"
@@ -75,6 +77,17 @@
 #define MAC_HASH_L 32
 #define HASH_OUTPUT_L 32
 
+/* Bytes requested from f_read at once, so that a whole record usually arrives in one call */
+#define READ_AHEAD_L 4096
+
+/* RECORD_MODES */
+#define RECORD_MODE_LEGACY (0) /* AES-CBC, then HMAC-SHA256 */
+#define RECORD_MODE_AEAD   (1) /* ChaCha20-Poly1305 */
+
+/* Peer supports AEAD records if it sets the top bit of its DH public key, which curve25519 ignores */
+#define DH_AEAD_FLAG_BYTE (DH_PUBLIC_L - 1)
+#define DH_AEAD_FLAG      (0x80)
+
 #define I_PAD (0x36)
 #define O_PAD (0x5C)
 #define SHA256_BLOCK_BYTES 64
@@ -93,6 +106,18 @@
 #define getInternalSeq_num_encrypt(s)        (getInternal(s)->sequence_number_decrypt)
 #define getInternalCtx_encrypt(s)    (getInternal(s)->ctx_encrypt)
 #define getInternalCtx_decrypt(s)    (getInternal(s)->ctx_decrypt)
+#define getInternalHmac_encryption(s)    (getInternal(s)->hmac_encryption)
+#define getInternalHmac_decryption(s)    (getInternal(s)->hmac_decryption)
+#define getInternalRecord_mode(s)    (getInternal(s)->record_mode)
+#define getInternalLegacy_records(s) (getInternal(s)->legacy_records)
+#define getInternalRecord_counter_encrypt(s) (getInternal(s)->record_counter_encrypt)
+#define getInternalRecord_counter_decrypt(s) (getInternal(s)->record_counter_decrypt)
+#define getInternalRead_ahead(s)           (getInternal(s)->read_ahead)
+#define getInternalRead_ahead_start(s)     (getInternal(s)->read_ahead_start)
+#define getInternalRead_ahead_end(s)       (getInternal(s)->read_ahead_end)
+#define getInternalOutput(s)               (getInternal(s)->output)
+#define getInternalOutput_l(s)             (getInternal(s)->output_l)
+#define getInternalOutput_pending(s)       (getInternal(s)->output_pending)
 
 #define getInternalIV_encryption(s)             (getInternal(s)->keys.IV_encryption)
 #define getInternalIV_decryption(s)             (getInternal(s)->keys.IV_decryption)
@@ -135,8 +160,29 @@ struct dacStruct {
 
 	ea_keys_t keys;
 
+	/* integrity keys with HMAC pads hashed once per session */
+	dacHmacKey_t hmac_encryption;
+	dacHmacKey_t hmac_decryption;
+
 	unsigned char sequence_number_encrypt;
 	unsigned char sequence_number_decrypt;
+
+	int record_mode; /*RECORD_MODE_X*/
+	int legacy_records; /* do not offer AEAD records */
+
+	/* nonce counters of AEAD records, unlike sequence numbers they do not wrap */
+	uint64_t record_counter_encrypt;
+	uint64_t record_counter_decrypt;
+
+	/* bytes received ahead of the current read */
+	unsigned char read_ahead[READ_AHEAD_L];
+	unsigned short read_ahead_start;
+	unsigned short read_ahead_end;
+
+	/* output not written yet and record being assembled after it, grows to the largest record of the session */
+	unsigned char *output;
+	size_t output_l;
+	size_t output_pending;
 };
 
 //////////////////////////////////////////
@@ -96,6 +96,12 @@
 	// Client generates p, g, Vc and x and calculates e = gx mod p.
 	int keys_generated = dh_generate_keys(session);
 
+	// Client offers AEAD records, e is signed as part of H, so the offer can not be removed
+	if(!getInternalLegacy_records(session))
+	{
+		getInternalDH_public(session)[DH_AEAD_FLAG_BYTE] |= DH_AEAD_FLAG;
+	}
+
 	// Client sends e to Server.
 //	printf("\nClient sends dh public key to server\n");
 	int write_message = session->f_write(session->ext, getInternalDH_public(session), DH_PUBLIC_L);
@@ -145,7 +151,7 @@
 
 	// Client receives ( Ks || f || s )
 //	printf("\nClient receives Ks || f || s from server\n");
-	ssize_t read_message = session->f_read(session->ext, readBuffer, SIZE_OF_READ_BUFFER);
+	ssize_t read_message = buffered_read(session, readBuffer, SIZE_OF_READ_BUFFER);
     if(read_message != SIZE_OF_READ_BUFFER)
     {
 //        debug("\nERROR\n");
@@ -156,6 +162,13 @@
 	received_dh_public = readBuffer + PUBLIC_KEY_L;
 	s_signed = readBuffer + PUBLIC_KEY_L + DH_PUBLIC_L;
 
+	// Server that supports AEAD records accepts the offer by setting the same bit of f
+	if((getInternalDH_public(session)[DH_AEAD_FLAG_BYTE] & DH_AEAD_FLAG) &&
+		(received_dh_public[DH_AEAD_FLAG_BYTE] & DH_AEAD_FLAG))
+	{
+		getInternalRecord_mode(session) = RECORD_MODE_AEAD;
+	}
+
 	// Client verifies that Ks is public key of the Server
 	int key_verified = session->f_verify(received_dh_public, PUBLIC_KEY_L);
 
@@ -175,7 +188,8 @@
 	int message_signed = compute_signature_s(signature, session, getInternalExchange_hash2(session));
 
 	concatinate_strings(message, getInternalPublic_key(session), PUBLIC_KEY_L, signature, SIGNED_MESSAGE_L);
-	ssize_t message_written = session->f_write(session->ext, message, PUBLIC_KEY_L + SIGNED_MESSAGE_L);
+	// Last flight goes out with the first record, two small writes in a row would wait for delayed ACK
+	ssize_t message_written = deferred_write(session, message, PUBLIC_KEY_L + SIGNED_MESSAGE_L);
 
 	if(	(read_message == SIZE_OF_READ_BUFFER) &&
 		(key_verified == 0) &&
@@ -226,6 +240,7 @@
 	generated += generate_enc_auth_keys(getInternalDecryption_key(session), getInternalSecret_K(session), getInternalExchange_hash(session), 'D');
 	generated += generate_enc_auth_keys(getInternalIntegrity_key_encryption(session), getInternalSecret_K(session), getInternalExchange_hash(session), 'E');
 	generated += generate_enc_auth_keys(getInternalIntegrity_key_decryption(session), getInternalSecret_K(session), getInternalExchange_hash(session), 'F');
+	generated += init_hmac_keys(session);
 
 
 	//AES_init_ctx_iv(&getInternalCtx_encrypt(session), getInternalEncryption_key(session), getInternalIV_encryption(session));
@@ -286,7 +301,7 @@
 
 void dacReleaseClient(dacSession_t *session)
 {
-
+	release_buffers(session);
 }
 
 int dacClientSetOption(dacSession_t *session, const char *key, unsigned char *value)
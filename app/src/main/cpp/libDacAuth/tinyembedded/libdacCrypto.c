@@ -0,0 +1,753 @@
+/*
+* This file is part of the IOTA Access distribution
+* (https://github.com/iotaledger/access)
+*
+* Copyright (c) 2020 IOTA Stiftung.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+/****************************************************************************
+ * \project Decentralized Access Control
+ * \file libdacCrypto.c
+ * \brief
+ * Implementation of record layer crypto backends
+ *
+ * \notes
+ * Hardware backends take round keys from AES_ctx_t as they are, so records
+ * stay byte for byte the same as with aes.c.
+ *
+ * \history
+ * 19.10.2026. Initial version.
+ ****************************************************************************/
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <stdint.h>
+#include <pthread.h>
+
+#include "sha256.h"
+#include "libdacCrypto.h"
+
+#if (defined(__x86_64__) || defined(__i386__)) && (defined(__GNUC__) || defined(__clang__))
+#define DAC_CRYPTO_X86 1
+#include <cpuid.h>
+#include <immintrin.h>
+#endif
+
+#if defined(__aarch64__) && (defined(__ARM_FEATURE_CRYPTO) || (defined(__ARM_FEATURE_AES) && defined(__ARM_FEATURE_SHA2)))
+#define DAC_CRYPTO_ARMV8 1
+#include <arm_neon.h>
+#include <sys/auxv.h>
+#ifndef HWCAP_AES
+#define HWCAP_AES (1 << 3)
+#endif
+#ifndef HWCAP_SHA2
+#define HWCAP_SHA2 (1 << 6)
+#endif
+#endif
+
+#define AES_ROUNDS ((AES_keyExpSize / AES_BLOCKLEN) - 1)
+#define SHA256_BLOCK_BYTES 64
+#define SHA256_HASH_BYTES 32
+
+/* transform of sha256.c, not exported by its header */
+void sha256_transform(SHA256_CTX *ctx, const BYTE data[]);
+
+typedef void (*cbc_function_t)(AES_ctx_t *ctx, unsigned char *buf, uint32_t length);
+typedef void (*sha256_blocks_function_t)(uint32_t state[8], const unsigned char *data, size_t blocks);
+
+static struct {
+	cbc_function_t cbc_encrypt;
+	cbc_function_t cbc_decrypt;
+	sha256_blocks_function_t sha256_blocks;
+	char name[32];
+} backend;
+
+static pthread_once_t backend_once = PTHREAD_ONCE_INIT;
+
+static const uint32_t sha256_k[64] = {
+	0x428a2f98,0x71374491,0xb5c0fbcf,0xe9b5dba5,0x3956c25b,0x59f111f1,0x923f82a4,0xab1c5ed5,
+	0xd807aa98,0x12835b01,0x243185be,0x550c7dc3,0x72be5d74,0x80deb1fe,0x9bdc06a7,0xc19bf174,
+	0xe49b69c1,0xefbe4786,0x0fc19dc6,0x240ca1cc,0x2de92c6f,0x4a7484aa,0x5cb0a9dc,0x76f988da,
+	0x983e5152,0xa831c66d,0xb00327c8,0xbf597fc7,0xc6e00bf3,0xd5a79147,0x06ca6351,0x14292967,
+	0x27b70a85,0x2e1b2138,0x4d2c6dfc,0x53380d13,0x650a7354,0x766a0abb,0x81c2c92e,0x92722c85,
+	0xa2bfe8a1,0xa81a664b,0xc24b8b70,0xc76c51a3,0xd192e819,0xd6990624,0xf40e3585,0x106aa070,
+	0x19a4c116,0x1e376c08,0x2748774c,0x34b0bcb5,0x391c0cb3,0x4ed8aa4a,0x5b9cca4f,0x682e6ff3,
+	0x748f82ee,0x78a5636f,0x84c87814,0x8cc70208,0x90befffa,0xa4506ceb,0xbef9a3f7,0xc67178f2
+};
+
+static const uint32_t sha256_iv[8] = {
+	0x6a09e667,0xbb67ae85,0x3c6ef372,0xa54ff53a,0x510e527f,0x9b05688c,0x1f83d9ab,0x5be0cd19
+};
+
+//////////////////////////////////////
+/// Portable backend
+//////////////////////////////////////
+
+static void sha256_blocks_portable(uint32_t state[8], const unsigned char *data, size_t blocks)
+{
+	SHA256_CTX ctx;
+
+	memcpy(ctx.state, state, sizeof(ctx.state));
+	for (size_t i = 0; i < blocks; i++)
+	{
+		sha256_transform(&ctx, data + i * SHA256_BLOCK_BYTES);
+	}
+	memcpy(state, ctx.state, sizeof(ctx.state));
+}
+
+//////////////////////////////////////
+/// AES-NI and SHA-NI backend
+//////////////////////////////////////
+
+#ifdef DAC_CRYPTO_X86
+
+__attribute__((target("aes,sse2")))
+static void cbc_encrypt_x86(AES_ctx_t *ctx, unsigned char *buf, uint32_t length)
+{
+	__m128i rk[AES_ROUNDS + 1];
+	__m128i iv = _mm_loadu_si128((const __m128i *) ctx->Iv);
+
+	for (int r = 0; r <= AES_ROUNDS; r++)
+	{
+		rk[r] = _mm_loadu_si128((const __m128i *) (ctx->RoundKey + r * AES_BLOCKLEN));
+	}
+
+	for (uint32_t i = 0; i < length; i += AES_BLOCKLEN)
+	{
+		__m128i block = _mm_xor_si128(_mm_loadu_si128((const __m128i *) (buf + i)), iv);
+
+		block = _mm_xor_si128(block, rk[0]);
+		for (int r = 1; r < AES_ROUNDS; r++)
+		{
+			block = _mm_aesenc_si128(block, rk[r]);
+		}
+		block = _mm_aesenclast_si128(block, rk[AES_ROUNDS]);
+
+		_mm_storeu_si128((__m128i *) (buf + i), block);
+		iv = block;
+	}
+
+	_mm_storeu_si128((__m128i *) ctx->Iv, iv);
+}
+
+__attribute__((target("aes,sse2")))
+static void cbc_decrypt_x86(AES_ctx_t *ctx, unsigned char *buf, uint32_t length)
+{
+	__m128i rk[AES_ROUNDS + 1];
+	__m128i iv = _mm_loadu_si128((const __m128i *) ctx->Iv);
+
+	// AESDEC expects round keys of the equivalent inverse cipher
+	rk[0] = _mm_loadu_si128((const __m128i *) ctx->RoundKey);
+	for (int r = 1; r < AES_ROUNDS; r++)
+	{
+		rk[r] = _mm_aesimc_si128(_mm_loadu_si128((const __m128i *) (ctx->RoundKey + r * AES_BLOCKLEN)));
+	}
+	rk[AES_ROUNDS] = _mm_loadu_si128((const __m128i *) (ctx->RoundKey + AES_ROUNDS * AES_BLOCKLEN));
+
+	for (uint32_t i = 0; i < length; i += AES_BLOCKLEN)
+	{
+		__m128i cipher = _mm_loadu_si128((const __m128i *) (buf + i));
+		__m128i block = _mm_xor_si128(cipher, rk[AES_ROUNDS]);
+
+		for (int r = AES_ROUNDS - 1; r > 0; r--)
+		{
+			block = _mm_aesdec_si128(block, rk[r]);
+		}
+		block = _mm_aesdeclast_si128(block, rk[0]);
+
+		_mm_storeu_si128((__m128i *) (buf + i), _mm_xor_si128(block, iv));
+		iv = cipher;
+	}
+
+	_mm_storeu_si128((__m128i *) ctx->Iv, iv);
+}
+
+__attribute__((target("sha,sse4.1")))
+static void sha256_blocks_x86(uint32_t state[8], const unsigned char *data, size_t blocks)
+{
+	const __m128i shuffle = _mm_set_epi64x(0x0c0d0e0f08090a0bULL, 0x0405060700010203ULL);
+	__m128i abef, cdgh, tmp;
+	__m128i w[4];
+
+	// state is kept as ABEF / CDGH, which SHA256RNDS2 works on
+	tmp = _mm_shuffle_epi32(_mm_loadu_si128((const __m128i *) &state[0]), 0xB1);
+	cdgh = _mm_shuffle_epi32(_mm_loadu_si128((const __m128i *) &state[4]), 0x1B);
+	abef = _mm_alignr_epi8(tmp, cdgh, 8);
+	cdgh = _mm_blend_epi16(cdgh, tmp, 0xF0);
+
+	for (size_t b = 0; b < blocks; b++, data += SHA256_BLOCK_BYTES)
+	{
+		__m128i abef_save = abef;
+		__m128i cdgh_save = cdgh;
+
+		for (int g = 0; g < 16; g++)
+		{
+			__m128i *x = &w[g & 3];
+			__m128i wk;
+
+			if (g < 4)
+			{
+				*x = _mm_shuffle_epi8(_mm_loadu_si128((const __m128i *) (data + g * 16)), shuffle);
+			}
+			else
+			{
+				*x = _mm_sha256msg1_epu32(*x, w[(g + 1) & 3]);
+				*x = _mm_add_epi32(*x, _mm_alignr_epi8(w[(g + 3) & 3], w[(g + 2) & 3], 4));
+				*x = _mm_sha256msg2_epu32(*x, w[(g + 3) & 3]);
+			}
+
+			wk = _mm_add_epi32(*x, _mm_loadu_si128((const __m128i *) &sha256_k[g * 4]));
+			cdgh = _mm_sha256rnds2_epu32(cdgh, abef, wk);
+			abef = _mm_sha256rnds2_epu32(abef, cdgh, _mm_shuffle_epi32(wk, 0x0E));
+		}
+
+		abef = _mm_add_epi32(abef, abef_save);
+		cdgh = _mm_add_epi32(cdgh, cdgh_save);
+	}
+
+	tmp = _mm_shuffle_epi32(abef, 0x1B);
+	cdgh = _mm_shuffle_epi32(cdgh, 0xB1);
+	_mm_storeu_si128((__m128i *) &state[0], _mm_blend_epi16(tmp, cdgh, 0xF0));
+	_mm_storeu_si128((__m128i *) &state[4], _mm_alignr_epi8(cdgh, tmp, 8));
+}
+
+#endif /* DAC_CRYPTO_X86 */
+
+//////////////////////////////////////
+/// ARMv8 Cryptography Extensions backend
+//////////////////////////////////////
+
+#ifdef DAC_CRYPTO_ARMV8
+
+static void cbc_encrypt_armv8(AES_ctx_t *ctx, unsigned char *buf, uint32_t length)
+{
+	uint8x16_t rk[AES_ROUNDS + 1];
+	uint8x16_t iv = vld1q_u8(ctx->Iv);
+
+	for (int r = 0; r <= AES_ROUNDS; r++)
+	{
+		rk[r] = vld1q_u8(ctx->RoundKey + r * AES_BLOCKLEN);
+	}
+
+	for (uint32_t i = 0; i < length; i += AES_BLOCKLEN)
+	{
+		// AESE adds the round key before SubBytes and ShiftRows
+		uint8x16_t block = veorq_u8(vld1q_u8(buf + i), iv);
+
+		for (int r = 0; r < AES_ROUNDS - 1; r++)
+		{
+			block = vaesmcq_u8(vaeseq_u8(block, rk[r]));
+		}
+		block = veorq_u8(vaeseq_u8(block, rk[AES_ROUNDS - 1]), rk[AES_ROUNDS]);
+
+		vst1q_u8(buf + i, block);
+		iv = block;
+	}
+
+	vst1q_u8(ctx->Iv, iv);
+}
+
+static void cbc_decrypt_armv8(AES_ctx_t *ctx, unsigned char *buf, uint32_t length)
+{
+	uint8x16_t rk[AES_ROUNDS + 1];
+	uint8x16_t iv = vld1q_u8(ctx->Iv);
+
+	// AESD expects round keys of the equivalent inverse cipher
+	rk[0] = vld1q_u8(ctx->RoundKey);
+	for (int r = 1; r < AES_ROUNDS; r++)
+	{
+		rk[r] = vaesimcq_u8(vld1q_u8(ctx->RoundKey + r * AES_BLOCKLEN));
+	}
+	rk[AES_ROUNDS] = vld1q_u8(ctx->RoundKey + AES_ROUNDS * AES_BLOCKLEN);
+
+	for (uint32_t i = 0; i < length; i += AES_BLOCKLEN)
+	{
+		uint8x16_t cipher = vld1q_u8(buf + i);
+		uint8x16_t block = vaesdq_u8(cipher, rk[AES_ROUNDS]);
+
+		for (int r = AES_ROUNDS - 1; r > 0; r--)
+		{
+			block = vaesdq_u8(vaesimcq_u8(block), rk[r]);
+		}
+		block = veorq_u8(block, rk[0]);
+
+		vst1q_u8(buf + i, veorq_u8(block, iv));
+		iv = cipher;
+	}
+
+	vst1q_u8(ctx->Iv, iv);
+}
+
+static void sha256_blocks_armv8(uint32_t state[8], const unsigned char *data, size_t blocks)
+{
+	uint32x4_t abcd = vld1q_u32(&state[0]);
+	uint32x4_t efgh = vld1q_u32(&state[4]);
+	uint32x4_t w[4];
+
+	for (size_t b = 0; b < blocks; b++, data += SHA256_BLOCK_BYTES)
+	{
+		uint32x4_t abcd_save = abcd;
+		uint32x4_t efgh_save = efgh;
+
+		for (int g = 0; g < 16; g++)
+		{
+			uint32x4_t wk;
+			uint32x4_t tmp;
+
+			if (g < 4)
+			{
+				w[g] = vreinterpretq_u32_u8(vrev32q_u8(vld1q_u8(data + g * 16)));
+			}
+			else
+			{
+				w[g & 3] = vsha256su1q_u32(vsha256su0q_u32(w[g & 3], w[(g + 1) & 3]), w[(g + 2) & 3], w[(g + 3) & 3]);
+			}
+
+			wk = vaddq_u32(w[g & 3], vld1q_u32(&sha256_k[g * 4]));
+			tmp = abcd;
+			abcd = vsha256hq_u32(abcd, efgh, wk);
+			efgh = vsha256h2q_u32(efgh, tmp, wk);
+		}
+
+		abcd = vaddq_u32(abcd, abcd_save);
+		efgh = vaddq_u32(efgh, efgh_save);
+	}
+
+	vst1q_u32(&state[0], abcd);
+	vst1q_u32(&state[4], efgh);
+}
+
+#endif /* DAC_CRYPTO_ARMV8 */
+
+//////////////////////////////////////
+/// Backend selection
+//////////////////////////////////////
+
+static void select_backend(void)
+{
+	const char *aes_name = "portable";
+	const char *sha_name = "portable";
+
+	backend.cbc_encrypt = AES_CBC_encrypt_buffer;
+	backend.cbc_decrypt = AES_CBC_decrypt_buffer;
+	backend.sha256_blocks = sha256_blocks_portable;
+
+	if (NULL == getenv("DAC_CRYPTO_PORTABLE"))
+	{
+#ifdef DAC_CRYPTO_X86
+		unsigned int eax, ebx, ecx, edx;
+
+		if (__get_cpuid(1, &eax, &ebx, &ecx, &edx))
+		{
+			int has_aes = (ecx >> 25) & 1;
+			int has_sse41 = (ecx >> 19) & 1;
+			int has_sha = 0;
+
+			if (__get_cpuid_count(7, 0, &eax, &ebx, &ecx, &edx))
+			{
+				has_sha = (ebx >> 29) & 1;
+			}
+
+			if (has_aes)
+			{
+				backend.cbc_encrypt = cbc_encrypt_x86;
+				backend.cbc_decrypt = cbc_decrypt_x86;
+				aes_name = "aes-ni";
+			}
+			if (has_sha && has_sse41)
+			{
+				backend.sha256_blocks = sha256_blocks_x86;
+				sha_name = "sha-ni";
+			}
+		}
+#endif
+#ifdef DAC_CRYPTO_ARMV8
+		unsigned long hwcap = getauxval(AT_HWCAP);
+
+		if (hwcap & HWCAP_AES)
+		{
+			backend.cbc_encrypt = cbc_encrypt_armv8;
+			backend.cbc_decrypt = cbc_decrypt_armv8;
+			aes_name = "armv8";
+		}
+		if (hwcap & HWCAP_SHA2)
+		{
+			backend.sha256_blocks = sha256_blocks_armv8;
+			sha_name = "armv8";
+		}
+#endif
+	}
+
+	snprintf(backend.name, sizeof(backend.name), "aes=%s sha256=%s", aes_name, sha_name);
+}
+
+static void ensure_backend(void)
+{
+	pthread_once(&backend_once, select_backend);
+}
+
+const char *dacCryptoBackend(void)
+{
+	ensure_backend();
+	return backend.name;
+}
+
+//////////////////////////////////////
+/// AES-CBC
+//////////////////////////////////////
+
+void dacCbcEncrypt(AES_ctx_t *ctx, unsigned char *buf, uint32_t length)
+{
+	ensure_backend();
+	backend.cbc_encrypt(ctx, buf, length);
+}
+
+void dacCbcDecrypt(AES_ctx_t *ctx, unsigned char *buf, uint32_t length)
+{
+	ensure_backend();
+	backend.cbc_decrypt(ctx, buf, length);
+}
+
+//////////////////////////////////////
+/// HMAC-SHA256
+//////////////////////////////////////
+
+/* Hashes remaining data and padding onto state which already absorbed prefixLength bytes */
+static void sha256_finish(uint32_t state[8], uint64_t prefixLength, const unsigned char *data, size_t length, unsigned char *hash)
+{
+	unsigned char tail[2 * SHA256_BLOCK_BYTES];
+	size_t full_blocks = length / SHA256_BLOCK_BYTES;
+	size_t rest = length - full_blocks * SHA256_BLOCK_BYTES;
+	size_t tail_length = (rest < SHA256_BLOCK_BYTES - 8) ? SHA256_BLOCK_BYTES : 2 * SHA256_BLOCK_BYTES;
+	uint64_t bit_length = (prefixLength + length) * 8;
+
+	// data may overlap hash, so it is consumed before the hash is written
+	memcpy(tail, data + full_blocks * SHA256_BLOCK_BYTES, rest);
+	tail[rest] = 0x80;
+	memset(tail + rest + 1, 0, tail_length - rest - 1);
+	for (int i = 0; i < 8; i++)
+	{
+		tail[tail_length - 1 - i] = (unsigned char) (bit_length >> (8 * i));
+	}
+
+	backend.sha256_blocks(state, data, full_blocks);
+	backend.sha256_blocks(state, tail, tail_length / SHA256_BLOCK_BYTES);
+
+	for (int i = 0; i < 8; i++)
+	{
+		hash[4 * i] = (unsigned char) (state[i] >> 24);
+		hash[4 * i + 1] = (unsigned char) (state[i] >> 16);
+		hash[4 * i + 2] = (unsigned char) (state[i] >> 8);
+		hash[4 * i + 3] = (unsigned char) state[i];
+	}
+}
+
+void dacHmacInit(dacHmacKey_t *hmacKey, const unsigned char *key, uint16_t keyLength)
+{
+	unsigned char kh[SHA256_HASH_BYTES];
+	unsigned char kx[SHA256_BLOCK_BYTES];
+	const unsigned char *internal_key = key;
+	size_t internal_key_l = keyLength;
+
+	ensure_backend();
+
+	if (keyLength > SHA256_BLOCK_BYTES)
+	{
+		memcpy(hmacKey->inner, sha256_iv, sizeof(sha256_iv));
+		sha256_finish(hmacKey->inner, 0, key, keyLength, kh);
+
+		internal_key = kh;
+		internal_key_l = SHA256_HASH_BYTES;
+	}
+
+	for (size_t i = 0; i < internal_key_l; i++) kx[i] = 0x36 ^ internal_key[i];
+	for (size_t i = internal_key_l; i < SHA256_BLOCK_BYTES; i++) kx[i] = 0x36;
+	memcpy(hmacKey->inner, sha256_iv, sizeof(sha256_iv));
+	backend.sha256_blocks(hmacKey->inner, kx, 1);
+
+	for (size_t i = 0; i < internal_key_l; i++) kx[i] = 0x5C ^ internal_key[i];
+	for (size_t i = internal_key_l; i < SHA256_BLOCK_BYTES; i++) kx[i] = 0x5C;
+	memcpy(hmacKey->outer, sha256_iv, sizeof(sha256_iv));
+	backend.sha256_blocks(hmacKey->outer, kx, 1);
+
+	memset(kx, 0, sizeof(kx));
+	memset(kh, 0, sizeof(kh));
+}
+
+void dacHmacCompute(const dacHmacKey_t *hmacKey, unsigned char *mac, const unsigned char *message, uint32_t messageLength)
+{
+	uint32_t state[8];
+
+	ensure_backend();
+
+	memcpy(state, hmacKey->inner, sizeof(state));
+	sha256_finish(state, SHA256_BLOCK_BYTES, message, messageLength, mac);
+
+	memcpy(state, hmacKey->outer, sizeof(state));
+	sha256_finish(state, SHA256_BLOCK_BYTES, mac, SHA256_HASH_BYTES, mac);
+}
+
+//////////////////////////////////////
+/// ChaCha20-Poly1305
+//////////////////////////////////////
+
+#define LOAD32_LE(p) ((uint32_t) (p)[0] | ((uint32_t) (p)[1] << 8) | ((uint32_t) (p)[2] << 16) | ((uint32_t) (p)[3] << 24))
+#define ROTL32(v, n) (((v) << (n)) | ((v) >> (32 - (n))))
+#define QUARTER_ROUND(a, b, c, d) \
+	a += b; d ^= a; d = ROTL32(d, 16); \
+	c += d; b ^= c; b = ROTL32(b, 12); \
+	a += b; d ^= a; d = ROTL32(d, 8); \
+	c += d; b ^= c; b = ROTL32(b, 7);
+
+typedef struct poly1305_state {
+	uint32_t r[5];
+	uint32_t h[5];
+	uint32_t pad[4];
+} poly1305_state_t;
+
+static void store32_le(unsigned char *p, uint32_t v)
+{
+	p[0] = (unsigned char) v;
+	p[1] = (unsigned char) (v >> 8);
+	p[2] = (unsigned char) (v >> 16);
+	p[3] = (unsigned char) (v >> 24);
+}
+
+static void chacha20_block(const uint32_t input[16], unsigned char out[64])
+{
+	uint32_t x[16];
+
+	memcpy(x, input, sizeof(x));
+	for (int i = 0; i < 10; i++)
+	{
+		QUARTER_ROUND(x[0], x[4], x[8], x[12])
+		QUARTER_ROUND(x[1], x[5], x[9], x[13])
+		QUARTER_ROUND(x[2], x[6], x[10], x[14])
+		QUARTER_ROUND(x[3], x[7], x[11], x[15])
+		QUARTER_ROUND(x[0], x[5], x[10], x[15])
+		QUARTER_ROUND(x[1], x[6], x[11], x[12])
+		QUARTER_ROUND(x[2], x[7], x[8], x[13])
+		QUARTER_ROUND(x[3], x[4], x[9], x[14])
+	}
+	for (int i = 0; i < 16; i++)
+	{
+		store32_le(out + 4 * i, x[i] + input[i]);
+	}
+}
+
+static void chacha20_init(uint32_t state[16], const unsigned char *key, const unsigned char *nonce, uint32_t counter)
+{
+	state[0] = 0x61707865;
+	state[1] = 0x3320646e;
+	state[2] = 0x79622d32;
+	state[3] = 0x6b206574;
+	for (int i = 0; i < 8; i++)
+	{
+		state[4 + i] = LOAD32_LE(key + 4 * i);
+	}
+	state[12] = counter;
+	state[13] = LOAD32_LE(nonce);
+	state[14] = LOAD32_LE(nonce + 4);
+	state[15] = LOAD32_LE(nonce + 8);
+}
+
+static void chacha20_xor(uint32_t state[16], unsigned char *buf, uint32_t length)
+{
+	unsigned char stream[64];
+
+	while (length > 0)
+	{
+		uint32_t n = length < sizeof(stream) ? length : sizeof(stream);
+
+		chacha20_block(state, stream);
+		state[12]++;
+		for (uint32_t i = 0; i < n; i++)
+		{
+			buf[i] ^= stream[i];
+		}
+		buf += n;
+		length -= n;
+	}
+
+	memset(stream, 0, sizeof(stream));
+}
+
+static void poly1305_init(poly1305_state_t *st, const unsigned char key[32])
+{
+	// r is clamped as required by Poly1305
+	st->r[0] = (LOAD32_LE(key + 0)) & 0x3ffffff;
+	st->r[1] = (LOAD32_LE(key + 3) >> 2) & 0x3ffff03;
+	st->r[2] = (LOAD32_LE(key + 6) >> 4) & 0x3ffc0ff;
+	st->r[3] = (LOAD32_LE(key + 9) >> 6) & 0x3f03fff;
+	st->r[4] = (LOAD32_LE(key + 12) >> 8) & 0x00fffff;
+	memset(st->h, 0, sizeof(st->h));
+	for (int i = 0; i < 4; i++)
+	{
+		st->pad[i] = LOAD32_LE(key + 16 + 4 * i);
+	}
+}
+
+/* Absorbs 16 byte blocks, the last one zero padded as AEAD construction requires */
+static void poly1305_update(poly1305_state_t *st, const unsigned char *m, uint32_t length)
+{
+	const uint32_t r0 = st->r[0], r1 = st->r[1], r2 = st->r[2], r3 = st->r[3], r4 = st->r[4];
+	const uint32_t s1 = r1 * 5, s2 = r2 * 5, s3 = r3 * 5, s4 = r4 * 5;
+	uint32_t h0 = st->h[0], h1 = st->h[1], h2 = st->h[2], h3 = st->h[3], h4 = st->h[4];
+	unsigned char block[16];
+
+	while (length > 0)
+	{
+		const unsigned char *b = m;
+		uint64_t d0, d1, d2, d3, d4;
+		uint32_t c;
+
+		if (length < 16)
+		{
+			memset(block, 0, sizeof(block));
+			memcpy(block, m, length);
+			b = block;
+		}
+
+		h0 += (LOAD32_LE(b + 0)) & 0x3ffffff;
+		h1 += (LOAD32_LE(b + 3) >> 2) & 0x3ffffff;
+		h2 += (LOAD32_LE(b + 6) >> 4) & 0x3ffffff;
+		h3 += (LOAD32_LE(b + 9) >> 6) & 0x3ffffff;
+		h4 += (LOAD32_LE(b + 12) >> 8) | (1 << 24);
+
+		d0 = (uint64_t) h0 * r0 + (uint64_t) h1 * s4 + (uint64_t) h2 * s3 + (uint64_t) h3 * s2 + (uint64_t) h4 * s1;
+		d1 = (uint64_t) h0 * r1 + (uint64_t) h1 * r0 + (uint64_t) h2 * s4 + (uint64_t) h3 * s3 + (uint64_t) h4 * s2;
+		d2 = (uint64_t) h0 * r2 + (uint64_t) h1 * r1 + (uint64_t) h2 * r0 + (uint64_t) h3 * s4 + (uint64_t) h4 * s3;
+		d3 = (uint64_t) h0 * r3 + (uint64_t) h1 * r2 + (uint64_t) h2 * r1 + (uint64_t) h3 * r0 + (uint64_t) h4 * s4;
+		d4 = (uint64_t) h0 * r4 + (uint64_t) h1 * r3 + (uint64_t) h2 * r2 + (uint64_t) h3 * r1 + (uint64_t) h4 * r0;
+
+		c = (uint32_t) (d0 >> 26); h0 = (uint32_t) d0 & 0x3ffffff;
+		d1 += c; c = (uint32_t) (d1 >> 26); h1 = (uint32_t) d1 & 0x3ffffff;
+		d2 += c; c = (uint32_t) (d2 >> 26); h2 = (uint32_t) d2 & 0x3ffffff;
+		d3 += c; c = (uint32_t) (d3 >> 26); h3 = (uint32_t) d3 & 0x3ffffff;
+		d4 += c; c = (uint32_t) (d4 >> 26); h4 = (uint32_t) d4 & 0x3ffffff;
+		h0 += c * 5; c = h0 >> 26; h0 &= 0x3ffffff;
+		h1 += c;
+
+		if (length < 16)
+		{
+			break;
+		}
+		m += 16;
+		length -= 16;
+	}
+
+	st->h[0] = h0; st->h[1] = h1; st->h[2] = h2; st->h[3] = h3; st->h[4] = h4;
+}
+
+static void poly1305_finish(poly1305_state_t *st, unsigned char mac[16])
+{
+	uint32_t h0 = st->h[0], h1 = st->h[1], h2 = st->h[2], h3 = st->h[3], h4 = st->h[4];
+	uint32_t g0, g1, g2, g3, g4, c, mask;
+	uint64_t f;
+
+	c = h1 >> 26; h1 &= 0x3ffffff;
+	h2 += c; c = h2 >> 26; h2 &= 0x3ffffff;
+	h3 += c; c = h3 >> 26; h3 &= 0x3ffffff;
+	h4 += c; c = h4 >> 26; h4 &= 0x3ffffff;
+	h0 += c * 5; c = h0 >> 26; h0 &= 0x3ffffff;
+	h1 += c;
+
+	// h - p, selected in constant time if h >= p
+	g0 = h0 + 5; c = g0 >> 26; g0 &= 0x3ffffff;
+	g1 = h1 + c; c = g1 >> 26; g1 &= 0x3ffffff;
+	g2 = h2 + c; c = g2 >> 26; g2 &= 0x3ffffff;
+	g3 = h3 + c; c = g3 >> 26; g3 &= 0x3ffffff;
+	g4 = h4 + c - (1UL << 26);
+
+	mask = (g4 >> 31) - 1;
+	g0 &= mask; g1 &= mask; g2 &= mask; g3 &= mask; g4 &= mask;
+	mask = ~mask;
+	h0 = (h0 & mask) | g0;
+	h1 = (h1 & mask) | g1;
+	h2 = (h2 & mask) | g2;
+	h3 = (h3 & mask) | g3;
+	h4 = (h4 & mask) | g4;
+
+	h0 = (h0) | (h1 << 26);
+	h1 = (h1 >> 6) | (h2 << 20);
+	h2 = (h2 >> 12) | (h3 << 14);
+	h3 = (h3 >> 18) | (h4 << 8);
+
+	f = (uint64_t) h0 + st->pad[0]; store32_le(mac + 0, (uint32_t) f);
+	f = (uint64_t) h1 + st->pad[1] + (f >> 32); store32_le(mac + 4, (uint32_t) f);
+	f = (uint64_t) h2 + st->pad[2] + (f >> 32); store32_le(mac + 8, (uint32_t) f);
+	f = (uint64_t) h3 + st->pad[3] + (f >> 32); store32_le(mac + 12, (uint32_t) f);
+
+	memset(st, 0, sizeof(*st));
+}
+
+static void aead_tag(uint32_t chacha[16], const unsigned char *aad, uint32_t aadLength, const unsigned char *cipher, uint32_t length, unsigned char *tag)
+{
+	unsigned char poly_key[64];
+	unsigned char lengths[16];
+	poly1305_state_t poly;
+
+	// block 0 of the key stream is the one-time Poly1305 key
+	chacha[12] = 0;
+	chacha20_block(chacha, poly_key);
+	poly1305_init(&poly, poly_key);
+
+	poly1305_update(&poly, aad, aadLength);
+	poly1305_update(&poly, cipher, length);
+	store32_le(lengths, aadLength);
+	store32_le(lengths + 4, 0);
+	store32_le(lengths + 8, length);
+	store32_le(lengths + 12, 0);
+	poly1305_update(&poly, lengths, sizeof(lengths));
+	poly1305_finish(&poly, tag);
+
+	memset(poly_key, 0, sizeof(poly_key));
+}
+
+void dacAeadSeal(const unsigned char *key, const unsigned char *nonce, const unsigned char *aad, uint32_t aadLength, unsigned char *buf, uint32_t length, unsigned char *tag)
+{
+	uint32_t chacha[16];
+
+	chacha20_init(chacha, key, nonce, 1);
+	chacha20_xor(chacha, buf, length);
+	aead_tag(chacha, aad, aadLength, buf, length, tag);
+
+	memset(chacha, 0, sizeof(chacha));
+}
+
+int dacAeadOpen(const unsigned char *key, const unsigned char *nonce, const unsigned char *aad, uint32_t aadLength, unsigned char *buf, uint32_t length, const unsigned char *tag)
+{
+	uint32_t chacha[16];
+	unsigned char expected[DAC_AEAD_TAG_L];
+	unsigned char diff = 0;
+
+	chacha20_init(chacha, key, nonce, 0);
+	aead_tag(chacha, aad, aadLength, buf, length, expected);
+
+	for (int i = 0; i < DAC_AEAD_TAG_L; i++)
+	{
+		diff |= expected[i] ^ tag[i];
+	}
+
+	if (0 == diff)
+	{
+		chacha[12] = 1;
+		chacha20_xor(chacha, buf, length);
+	}
+
+	memset(chacha, 0, sizeof(chacha));
+
+	return (0 == diff) ? 0 : 1;
+}
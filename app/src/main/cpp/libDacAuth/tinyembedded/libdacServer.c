@@ -116,11 +116,18 @@
 	unsigned char *signature;
 
 	// Server receives e from Client.
-	int read_message = session->f_read(session->ext, received_dh_public, DH_PUBLIC_L);
+	int read_message = buffered_read(session, received_dh_public, DH_PUBLIC_L);
 
 	// Server generates y and computes f
 	int keys_generated = dh_generate_keys(session);
 
+	// Server accepts AEAD records if Client offers them in e
+	if(!getInternalLegacy_records(session) && (received_dh_public[DH_AEAD_FLAG_BYTE] & DH_AEAD_FLAG))
+	{
+		getInternalDH_public(session)[DH_AEAD_FLAG_BYTE] |= DH_AEAD_FLAG;
+		getInternalRecord_mode(session) = RECORD_MODE_AEAD;
+	}
+
 	// Server computes K = ey mod p
 	int secret_computed = dh_compute_secret_K(session, received_dh_public);
 
@@ -142,7 +149,7 @@
 	int write_message = session->f_write(session->ext, writeBuffer, SIZE_OF_WRITE_BUFFER);
 
 	// Server receives ( Kc || sc )
-	int read_second_message = session->f_read(session->ext, readBuffer, PUBLIC_KEY_L + SIGNED_MESSAGE_L);
+	int read_second_message = buffered_read(session, readBuffer, PUBLIC_KEY_L + SIGNED_MESSAGE_L);
 	client_public_key = readBuffer;
 	signature = readBuffer + PUBLIC_KEY_L;
 
@@ -195,6 +202,7 @@
 	generated += generate_enc_auth_keys(getInternalEncryption_key(session), getInternalSecret_K(session), getInternalExchange_hash(session), 'D');
 	generated += generate_enc_auth_keys(getInternalIntegrity_key_decryption(session), getInternalSecret_K(session), getInternalExchange_hash(session), 'E');
 	generated += generate_enc_auth_keys(getInternalIntegrity_key_encryption(session), getInternalSecret_K(session), getInternalExchange_hash(session), 'F');
+	generated += init_hmac_keys(session);
 
 	//AES_init_ctx_iv(&getInternalCtx_encrypt(session), getInternalEncryption_key(session), getInternalIV_encryption(session));
 	   //AES_init_ctx_iv(&getInternalCtx_decrypt(session), getInternalDecryption_key(session), getInternalIV_decryption(session));
@@ -252,7 +260,7 @@
 
 void dacReleaseServer(dacSession_t *session)
 {
-
+	release_buffers(session);
 }
 
 int dacServerSetOption(dacSession_t *session, const char *key, unsigned char *value)
@@ -167,7 +167,7 @@ int concatinate_strings(unsigned char *concatinatedString, unsigned char *str1,
 int aes_encrypt(AES_ctx_t *ctx, unsigned char *message, int length)
 {
 	//debug("Encrypting message");
-	AES_CBC_encrypt_buffer(ctx, message, length);
+	dacCbcEncrypt(ctx, message, length);
 	//debug("Message encrypted");
 //	print_key(message, length);
 
@@ -177,7 +177,7 @@ int aes_encrypt(AES_ctx_t *ctx, unsigned char *message, int length)
 int aes_decrypt(AES_ctx_t *ctx, unsigned char *message, int length)
 {
 	//debug("Decrypting message");
-	AES_CBC_decrypt_buffer(ctx, message, length);
+	dacCbcDecrypt(ctx, message, length);
 	//debug("Message decrypted");
 //	print_key(message, length);
 
@@ -186,53 +186,170 @@ int aes_decrypt(AES_ctx_t *ctx, unsigned char *message, int length)
 
 void hmac_sha256(unsigned char *mac, unsigned char *integrityKey, uint16_t keyLength, unsigned char *message, uint32_t messageLength)
 {
-	SHA256_CTX ss;
-	unsigned char kh[HASH_OUTPUT_L];
-	unsigned char key[keyLength];
-	unsigned char *internal_key;
-	size_t internal_key_l = 0;
+	dacHmacKey_t key;
 
-	memcpy(key, integrityKey, keyLength);
+	dacHmacInit(&key, integrityKey, keyLength);
+	dacHmacCompute(&key, mac, message, messageLength);
 
-	if (keyLength > SHA256_BLOCK_BYTES) {
-		sha256_init (&ss);
-		sha256_update (&ss, key, keyLength);
-		sha256_final (&ss, kh);
+	memset(&key, 0, sizeof(key));
+}
+
+int init_hmac_keys(dacSession_t *session)
+{
+	dacHmacInit(&getInternalHmac_encryption(session), getInternalIntegrity_key_encryption(session), INTEGRITY_KEY_L);
+	dacHmacInit(&getInternalHmac_decryption(session), getInternalIntegrity_key_decryption(session), INTEGRITY_KEY_L);
+
+	return 0;
+}
 
-		internal_key = kh;
-		internal_key_l = HASH_OUTPUT_L;
+/* Returns space for length bytes after the output that is already waiting in the session buffer */
+static unsigned char *output_reserve(dacSession_t *session, size_t length)
+{
+	size_t needed = getInternalOutput_pending(session) + length;
+
+	if(getInternalOutput_l(session) < needed)
+	{
+		unsigned char *buffer = malloc(needed);
+
+		if(NULL == buffer)
+		{
+			return NULL;
+		}
+
+		if(NULL != getInternalOutput(session))
+		{
+			memcpy(buffer, getInternalOutput(session), getInternalOutput_pending(session));
+			memset(getInternalOutput(session), 0, getInternalOutput_l(session));
+			free(getInternalOutput(session));
+		}
+
+		getInternalOutput(session) = buffer;
+		getInternalOutput_l(session) = needed;
 	}
-	else
+
+	return getInternalOutput(session) + getInternalOutput_pending(session);
+}
+
+/* Writes waiting output together with length bytes assembled after it */
+static int output_flush(dacSession_t *session, size_t length)
+{
+	size_t total = getInternalOutput_pending(session) + length;
+	size_t written = 0;
+
+	getInternalOutput_pending(session) = 0;
+
+	while(written < total)
+	{
+		unsigned short chunk = (total - written > 0xFFFF) ? 0xFFFF : (unsigned short) (total - written);
+		ssize_t n = session->f_write(session->ext, getInternalOutput(session) + written, chunk);
+
+		if(n != chunk)
+		{
+			return 1;
+		}
+		written += chunk;
+	}
+
+	return 0;
+}
+
+ssize_t deferred_write(dacSession_t *session, const unsigned char *data, unsigned short length)
+{
+	unsigned char *buffer = output_reserve(session, length);
+
+	if(NULL == buffer)
 	{
-		internal_key = key;
-		internal_key_l = keyLength;
+		return 0;
 	}
 
-	unsigned char kx[SHA256_BLOCK_BYTES];
-	for (size_t i = 0; i < internal_key_l; i++) kx[i] = I_PAD ^ internal_key[i];
-	for (size_t i = internal_key_l; i < SHA256_BLOCK_BYTES; i++) kx[i] = I_PAD ^ 0;
+	memcpy(buffer, data, length);
+	getInternalOutput_pending(session) += length;
 
-	sha256_init (&ss);
-	sha256_update (&ss, kx, SHA256_BLOCK_BYTES);
-	sha256_update (&ss, message, messageLength);
-	sha256_final (&ss, mac);
+	return length;
+}
 
-	for (size_t i = 0; i < internal_key_l; i++) kx[i] = O_PAD ^ internal_key[i];
-	for (size_t i = internal_key_l; i < SHA256_BLOCK_BYTES; i++) kx[i] = O_PAD ^ 0;
+void release_buffers(dacSession_t *session)
+{
+	if(NULL != getInternalOutput(session))
+	{
+		memset(getInternalOutput(session), 0, getInternalOutput_l(session));
+		free(getInternalOutput(session));
+	}
 
-	sha256_init (&ss);
-	sha256_update (&ss, kx, SHA256_BLOCK_BYTES);
-	sha256_update (&ss, mac, HASH_OUTPUT_L);
-	sha256_final (&ss, mac);
+	getInternalOutput(session) = NULL;
+	getInternalOutput_l(session) = 0;
+	getInternalOutput_pending(session) = 0;
 }
 
-int dacUtilsWrite(dacSession_t *session, const unsigned char *msg, unsigned short messageLength)
+ssize_t buffered_read(dacSession_t *session, unsigned char *data, unsigned short length)
 {
-    unsigned short encrypted_data_length = ((messageLength + 2 + 15) / 16 ) * 16; // determine size of encrypted data with padding
-    unsigned short buffer_length = encrypted_data_length + MAC_HASH_L + 2 + 1; //2 bytes for encrypted data length 1 byte for sequence_number
+	unsigned short copied = 0;
+
+	// peer may wait for the deferred output before it answers
+	if((getInternalOutput_pending(session) > 0) && (output_flush(session, 0) != 0))
+	{
+		return 0;
+	}
+
+	while(copied < length)
+	{
+		unsigned short available = getInternalRead_ahead_end(session) - getInternalRead_ahead_start(session);
+		unsigned short missing = length - copied;
+		ssize_t n;
+
+		if(available > 0)
+		{
+			unsigned short chunk = (available < missing) ? available : missing;
+
+			memcpy(data + copied, getInternalRead_ahead(session) + getInternalRead_ahead_start(session), chunk);
+			getInternalRead_ahead_start(session) += chunk;
+			copied += chunk;
+			continue;
+		}
+
+		if(missing >= READ_AHEAD_L)
+		{
+			// large payloads go straight to the destination, without a copy
+			n = session->f_read(session->ext, data + copied, missing);
+			if(n <= 0)
+			{
+				return 0;
+			}
+			copied += n;
+		}
+		else
+		{
+			n = session->f_read(session->ext, getInternalRead_ahead(session), READ_AHEAD_L);
+			if(n <= 0)
+			{
+				return 0;
+			}
+			getInternalRead_ahead_start(session) = 0;
+			getInternalRead_ahead_end(session) = n;
+		}
+	}
+
+	return length;
+}
+
+static int legacy_record_write(dacSession_t *session, const unsigned char *msg, unsigned short messageLength)
+{
+    size_t encrypted_data_length = (((size_t) messageLength + 2 + 15) / 16 ) * 16; // determine size of encrypted data with padding
+    size_t buffer_length = encrypted_data_length + MAC_HASH_L + 2 + 1; //2 bytes for encrypted data length 1 byte for sequence_number
     unsigned char mac[MAC_HASH_L];
 
-    unsigned char buffer[buffer_length];
+    // encrypted data length must fit the 16-bit length field
+    if(encrypted_data_length > 0xFFFF)
+    {
+        return 1;
+    }
+
+    unsigned char *buffer = output_reserve(session, buffer_length);
+
+    if(NULL == buffer)
+    {
+        return 1;
+    }
 
     buffer[0] = getInternalSeq_num_encrypt(session);
 //    debug("\nSequence number: %d \n", buffer[0]);
@@ -256,36 +373,30 @@ int dacUtilsWrite(dacSession_t *session, const unsigned char *msg, unsigned shor
         addPadding(encrypted_data_length - messageLength - 2, buffer);
     }
     */
-    for(int i = messageLength + 2; i < encrypted_data_length; i++)
+    for(size_t i = (size_t) messageLength + 2; i < encrypted_data_length; i++)
     {
         buffer[i + 3] = 0;
     }
 
-    aes_encrypt(&getInternalCtx_encrypt(session), buffer + 3, encrypted_data_length);
+    aes_encrypt(&getInternalCtx_encrypt(session), buffer + 3, (int) encrypted_data_length);
 
-    hmac_sha256(mac, getInternalIntegrity_key_encryption(session), INTEGRITY_KEY_L, buffer, encrypted_data_length + 3);
+    dacHmacCompute(&getInternalHmac_encryption(session), mac, buffer, encrypted_data_length + 3);
 
 	for(int i = 0; i < MAC_HASH_L; i++)
 	{
 		buffer[i + encrypted_data_length + 2 + 1] = mac[i];
 	}
 
-	int n = session->f_write(session->ext, buffer, buffer_length);
+	int failed = output_flush(session, buffer_length);
 
     //debug("Data sent");
 
     getInternalSeq_num_encrypt(session)++;
 
-
-    if(n <= 0)
-    {
-        return 1;
-    }
-
-    return 0;
+    return failed;
 }
 
-int dacUtilsRead(dacSession_t *session, unsigned char **msg, unsigned short *messageLength)
+static int legacy_record_read(dacSession_t *session, unsigned char **msg, unsigned short *messageLength)
 {
 
 	unsigned short encrypted_data_length = 0;
@@ -300,7 +411,10 @@ int dacUtilsRead(dacSession_t *session, unsigned char **msg, unsigned short *mes
 	unsigned char buffer[5];
 	unsigned char *encrypted_msg_buffer;
 
-	session->f_read(session->ext, buffer, 3);
+	if(buffered_read(session, buffer, 3) != 3)
+	{
+		return 1;
+	}
 
 	sequence_number = buffer[0];
 
@@ -326,11 +440,14 @@ int dacUtilsRead(dacSession_t *session, unsigned char **msg, unsigned short *mes
 	encrypted_msg_buffer[1] = buffer[1];
 	encrypted_msg_buffer[2] = buffer[2];
 
-	session->f_read(session->ext, encrypted_msg_buffer + 3, encrypted_data_length);
-
-	session->f_read(session->ext, received_mac, MAC_HASH_L);
+	if((buffered_read(session, encrypted_msg_buffer + 3, encrypted_data_length) != encrypted_data_length) ||
+		(buffered_read(session, received_mac, MAC_HASH_L) != MAC_HASH_L))
+	{
+		free(encrypted_msg_buffer);
+		return 1;
+	}
 
-	hmac_sha256(mac, getInternalIntegrity_key_decryption(session), INTEGRITY_KEY_L, encrypted_msg_buffer, encrypted_data_length + 3);
+	dacHmacCompute(&getInternalHmac_decryption(session), mac, encrypted_msg_buffer, encrypted_data_length + 3);
 /*
 	Dlog_printf("\n\nMAC: (%d)\n", MAC_HASH_L);
 	for(int z = 0; z < MAC_HASH_L; z++)
@@ -352,37 +469,143 @@ int dacUtilsRead(dacSession_t *session, unsigned char **msg, unsigned short *mes
 
 //		Dlog_printf("\nmessageLength %d\n", *messageLength);
 
-		int i = 0;
-		unsigned char *ss = malloc(*messageLength);
-
-
-		//     print_key(encrypted_msg_buffer + 5, *messageLength);
-
-		if(NULL != ss)
+		if(*messageLength > encrypted_data_length - 2)
 		{
-			for(i = 0; i < *messageLength; i++)
-			{
-				ss[i] = encrypted_msg_buffer[i + 5];
-				//          debug("%02x", ss[i]);
-			}
 			free(encrypted_msg_buffer);
-			*msg = ss;
-			getInternalSeq_num_decrypt(session)++;
-
-		}
-		else
-		{
 			return 1;
 		}
+
+		// message is returned in the record buffer, moved over the header
+		memmove(encrypted_msg_buffer, encrypted_msg_buffer + 5, *messageLength);
+		*msg = encrypted_msg_buffer;
+		getInternalSeq_num_decrypt(session)++;
 	}
 	else
 	{
+		free(encrypted_msg_buffer);
 		return 1;
 	}
 
 	return 0;
 }
 
+static void aead_nonce(unsigned char *nonce, const unsigned char *iv, uint64_t counter)
+{
+	memcpy(nonce, iv, DAC_AEAD_NONCE_L);
+
+	for(int i = 0; i < 8; i++)
+	{
+		nonce[DAC_AEAD_NONCE_L - 1 - i] ^= (unsigned char) (counter >> (8 * i));
+	}
+}
+
+/*
+ * AEAD record: sequence number (1) | data length (2) | encrypted data | tag (16)
+ * Header is authenticated as additional data, data is not padded.
+ */
+static int aead_record_write(dacSession_t *session, const unsigned char *msg, unsigned short messageLength)
+{
+	// size_t, so that record of a message close to the 16-bit limit does not wrap
+	size_t buffer_length = (size_t) messageLength + DAC_AEAD_TAG_L + 2 + 1;
+	unsigned char nonce[DAC_AEAD_NONCE_L];
+
+	unsigned char *buffer = output_reserve(session, buffer_length);
+
+	if(NULL == buffer)
+	{
+		return 1;
+	}
+
+	buffer[0] = getInternalSeq_num_encrypt(session);
+	buffer[1] = (messageLength >> 8);
+	buffer[2] = messageLength;
+
+	memcpy(buffer + 3, msg, messageLength);
+
+	aead_nonce(nonce, getInternalIV_encryption(session), getInternalRecord_counter_encrypt(session));
+	dacAeadSeal(getInternalEncryption_key(session), nonce, buffer, 3, buffer + 3, messageLength, buffer + 3 + messageLength);
+
+	int failed = output_flush(session, buffer_length);
+
+	getInternalSeq_num_encrypt(session)++;
+	getInternalRecord_counter_encrypt(session)++;
+
+	return failed;
+}
+
+static int aead_record_read(dacSession_t *session, unsigned char **msg, unsigned short *messageLength)
+{
+	unsigned char header[3];
+	unsigned char tag[DAC_AEAD_TAG_L];
+	unsigned char nonce[DAC_AEAD_NONCE_L];
+	unsigned short length;
+	unsigned char *data;
+
+	if(buffered_read(session, header, 3) != 3)
+	{
+		return 1;
+	}
+
+	if(header[0] != getInternalSeq_num_decrypt(session))
+	{
+		return 1;
+	}
+
+	length = header[1];
+	length *= 256;
+	length += header[2];
+
+	// one more byte, so that empty record still gets a buffer
+	data = malloc(length + 1);
+
+	if(NULL == data)
+	{
+		return 1;
+	}
+
+	if((buffered_read(session, data, length) != length) ||
+		(buffered_read(session, tag, DAC_AEAD_TAG_L) != DAC_AEAD_TAG_L))
+	{
+		free(data);
+		return 1;
+	}
+
+	aead_nonce(nonce, getInternalIV_decryption(session), getInternalRecord_counter_decrypt(session));
+	if(dacAeadOpen(getInternalDecryption_key(session), nonce, header, 3, data, length, tag) != 0)
+	{
+		free(data);
+		return 1;
+	}
+
+	getInternalSeq_num_decrypt(session)++;
+	getInternalRecord_counter_decrypt(session)++;
+
+	*msg = data;
+	*messageLength = length;
+
+	return 0;
+}
+
+int dacUtilsWrite(dacSession_t *session, const unsigned char *msg, unsigned short messageLength)
+{
+	if(RECORD_MODE_AEAD == getInternalRecord_mode(session))
+	{
+		return aead_record_write(session, msg, messageLength);
+	}
+
+	return legacy_record_write(session, msg, messageLength);
+}
+
+int dacUtilsRead(dacSession_t *session, unsigned char **msg, unsigned short *messageLength)
+{
+	if(RECORD_MODE_AEAD == getInternalRecord_mode(session))
+	{
+		return aead_record_read(session, msg, messageLength);
+	}
+
+	return legacy_record_read(session, msg, messageLength);
+}
+
 int dacUtilSetOption(dacSession_t *session, const char *key, unsigned char *value)
 {
 	int ret = DAC_ERROR;
@@ -397,6 +620,11 @@ int dacUtilSetOption(dacSession_t *session, const char *key, unsigned char *valu
 		memcpy(getInternalPublic_key(session), value, PUBLIC_KEY_L);
 		ret = DAC_OK;
 	}
+	else if((strlen(key) == 6) && (0 == memcmp(key, "legacy", 6)))
+	{
+		getInternalLegacy_records(session) = (0 != value[0]);
+		ret = DAC_OK;
+	}
 
 	return ret;
 }
@@ -40,38 +40,51 @@ typedef struct JniLibDacAuthContext {
     jobject libDacAuthObj;
     jobject socketObj;
 
+    jmethodID receiveData;
+    jmethodID sendData;
+
+    // array passed to ReceiveData and SendData, reused by every call of the session
+    jbyteArray buffer;
+    jsize bufferLength;
+
 } JniLibDacAuthContext_t;
 
 JavaVM *javaVM = nullptr;
 
+static jbyteArray socket_buffer(JNIEnv *env, JniLibDacAuthContext_t *ctx, jsize len) {
+    if (ctx->buffer == nullptr || ctx->bufferLength < len) {
+        if (ctx->buffer != nullptr) {
+            env->DeleteGlobalRef(ctx->buffer);
+        }
+        jbyteArray buffer = env->NewByteArray(len);
+        ctx->buffer = (jbyteArray) env->NewGlobalRef(buffer);
+        ctx->bufferLength = len;
+        env->DeleteLocalRef(buffer);
+    }
+    return ctx->buffer;
+}
+
+// Returns number of bytes read, which may be less than len, libdac reads ahead
 ssize_t read_socket(void *ext, void *data, unsigned short len) {
     JniLibDacAuthContext_t *ctx = (JniLibDacAuthContext_t *) ext;
     JNIEnv *env;
 
-    LOGI("read_socket");
-
     javaVM->AttachCurrentThread(&env, nullptr);
 
-    jmethodID receiveData = env->GetMethodID(ctx->libDacAuthClz, "ReceiveData",
-                                             "(Lorg/iota/access/api/tcp/TCPSocketObject;[BS)I");
+    jbyteArray buffer = socket_buffer(env, ctx, len);
 
-    if (receiveData == nullptr || env->ExceptionOccurred()) {
+    jint ret = env->CallIntMethod(ctx->libDacAuthObj, ctx->receiveData, ctx->socketObj, buffer, (jint) len);
+
+    if (env->ExceptionCheck()) {
         env->ExceptionClear();
-        // do smth in case of failure
-        LOGE("read_socket sendData");
+        LOGE("read_socket ReceiveData");
         return 0;
     }
 
+    if (ret > 0) {
+        env->GetByteArrayRegion(buffer, 0, ret, (jbyte *) data);
+    }
 
-    LOGI("read_socket");
-
-    jbyteArray data_ = env->NewByteArray(len);
-
-    jint ret = env->CallIntMethod(ctx->libDacAuthObj, receiveData, ctx->socketObj, data_, len);
-
-    env->GetByteArrayRegion(data_, 0, len, (jbyte *) data);
-
-    env->DeleteLocalRef(data_);
     LOGI("read_socket %d", ret);
 
     return ret;
@@ -81,28 +94,19 @@ ssize_t write_socket(void *ext, void *data, unsigned short len) {
     JniLibDacAuthContext_t *ctx = (JniLibDacAuthContext_t *) ext;
     JNIEnv *env;
 
-    LOGI("write_socket");
-
     javaVM->AttachCurrentThread(&env, nullptr);
 
-    jmethodID sendData = env->GetMethodID(ctx->libDacAuthClz, "SendData",
-                                          "(Lorg/iota/access/api/tcp/TCPSocketObject;[BS)I");
+    jbyteArray buffer = socket_buffer(env, ctx, len);
+    env->SetByteArrayRegion(buffer, 0, len, (const jbyte *) data);
+
+    jint ret = env->CallIntMethod(ctx->libDacAuthObj, ctx->sendData, ctx->socketObj, buffer, (jint) len);
 
-    if (sendData == nullptr || env->ExceptionOccurred()) {
+    if (env->ExceptionCheck()) {
         env->ExceptionClear();
-        // do smth in case of failure
-        LOGE("write_socket receiveData");
+        LOGE("write_socket SendData");
         return 0;
     }
 
-    LOGI("write_socket");
-
-    jbyteArray data_ = env->NewByteArray(len);
-    env->SetByteArrayRegion(data_, 0, len, (const jbyte *) data);
-
-    jint ret = env->CallIntMethod(ctx->libDacAuthObj, sendData, ctx->socketObj, data_, len);
-
-    env->DeleteLocalRef(data_);
     LOGI("write_socket %d", ret);
 
     return ret;
@@ -139,6 +143,12 @@ Java_org_iota_access_api_APILibDacAuthNative_dacInitClient(JNIEnv *env, jobject
             env->FindClass("org/iota/access/api/APILibDacAuthNative"));
     jniLibDacAuthContext->libDacAuthObj = env->NewGlobalRef(instance);
     jniLibDacAuthContext->socketObj = env->NewGlobalRef(socketObj);
+    jniLibDacAuthContext->receiveData = env->GetMethodID(jniLibDacAuthContext->libDacAuthClz, "ReceiveData",
+                                                         "(Lorg/iota/access/api/tcp/TCPSocketObject;[BI)I");
+    jniLibDacAuthContext->sendData = env->GetMethodID(jniLibDacAuthContext->libDacAuthClz, "SendData",
+                                                      "(Lorg/iota/access/api/tcp/TCPSocketObject;[BI)I");
+    jniLibDacAuthContext->buffer = nullptr;
+    jniLibDacAuthContext->bufferLength = 0;
 
     LOGI("APILibDacAuthNative_dacInitClient ret %d", ret);
 
@@ -221,17 +231,23 @@ Java_org_iota_access_api_APILibDacAuthNative_dacReceive(JNIEnv *env, jobject ins
         return 0;
     }
     jlong *session = env->GetLongArrayElements(session_, nullptr);
-    jbyte *data = env->GetByteArrayElements(data_, nullptr);
     dacSession_t *dacSession = (dacSession_t *) *session;
+    unsigned char *message = nullptr;
+    unsigned short message_length = 0;
     jint ret = 0;
 
-    // TODO: test this
-
     LOGI("APILibDacAuthNative_dacReceive");
-    ret = dacReceive(dacSession, (unsigned char **) &data, (unsigned short *) &length);
+    ret = dacReceive(dacSession, &message, &message_length);
+
+    // libdac allocates received message, copy it into the Java array in one call
+    if (message != nullptr) {
+        jsize capacity = env->GetArrayLength(data_);
+        env->SetByteArrayRegion(data_, 0, message_length < capacity ? message_length : capacity,
+                                (const jbyte *) message);
+        free(message);
+    }
 
     env->ReleaseLongArrayElements(session_, session, 0);
-    env->ReleaseByteArrayElements(data_, data, 0);
     return ret;
 }
 
@@ -249,8 +265,23 @@ Java_org_iota_access_api_APILibDacAuthNative_dacRelease(
     dacSession_t *dacSession = (dacSession_t *) *session;
     jint ret = 0;
 
-    // TODO: release object references
-    ret = dacRelease(dacSession);
+    if (dacSession != nullptr) {
+        JniLibDacAuthContext_t *ctx = (JniLibDacAuthContext_t *) dacSession->ext;
+
+        ret = dacRelease(dacSession);
+
+        if (ctx != nullptr) {
+            env->DeleteGlobalRef(ctx->libDacAuthClz);
+            env->DeleteGlobalRef(ctx->libDacAuthObj);
+            env->DeleteGlobalRef(ctx->socketObj);
+            if (ctx->buffer != nullptr) {
+                env->DeleteGlobalRef(ctx->buffer);
+            }
+            free(ctx);
+        }
+        free(dacSession);
+        session[0] = 0;
+    }
 
     LOGI("APILibDacAuthNative_dacRelease");
 
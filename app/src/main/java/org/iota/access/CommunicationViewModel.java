@@ -19,6 +19,7 @@
 
 package org.iota.access;
 
+import androidx.annotation.Nullable;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.OnLifecycleEvent;
@@ -26,10 +27,12 @@ import android.util.Pair;
 
 import org.iota.access.api.Communicator;
 import org.iota.access.api.tcp.TCPClient;
+import org.iota.access.api.tcp.TCPRequestException;
 import org.iota.access.utils.ResourceProvider;
 
 import javax.inject.Inject;
 
+import io.reactivex.Maybe;
 import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.CompositeDisposable;
@@ -74,6 +77,33 @@ public class CommunicationViewModel extends BaseObservableViewModel implements L
         mCommunicator.sendTCPMessage(message);
     }
 
+    /**
+     * Sends message and emits the response to it on the main thread, to this subscriber only.
+     * <p>
+     * Loading message is shown until the request ends, when the connection is closed.
+     * Connection errors are handled by {@link #handleTCPError(TCPClient.TCPError)} and
+     * complete the Maybe without a value.
+     *
+     * @param uiMessage loading message, or null to not show loading
+     */
+    protected Maybe<String> request(String message, @Nullable String uiMessage) {
+        return mCommunicator.request(message)
+                .observeOn(AndroidSchedulers.mainThread())
+                .doOnSubscribe(disposable -> {
+                    if (uiMessage != null) mShowLoading.onNext(new Pair<>(true, uiMessage));
+                })
+                .doFinally(() -> {
+                    mShowLoading.onNext(new Pair<>(false, null));
+                    mCommunicator.disconnectTCP();
+                })
+                .toMaybe()
+                .onErrorResumeNext(throwable -> {
+                    if (!(throwable instanceof TCPRequestException)) return Maybe.error(throwable);
+                    handleTCPError(((TCPRequestException) throwable).getError());
+                    return Maybe.empty();
+                });
+    }
+
     @OnLifecycleEvent(Lifecycle.Event.ON_START)
     protected void onLifecycleEventStart() {
         subscribeForEvents();
@@ -126,6 +156,9 @@ public class CommunicationViewModel extends BaseObservableViewModel implements L
             case TIMEOUT:
                 message = resourceProvider.getString(R.string.msg_tcp_timeout);
                 break;
+            case CLOSED:
+                // connection was closed by the app, e.g. after the response to another message
+                return;
             case UNKNOWN:
             default:
                 message = resourceProvider.getString(R.string.something_wrong_happened);
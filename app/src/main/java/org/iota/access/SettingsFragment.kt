@@ -26,8 +26,7 @@ import androidx.preference.EditTextPreference
 import androidx.preference.ListPreference
 import androidx.preference.Preference
 import androidx.preference.PreferenceCategory
-import me.jessyan.retrofiturlmanager.RetrofitUrlManager
-import org.iota.access.SettingsFragment.Keys.PREF_KEY_POLICY_IP_ADDRESS
+import org.iota.access.api.http.PolicyEndpointResolver
 import org.iota.access.di.Injectable
 import org.iota.access.utils.ui.DisplayUtil
 import org.iota.access.utils.ui.ThemeLab
@@ -88,7 +87,7 @@ class SettingsFragment : BasePreferenceFragmentCompat(), Injectable, Preference.
         preferenceScreen.findPreference<Preference>(Keys.PREF_KEY_POLICY_IP_ADDRESS)?.setOnPreferenceChangeListener { preference, newValue ->
             try {
                 val policyPort: String? = (preferenceScreen.findPreference<Preference>(Keys.PREF_KEY_POLICY_PORT_NUMBER) as? EditTextPreference)?.text
-                updatePolicyUrl(newValue.toString(), policyPort)
+                validatePolicyUrl(newValue.toString(), policyPort)
                 preference.summary = newValue.toString()
                 true
             } catch (e: Exception) {
@@ -105,7 +104,7 @@ class SettingsFragment : BasePreferenceFragmentCompat(), Injectable, Preference.
         preferenceScreen.findPreference<Preference>(Keys.PREF_KEY_POLICY_PORT_NUMBER)?.setOnPreferenceChangeListener { preference, newValue ->
             try {
                 val policyServer: String? = (preferenceScreen.findPreference<Preference>(Keys.PREF_KEY_POLICY_IP_ADDRESS) as? EditTextPreference)?.text
-                updatePolicyUrl(policyServer, newValue.toString())
+                validatePolicyUrl(policyServer, newValue.toString())
                 preference.summary = newValue.toString()
                 true
             } catch (e: Exception) {
@@ -115,9 +114,12 @@ class SettingsFragment : BasePreferenceFragmentCompat(), Injectable, Preference.
         }
     }
 
-    private fun updatePolicyUrl(server: String?, port: String?) {
-        val policyUrl = "http://$server:$port"
-        RetrofitUrlManager.getInstance().putDomain("policy", policyUrl);
+    /**
+     * Throws an exception if policy store address is not valid. Valid address is picked up
+     * by [PolicyEndpointResolver] as soon as it is saved.
+     */
+    private fun validatePolicyUrl(server: String?, port: String?) {
+        PolicyEndpointResolver.parseEndpoints(server, port)
     }
 
     override fun onSaveInstanceState(outState: Bundle) {
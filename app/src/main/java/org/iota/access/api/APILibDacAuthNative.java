@@ -44,7 +44,7 @@ public class APILibDacAuthNative {
      */
     @Keep
     @SuppressWarnings("unused")
-    public int SendData(TCPSocketObject sock, byte[] data, short len) {
+    public int SendData(TCPSocketObject sock, byte[] data, int len) {
         if (sock == null) {
             Timber.d("TCPSocketObject in SendData is null");
             return 0;
@@ -60,7 +60,8 @@ public class APILibDacAuthNative {
             outputStream.write(data, 0, len);
             outputStream.flush();
         } catch (IOException e) {
-            e.printStackTrace();
+            Timber.d(e);
+            sock.recordFailure(e);
             return 0;
         }
 
@@ -72,12 +73,12 @@ public class APILibDacAuthNative {
      *
      * @param sock socket used for communication
      * @param data data read from the socket
-     * @param len  length of the data read
-     * @return number of bytes read
+     * @param len  maximum length of the data read
+     * @return number of bytes read, which may be less than len, or 0 on error
      */
     @Keep
     @SuppressWarnings("unused")
-    public int ReceiveData(TCPSocketObject sock, byte[] data, short len) {
+    public int ReceiveData(TCPSocketObject sock, byte[] data, int len) {
         if (sock == null) {
             Timber.d("TCPSOcketObject in ReceiveData is null");
             return 0;
@@ -92,12 +93,12 @@ public class APILibDacAuthNative {
         try {
             int bytesRead = dataInputStream.read(data, 0, len);
             Timber.d("ReceiveData len %d", bytesRead);
+            return bytesRead > 0 ? bytesRead : 0;
         } catch (Exception e) {
             Timber.d(e);
+            sock.recordFailure(e);
             return 0;
         }
-
-        return len;
     }
 
 
@@ -24,14 +24,32 @@ import android.util.Pair;
 import org.iota.access.api.tcp.TCPClient;
 
 import io.reactivex.Observable;
+import io.reactivex.Single;
 
 public interface Communicator {
 
     void sendTCPMessage(final String message);
 
+    /**
+     * Sends message to the device and emits the response to it.
+     * <p>
+     * The response is delivered only to this subscriber, it is not published by
+     * {@link #getObservableTCPResponse()}. Disposing before the response arrives drops the
+     * response, and the message is not sent at all if it is still waiting to be sent.
+     *
+     * @return response, or error {@link org.iota.access.api.tcp.TCPRequestException} if the
+     * connection failed
+     */
+    Single<String> request(String message);
+
     Observable<Pair<String, String>> getObservableTCPResponse();
 
     Observable<TCPClient.TCPError> getObservableTCPError();
 
     void disconnectTCP();
+
+    /**
+     * Opens connection to the device in advance, when a request is likely to follow.
+     */
+    void prepareConnection();
 }
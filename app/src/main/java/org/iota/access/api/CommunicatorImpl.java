@@ -19,6 +19,7 @@
 
 package org.iota.access.api;
 
+import android.os.AsyncTask;
 import android.util.Pair;
 
 import org.iota.access.api.tcp.TCPClient;
@@ -27,33 +28,79 @@ import org.iota.access.api.tcp.TCPCommunicationTask;
 import javax.inject.Inject;
 
 import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.subjects.PublishSubject;
+import timber.log.Timber;
 
 public class CommunicatorImpl implements Communicator {
     private final TCPClient mTCPClient;
 
+    // responses and errors which do not belong to a request
+    private final PublishSubject<Pair<String, String>> mResponse = PublishSubject.create();
+    private final PublishSubject<TCPClient.TCPError> mTCPError = PublishSubject.create();
+    private final InFlightMessages mInFlight = new InFlightMessages();
+
     @Inject
     public CommunicatorImpl(TCPClient TCPClient) {
         mTCPClient = TCPClient;
+        mTCPClient.getObservableResponse().subscribe(this::onResponse, Timber::e);
+        mTCPClient.getObservableTCPError().subscribe(this::onError, Timber::e);
     }
 
     @Override
     public void sendTCPMessage(String message) {
+        InFlightMessages.Entry entry = new InFlightMessages.Entry(message, null);
+        // runs on the serial executor of TCPCommunicationTask, right before it is sent
+        AsyncTask.execute(() -> mInFlight.add(entry));
         new TCPCommunicationTask(message).execute(mTCPClient);
     }
 
+    @Override
+    public Single<String> request(String message) {
+        return Single.create(emitter -> {
+            InFlightMessages.Entry entry = new InFlightMessages.Entry(message, emitter);
+            emitter.setCancellable(entry::cancel);
+            // serial executor keeps requests and messages in order
+            AsyncTask.execute(() -> {
+                if (entry.isCancelled()) return;
+                mInFlight.add(entry);
+                mTCPClient.sendMessage(message);
+            });
+        });
+    }
+
     @Override
     public Observable<Pair<String, String>> getObservableTCPResponse() {
-        return mTCPClient.getObservableResponse();
+        return mResponse;
     }
 
     @Override
     public Observable<TCPClient.TCPError> getObservableTCPError() {
-        return mTCPClient.getObservableTCPError();
+        return mTCPError;
     }
     @Override
     public void disconnectTCP() {
         mTCPClient.closeConnection();
     }
+
+    @Override
+    public void prepareConnection() {
+        // handshake must not hold up the serial executor of the app, a message sent
+        // meanwhile waits for the prepared session in the client instead
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(mTCPClient::prepareConnection);
+    }
+
+    private void onResponse(Pair<String, String> response) {
+        if (!mInFlight.deliverResponse(response.first, response.second)) {
+            mResponse.onNext(response);
+        }
+    }
+
+    private void onError(Pair<String, TCPClient.TCPError> error) {
+        if (!mInFlight.deliverError(error.first, error.second)) {
+            mTCPError.onNext(error.second);
+        }
+    }
 //
 //
 //    public void sendTCPMessage(final String message) {
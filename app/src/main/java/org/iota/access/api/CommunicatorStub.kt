@@ -18,77 +18,143 @@
  */
 package org.iota.access.api
 
-import android.os.CountDownTimer
 import android.util.Pair
 import com.google.gson.Gson
 import com.google.gson.JsonArray
+import io.reactivex.Completable
 import io.reactivex.Observable
+import io.reactivex.Single
+import io.reactivex.disposables.Disposable
+import io.reactivex.schedulers.Schedulers
 import io.reactivex.subjects.PublishSubject
 import org.iota.access.api.model.CommunicationMessage
 import org.iota.access.api.model.TCPResponse
 import org.iota.access.api.tcp.TCPClient.TCPError
+import org.iota.access.api.tcp.TCPRequestException
 import org.iota.access.models.GetUserIdResponse
 import org.iota.access.models.User
 import org.iota.access.utils.JSONUtils.extractJsonElement
+import org.iota.access.utils.Optional
+import timber.log.Timber
 import java.util.*
+import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 import javax.inject.Singleton
 
+/**
+ * Simulated access device, used instead of [CommunicatorImpl] in the demo build.
+ *
+ * Latency, network faults and size of the policy list are set by [StubSimulation].
+ */
 @Singleton
-class CommunicatorStub @Inject constructor(private val mPsService: PSService) : Communicator {
+class CommunicatorStub @Inject constructor(
+        private val mPsService: PSService,
+        private val simulation: StubSimulation
+) : Communicator {
     private var mDataset = JsonArray()
-    private val mResponse = PublishSubject.create<Pair<String, String>>()
-    private val mTCPError = PublishSubject.create<TCPError>()
+    // responses are emitted from timers on different computation threads
+    private val mResponse = PublishSubject.create<Pair<String, String>>().toSerialized()
+    private val mTCPError = PublishSubject.create<TCPError>().toSerialized()
     private val rand = Random()
     private val gson = Gson()
+    private val policyList: StubPolicyList by lazy {
+        StubPolicyList(simulation.policyCount, simulation.policyDepth)
+    }
+
     override fun sendTCPMessage(message: String) {
-        val millis = rand.nextInt(1000) + 500
-        object : CountDownTimer(millis.toLong(), millis.toLong()) {
-            override fun onTick(millisUntilFinished: Long) {}
-            override fun onFinish() {
-                stubTCPMessage(message)
-            }
-        }.start()
+        simulate(message, { mResponse.onNext(Pair(message, it)) }, { mTCPError.onNext(it) })
     }
 
-    private fun stubTCPMessage(message: String) {
-        val cmd = CommunicationMessage.getCmdFromMessage(message)
-        if (cmd != null) {
-            when (cmd) {
-                CommunicationMessage.GET_POLICY_LIST -> mResponse.onNext(Pair(message, "[{\"policy_id\":\"531565B8F40ECA5AAC55FEE6664A233E2D0312856B777D875EB9ACC4F85D1E99\",\"action\":\"action#1\"},{\"policy_id\":\"45C88599131156AED16B48FB6A57B8211F24B92877076164AC5D143A81730645\",\"action\":\"action#2\"}]"))
-                CommunicationMessage.RESOLVE -> mResponse.onNext(Pair(message, "{\"response\":\"access granted\"}"))
-                CommunicationMessage.SET_DATA_SET -> {
-                    val jsonElement = extractJsonElement(message) ?: return
-                    try {
-                        mDataset = jsonElement.asJsonObject["dataset_list"].asJsonArray
-                        mResponse.onNext(Pair(message, "{\"response\":\"access granted\"}"))
-                    } catch (e: IllegalStateException) {
-                        mResponse.onNext(Pair(message, "{\"response\":\"access denied\"}"))
-                    } catch (e: UnsupportedOperationException) {
-                        mResponse.onNext(Pair(message, "{\"response\":\"access denied\"}"))
-                    }
-                }
-                CommunicationMessage.GET_DATA_SET -> mResponse.onNext(Pair(message, mDataset.toString()))
-                CommunicationMessage.GET_AUTH_USER_ID -> {
-                    val response = TCPResponse<GetUserIdResponse>()
-                    response.setError(0)
-                    response.message = "success"
-                    val r = GetUserIdResponse()
-                    r.userId = "123"
-                    response.data = r
-                    mResponse.onNext(Pair(message, gson.toJson(response)))
+    override fun request(message: String): Single<String> = Single.create { emitter ->
+        val disposable = simulate(message, { emitter.onSuccess(it) }, { emitter.tryOnError(TCPRequestException(it)) })
+        emitter.setDisposable(disposable)
+    }
+
+    /**
+     * Simulates exchange of [message] with the device, disposing the result cancels it.
+     */
+    private fun simulate(message: String, onResponse: (String) -> Unit, onError: (TCPError) -> Unit): Disposable {
+        if (rand.nextDouble() < simulation.timeoutRate) {
+            return Completable.timer(simulation.timeoutMillis, TimeUnit.MILLISECONDS, Schedulers.computation())
+                    .subscribe({ onError(TCPError.TIMEOUT) }, Timber::e)
+        }
+        return Single.fromCallable { Optional(stubTCPMessage(message)) }
+                .subscribeOn(Schedulers.computation())
+                .flatMapCompletable { response ->
+                    if (response.isEmpty) Completable.complete() else respond(response.get(), onResponse, onError)
                 }
-                CommunicationMessage.GET_USER -> {
-                    val response = TCPResponse<User>()
-                    response.setError(0)
-                    response.message = "success"
-                    mResponse.onNext(Pair(message, gson.toJson(response)))
+                .subscribe({}, Timber::e)
+    }
+
+    private fun respond(fullResponse: String, onResponse: (String) -> Unit, onError: (TCPError) -> Unit): Completable {
+        var response = fullResponse
+        if (response.isNotEmpty() && rand.nextDouble() < simulation.partialReadRate) {
+            response = response.substring(0, rand.nextInt(response.length))
+        }
+        val delay = simulation.sampleDelay(rand, response.length)
+        if (delay >= simulation.timeoutMillis) {
+            return Completable.timer(simulation.timeoutMillis, TimeUnit.MILLISECONDS, Schedulers.computation())
+                    .doOnComplete { onError(TCPError.TIMEOUT) }
+        }
+        return Completable.timer(delay, TimeUnit.MILLISECONDS, Schedulers.computation())
+                .doOnComplete { onResponse(response) }
+    }
+
+    /**
+     * @return response of the device to [message], or `null` if device does not respond
+     */
+    private fun stubTCPMessage(message: String): String? {
+        val cmd = CommunicationMessage.getCmdFromMessage(message) ?: return null
+        return when (cmd) {
+            CommunicationMessage.GET_POLICY_LIST -> if (simulation.policyCount > 0) {
+                policyListPage(message)
+            } else {
+                "[{\"policy_id\":\"531565B8F40ECA5AAC55FEE6664A233E2D0312856B777D875EB9ACC4F85D1E99\",\"action\":\"action#1\"},{\"policy_id\":\"45C88599131156AED16B48FB6A57B8211F24B92877076164AC5D143A81730645\",\"action\":\"action#2\"}]"
+            }
+            CommunicationMessage.RESOLVE -> "{\"response\":\"access granted\"}"
+            CommunicationMessage.SET_DATA_SET -> {
+                val jsonElement = extractJsonElement(message) ?: return null
+                try {
+                    mDataset = jsonElement.asJsonObject["dataset_list"].asJsonArray
+                    "{\"response\":\"access granted\"}"
+                } catch (e: IllegalStateException) {
+                    "{\"response\":\"access denied\"}"
+                } catch (e: UnsupportedOperationException) {
+                    "{\"response\":\"access denied\"}"
                 }
-                else -> mResponse.onNext(Pair(message, ""))
             }
+            CommunicationMessage.GET_DATA_SET -> mDataset.toString()
+            CommunicationMessage.GET_AUTH_USER_ID -> {
+                val response = TCPResponse<GetUserIdResponse>()
+                response.setError(0)
+                response.message = "success"
+                val r = GetUserIdResponse()
+                r.userId = "123"
+                response.data = r
+                gson.toJson(response)
+            }
+            CommunicationMessage.GET_USER -> {
+                val response = TCPResponse<User>()
+                response.setError(0)
+                response.message = "success"
+                gson.toJson(response)
+            }
+            else -> ""
         }
     }
 
+    /**
+     * @return page of generated policies requested by [message], all changes if the message
+     * does not limit the page size
+     */
+    private fun policyListPage(message: String): String {
+        val version = CommunicationMessage.getElementFromMessage(message, CommunicationMessage.POLICY_LIST_VERSION_ELEMENT)
+        val cursor = CommunicationMessage.getElementFromMessage(message, CommunicationMessage.POLICY_LIST_CURSOR_ELEMENT)
+        val limit = CommunicationMessage.getElementFromMessage(message, CommunicationMessage.POLICY_LIST_LIMIT_ELEMENT)
+                ?.toIntOrNull() ?: 0
+        return policyList.page(version, cursor, limit).toString()
+    }
+
     override fun getObservableTCPResponse(): Observable<Pair<String, String>> {
         return mResponse
     }
@@ -99,4 +165,6 @@ class CommunicatorStub @Inject constructor(private val mPsService: PSService) :
 
     override fun disconnectTCP() {}
 
+    override fun prepareConnection() {}
+
 }
@@ -0,0 +1,79 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.iota.access.api;
+
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Opens device session speculatively, when a command is likely to follow, so that the
+ * first command is sent without waiting for TCP connect and key exchange.
+ * <p>
+ * Warm-up is triggered when the command list is shown. A prepared session is closed after the idle time of the transport, and
+ * at most {@link #MAX_WARM_UPS} warm-ups are started in {@link #BUDGET_WINDOW_MILLIS}, so
+ * a user who browses without sending commands costs the device only a few handshakes.
+ */
+@Singleton
+public class ConnectionWarmUp {
+
+    private static final int MAX_WARM_UPS = 3;
+    private static final long BUDGET_WINDOW_MILLIS = 60_000;
+
+    private final Communicator mCommunicator;
+    private final Deque<Long> mWarmUpTimes = new ArrayDeque<>();
+
+    @Inject
+    public ConnectionWarmUp(Communicator communicator) {
+        mCommunicator = communicator;
+    }
+
+    /**
+     * Called when the list of commands is shown to the user.
+     */
+    public void onCommandListVisible() {
+        warmUp("command list visible");
+    }
+
+    private void warmUp(String reason) {
+        if (!takeBudget()) {
+            Timber.d("Warm-up budget exhausted, skipping warm-up on %s", reason);
+            return;
+        }
+        Timber.d("Warming up connection on %s", reason);
+        mCommunicator.prepareConnection();
+    }
+
+    private synchronized boolean takeBudget() {
+        long now = SystemClock.elapsedRealtime();
+        while (!mWarmUpTimes.isEmpty() && now - mWarmUpTimes.peekFirst() >= BUDGET_WINDOW_MILLIS) {
+            mWarmUpTimes.pollFirst();
+        }
+        if (mWarmUpTimes.size() >= MAX_WARM_UPS) return false;
+        mWarmUpTimes.addLast(now);
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.iota.access.api;
+
+import androidx.annotation.Nullable;
+
+import org.iota.access.api.tcp.TCPClient;
+import org.iota.access.api.tcp.TCPRequestException;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import io.reactivex.SingleEmitter;
+
+/**
+ * Messages given to {@link TCPClient}, waiting for their outcome.
+ * <p>
+ * The client reports exactly one response or error for every message, paired with the
+ * message itself, so the outcome belongs to the oldest waiting message with the same content.
+ */
+final class InFlightMessages {
+
+    // in the order the messages were sent, guarded by itself
+    private final LinkedList<Entry> mEntries = new LinkedList<>();
+
+    void add(Entry entry) {
+        synchronized (mEntries) {
+            mEntries.add(entry);
+        }
+    }
+
+    /**
+     * @return true if the response was taken by a request, false if it is to be published
+     */
+    boolean deliverResponse(String message, String response) {
+        Entry entry = take(message);
+        if (entry == null || entry.mEmitter == null) return false;
+        if (!entry.isCancelled()) entry.mEmitter.onSuccess(response);
+        return true;
+    }
+
+    /**
+     * @return true if the error was taken by a request, false if it is to be published
+     */
+    boolean deliverError(String message, TCPClient.TCPError error) {
+        Entry entry = take(message);
+        if (entry == null || entry.mEmitter == null) return false;
+        if (!entry.isCancelled()) entry.mEmitter.tryOnError(new TCPRequestException(error));
+        return true;
+    }
+
+    int size() {
+        synchronized (mEntries) {
+            return mEntries.size();
+        }
+    }
+
+    @Nullable
+    private Entry take(String message) {
+        synchronized (mEntries) {
+            Iterator<Entry> iterator = mEntries.iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.mMessage.equals(message)) {
+                    iterator.remove();
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Message waiting for its outcome. Message sent by
+     * {@link Communicator#sendTCPMessage(String)} has no emitter, its outcome is published to
+     * all subscribers. Cancelled request stays until its outcome arrives, which is dropped.
+     */
+    static class Entry {
+        final String mMessage;
+        @Nullable
+        final SingleEmitter<String> mEmitter;
+        private volatile boolean mCancelled;
+
+        Entry(String message, @Nullable SingleEmitter<String> emitter) {
+            mMessage = message;
+            mEmitter = emitter;
+        }
+
+        void cancel() {
+            mCancelled = true;
+        }
+
+        boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+}
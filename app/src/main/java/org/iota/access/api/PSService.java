@@ -20,22 +20,27 @@
 package org.iota.access.api;
 
 import org.iota.access.api.model.policy_server.PSClearPolicyListRequest;
+import org.iota.access.api.model.policy_server.PSDataResponse;
+import org.iota.access.api.model.policy_server.PSDelegatePolicyBatchRequest;
 import org.iota.access.api.model.policy_server.PSDelegatePolicyRequest;
+import org.iota.access.api.model.policy_server.PSDelegatePolicyResult;
 import org.iota.access.api.model.policy_server.PSEmptyResponse;
 
+import java.util.List;
+
 import io.reactivex.Observable;
 import retrofit2.Call;
 import retrofit2.http.Body;
-import retrofit2.http.Headers;
 import retrofit2.http.PUT;
 
 public interface PSService {
 
     @PUT("/policy")
-    @Headers({"Domain-Name: policy"})
     Call<PSEmptyResponse> clearPolicyList(@Body PSClearPolicyListRequest request);
 
     @PUT("/policy")
-    @Headers({"Domain-Name: policy"})
     Observable<PSEmptyResponse> delegatePolicy(@Body PSDelegatePolicyRequest request);
+
+    @PUT("/policy")
+    Observable<PSDataResponse<List<PSDelegatePolicyResult>>> delegatePolicyBatch(@Body PSDelegatePolicyBatchRequest request);
 }
@@ -0,0 +1,223 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.api
+
+import io.reactivex.Observable
+import io.reactivex.Single
+import io.reactivex.schedulers.Schedulers
+import org.iota.access.api.model.policy_server.PSDelegatePolicyBatchRequest
+import org.iota.access.api.model.policy_server.PSDelegatePolicyRequest
+import org.iota.access.api.http.ReplicaNotReachedException
+import retrofit2.HttpException
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Client for delegating policies to policy store.
+ *
+ * Requests are sent with bounded concurrency and every request which did not reach the
+ * policy store, or was refused with 429 or 5xx, is retried with jittered exponential backoff. Retries of one delegation share a common budget, so a policy store
+ * which is down does not get hammered with `maxRetries` attempts for every single policy.
+ * Failure of one policy does not fail the whole delegation, instead [DelegationResult]
+ * reports which policies were stored and which were not.
+ */
+@Singleton
+class PolicyStoreClient @Inject constructor(private val psService: PSService) {
+
+    enum class Mode {
+        /** Every policy is sent with its own request. */
+        SINGLE,
+
+        /**
+         * Policies are sent in chunks of [Config.batchSize] policies per request. Chunks
+         * rejected by the server fall back to [SINGLE] mode.
+         */
+        BATCH
+    }
+
+    class Config(
+            val mode: Mode = Mode.SINGLE,
+            val maxConcurrency: Int = 4,
+            val batchSize: Int = 50,
+            val maxRetries: Int = 3,
+            val baseBackoffMillis: Long = 250,
+            val maxBackoffMillis: Long = 4000,
+            /** Share of requests which may be retried, on top of [minRetryBudget]. */
+            val retryBudgetRatio: Float = 0.2f,
+            val minRetryBudget: Int = 5
+    )
+
+    class Failure(val policyId: String?, val message: String)
+
+    class DelegationResult(val succeeded: List<String?>, val failed: List<Failure>) {
+        val total: Int
+            get() = succeeded.size + failed.size
+
+        val isSuccessful: Boolean
+            get() = failed.isEmpty()
+
+        val isPartiallySuccessful: Boolean
+            get() = succeeded.isNotEmpty() && failed.isNotEmpty()
+    }
+
+    private class Outcome(val policyId: String?, val error: String? = null)
+
+    private class RetryBudget(size: Int) {
+        private val remaining = AtomicInteger(size)
+
+        fun tryAcquire(): Boolean = remaining.getAndDecrement() > 0
+    }
+
+    /**
+     * Delegates all policies from [requests].
+     *
+     * @return single emitting result of delegation, it never emits an error
+     */
+    fun delegatePolicies(
+            requests: List<PSDelegatePolicyRequest>,
+            config: Config = Config()
+    ): Single<DelegationResult> {
+        if (requests.isEmpty()) return Single.just(DelegationResult(listOf(), listOf()))
+
+        val budget = RetryBudget(config.minRetryBudget + (requests.size * config.retryBudgetRatio).toInt())
+
+        val outcomes: Observable<Outcome> = when (config.mode) {
+            Mode.SINGLE -> Observable.fromIterable(requests)
+                    .flatMap({ delegateSingle(it, budget, config) }, config.maxConcurrency)
+            Mode.BATCH -> Observable.fromIterable(requests.chunked(config.batchSize))
+                    .flatMap({ delegateBatch(it, budget, config) }, config.maxConcurrency)
+        }
+
+        return outcomes
+                .toList()
+                .map { list ->
+                    val succeeded = mutableListOf<String?>()
+                    val failed = mutableListOf<Failure>()
+                    for (outcome in list) {
+                        if (outcome.error == null) {
+                            succeeded.add(outcome.policyId)
+                        } else {
+                            failed.add(Failure(outcome.policyId, outcome.error))
+                        }
+                    }
+                    DelegationResult(succeeded, failed)
+                }
+    }
+
+    private fun delegateSingle(
+            request: PSDelegatePolicyRequest,
+            budget: RetryBudget,
+            config: Config
+    ): Observable<Outcome> = psService
+            .delegatePolicy(request)
+            .subscribeOn(Schedulers.io())
+            .retryWhen { errors -> retryWithBackoff(errors, budget, config) }
+            .map { response ->
+                if (response.isError) {
+                    Outcome(request.policyId, response.message ?: "Unknown error")
+                } else {
+                    Outcome(request.policyId)
+                }
+            }
+            .onErrorReturn { Outcome(request.policyId, errorMessage(it)) }
+
+    private fun delegateBatch(
+            requests: List<PSDelegatePolicyRequest>,
+            budget: RetryBudget,
+            config: Config
+    ): Observable<Outcome> {
+        val first = requests[0]
+        return psService
+                .delegatePolicyBatch(PSDelegatePolicyBatchRequest(first.owner, first.deviceId, requests))
+                .subscribeOn(Schedulers.io())
+                .retryWhen { errors -> retryWithBackoff(errors, budget, config) }
+                .flatMap { response ->
+                    val results = response.data
+                    val outcomes = if (results == null) {
+                        // server did not report per policy results, so outcome of request applies to every policy
+                        requests.map {
+                            if (response.isError) Outcome(it.policyId, response.message ?: "Unknown error")
+                            else Outcome(it.policyId)
+                        }
+                    } else {
+                        val resultsById = results.associateBy { it.policyId }
+                        requests.map {
+                            val result = resultsById[it.policyId]
+                            when {
+                                result == null -> Outcome(it.policyId, "Missing in batch response")
+                                result.isError -> Outcome(it.policyId, result.message ?: "Unknown error")
+                                else -> Outcome(it.policyId)
+                            }
+                        }
+                    }
+                    Observable.fromIterable(outcomes)
+                }
+                .onErrorResumeNext { throwable: Throwable ->
+                    if (throwable is HttpException && throwable.code() in 400..499) {
+                        // batch command is not supported by the server
+                        Observable.fromIterable(requests)
+                                .concatMap { delegateSingle(it, budget, config) }
+                    } else {
+                        Observable.fromIterable(requests.map { Outcome(it.policyId, errorMessage(throwable)) })
+                    }
+                }
+    }
+
+    private fun retryWithBackoff(
+            errors: Observable<Throwable>,
+            budget: RetryBudget,
+            config: Config
+    ): Observable<Long> {
+        var attempt = 0
+        return errors.flatMap { error ->
+            attempt++
+            if (attempt > config.maxRetries || !isRetryable(error) || !budget.tryAcquire()) {
+                Observable.error<Long>(error)
+            } else {
+                Observable.timer(backoffMillis(attempt, config), TimeUnit.MILLISECONDS, Schedulers.io())
+            }
+        }
+    }
+
+    /**
+     * Delegation is not idempotent, so a request is retried only if it did not reach the
+     * policy store, or the policy store refused it without storing the policy.
+     */
+    private fun isRetryable(error: Throwable): Boolean = when (error) {
+        is ReplicaNotReachedException -> true
+        is HttpException -> error.code() == 429 || error.code() >= 500
+        else -> false
+    }
+
+    /**
+     * Calculates "full jitter" backoff, a random delay between zero and exponentially
+     * growing upper limit.
+     */
+    private fun backoffMillis(attempt: Int, config: Config): Long {
+        val exponential = config.baseBackoffMillis shl (attempt - 1).coerceAtMost(16)
+        val limit = exponential.coerceAtMost(config.maxBackoffMillis)
+        return ThreadLocalRandom.current().nextLong(limit + 1)
+    }
+
+    private fun errorMessage(throwable: Throwable): String =
+            throwable.message ?: throwable.javaClass.simpleName
+}
@@ -0,0 +1,104 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.api
+
+import org.iota.access.api.model.CommandAction
+import org.iota.access.models.*
+import org.json.JSONArray
+import org.json.JSONObject
+import java.security.MessageDigest
+import java.util.*
+
+/**
+ * Generates policy lists for [CommunicatorStub].
+ *
+ * Policies get deterministic IDs and attribute trees of the requested depth, built from
+ * the same time, execution number and subject conditions the delegation screen creates.
+ */
+class StubPolicyGenerator(seed: Long = 0) {
+
+    private val random = Random(seed)
+    private val digest = MessageDigest.getInstance("SHA-256")
+
+    fun generate(count: Int, depth: Int): JSONArray {
+        val policies = JSONArray()
+        for (index in 0 until count) policies.put(generatePolicy(index, depth))
+        return policies
+    }
+
+    /**
+     * @return policy with the ID of [index], generating it again for the same index returns
+     * a policy with different conditions
+     */
+    fun generatePolicy(index: Int, depth: Int, version: Int = 1): JSONObject {
+        val policyObject = PolicyObject(
+                obligationDeny = PolicyObligationEmpty,
+                obligationGrant = PolicyObligationEmpty,
+                policyDoc = PolicyObligationEmpty,
+                policyGoc = createAttribute(depth, index))
+        return JSONObject()
+                .put(KEY_POLICY_ID, policyId(index))
+                .put(KEY_ACTION, ACTIONS[index % ACTIONS.size])
+                .put(KEY_VERSION, version.toString())
+                .put(KEY_POLICY_OBJECT, JSONObject(policyObject.toMap()))
+    }
+
+    private fun createAttribute(depth: Int, index: Int): PolicyAttributeList {
+        if (depth <= 0) return createCondition()
+        val operation = if (depth % 2 == 0) PolicyAttributeLogical.LogicalOperator.AND else PolicyAttributeLogical.LogicalOperator.OR
+        return PolicyAttributeLogical.of(listOf(createAttribute(depth - 1, index), createAttribute(depth - 1, index)), operation)
+    }
+
+    private fun createCondition(): PolicyAttributeList = when (random.nextInt(3)) {
+        0 -> PolicyAttributeComparable.of(
+                PolicyAttributeSingle.of(PolicyAttributeTypes.TIME, (NOW_SECONDS + random.nextInt(YEAR_SECONDS) - YEAR_SECONDS / 2).toString()),
+                PolicyAttributeSingle.REQUEST_TIME,
+                if (random.nextBoolean()) PolicyAttributeComparable.Operation.LESS_THAN else PolicyAttributeComparable.Operation.GREATER_THAN)
+        1 -> PolicyAttributeComparable.of(
+                PolicyAttributeSingle.of(PolicyAttributeTypes.EXECUTION_NUM, (1 + random.nextInt(100)).toString()),
+                PolicyAttributeSingle.REQUEST_EXECUTION_NUM,
+                PolicyAttributeComparable.Operation.GREATER_OR_EQUAL)
+        else -> PolicyAttributeComparable.of(
+                PolicyAttributeSingle.of(PolicyAttributeTypes.PUBLIC_ID, String.format("%064x", random.nextLong())),
+                PolicyAttributeSingle.REQUEST_SUBJECT,
+                PolicyAttributeComparable.Operation.EQUAL)
+    }
+
+    private fun policyId(index: Int): String {
+        val hash = digest.digest(index.toString().toByteArray(Charsets.UTF_8))
+        val builder = StringBuilder(hash.size * 2)
+        for (byte in hash) builder.append(String.format("%02X", byte))
+        return builder.toString()
+    }
+
+    companion object {
+        private const val KEY_POLICY_ID = "policy_id"
+        private const val KEY_ACTION = "action"
+        private const val KEY_VERSION = "version"
+        private const val KEY_POLICY_OBJECT = "policy_object"
+        private const val YEAR_SECONDS = 365 * 24 * 3600
+        private const val NOW_SECONDS = 1_600_000_000L
+
+        private val ACTIONS = arrayOf(
+                CommandAction.KnownCommandAction.ACTION_1,
+                CommandAction.KnownCommandAction.ACTION_2,
+                CommandAction.KnownCommandAction.ACTION_3,
+                CommandAction.KnownCommandAction.ACTION_4)
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.api
+
+import org.json.JSONArray
+import org.json.JSONObject
+import java.util.*
+
+/**
+ * Versioned policy list of [CommunicatorStub], answering delta sync requests.
+ *
+ * Every sync started by a client which already knows a version of the list changes the list:
+ * one policy is removed, one is updated and one is added. The client then receives only these
+ * changes. Clients without a version, or with one older than [MAX_HISTORY] versions, receive
+ * the whole list, of which only the first page is full.
+ */
+class StubPolicyList(count: Int, private val depth: Int) {
+
+    private val generator = StubPolicyGenerator()
+    private val random = Random(0)
+    private var version = 1
+    private var nextIndex = count
+
+    /** Policies by index of their ID, in the order they are sent. */
+    private val policies = LinkedHashMap<Int, JSONObject>()
+
+    /** Version in which a policy was last added or updated, by index of its ID. */
+    private val changedIn = HashMap<Int, Int>()
+
+    /** Version in which a policy was removed, by its ID. */
+    private val removedIn = LinkedHashMap<String, Int>()
+
+    init {
+        for (index in 0 until count) {
+            policies[index] = generator.generatePolicy(index, depth)
+            changedIn[index] = version
+        }
+    }
+
+    /**
+     * @param clientVersion version of the list known by the client, sent in the first request
+     * of a sync
+     * @param cursor cursor of the page returned with the previous page of the same sync
+     * @return page of policies changed since [clientVersion], or since the version the sync
+     * started from
+     */
+    @Synchronized
+    fun page(clientVersion: String?, cursor: String?, limit: Int): JSONObject {
+        val since: Int
+        val start: Int
+        if (cursor == null) {
+            since = clientVersion?.toIntOrNull()?.takeIf { it in version - MAX_HISTORY..version } ?: 0
+            if (since > 0) change()
+            start = 0
+        } else {
+            // cursor keeps the version the sync started from, later pages do not send it
+            val parts = cursor.split(CURSOR_SEPARATOR)
+            since = parts[0].toIntOrNull() ?: 0
+            start = parts.getOrNull(1)?.toIntOrNull() ?: 0
+        }
+
+        val changed = policies.entries.filter { changedIn.getValue(it.key) > since }
+        val end = minOf(start + (if (limit > 0) limit else changed.size), changed.size)
+        val page = JSONArray()
+        for (index in start until end) page.put(changed[index].value)
+
+        val removed = JSONArray()
+        if (since > 0 && start == 0) {
+            for ((policyId, removedVersion) in removedIn) if (removedVersion > since) removed.put(policyId)
+        }
+
+        return JSONObject()
+                .put("policies", page)
+                .put("removed", removed)
+                .put("full", since == 0 && start == 0)
+                .put("version", version.toString())
+                .put("next_cursor", if (end < changed.size) "$since$CURSOR_SEPARATOR$end" else JSONObject.NULL)
+    }
+
+    private fun change() {
+        version++
+
+        if (policies.size > 1) {
+            val index = policies.keys.elementAt(random.nextInt(policies.size))
+            val policy = policies.remove(index)!!
+            changedIn.remove(index)
+            removedIn[policy.getString("policy_id")] = version
+        }
+
+        if (policies.isNotEmpty()) {
+            val index = policies.keys.elementAt(random.nextInt(policies.size))
+            policies[index] = generator.generatePolicy(index, depth, version)
+            changedIn[index] = version
+        }
+
+        val index = nextIndex++
+        policies[index] = generator.generatePolicy(index, depth, version)
+        changedIn[index] = version
+
+        removedIn.values.removeAll { it < version - MAX_HISTORY }
+    }
+
+    companion object {
+        /** Number of versions for which removed policies are remembered. */
+        private const val MAX_HISTORY = 50
+        private const val CURSOR_SEPARATOR = ":"
+    }
+}
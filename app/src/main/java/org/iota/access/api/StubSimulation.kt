@@ -0,0 +1,119 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.api
+
+import org.iota.access.api.tcp.TCPClient.TCPError
+import java.util.*
+import kotlin.math.exp
+
+/**
+ * Behaviour of [CommunicatorStub]: latency of responses, injected faults and size of the
+ * generated policy list.
+ */
+data class StubSimulation(
+        val latency: Latency = Latency.Uniform(500, 1500),
+        /** Probability that a TCP segment is lost and has to be retransmitted. */
+        val packetLossRate: Double = 0.0,
+        /** Delay added to the response for every lost segment. */
+        val retransmissionMillis: Long = 1000,
+        /** Probability that only a part of the response is received. */
+        val partialReadRate: Double = 0.0,
+        /** Probability that the device does not respond at all. */
+        val timeoutRate: Double = 0.0,
+        /** Time after which a missing response is reported as [TCPError.TIMEOUT]. */
+        val timeoutMillis: Long = 10_000,
+        /** Number of generated policies, 0 for the fixed list of two policies. */
+        val policyCount: Int = 0,
+        /** Depth of nested logical attributes in generated policies. */
+        val policyDepth: Int = 0
+) {
+
+    sealed class Latency {
+        abstract fun sample(random: Random): Long
+
+        class Fixed(private val millis: Long) : Latency() {
+            override fun sample(random: Random): Long = millis
+        }
+
+        class Uniform(private val minMillis: Long, private val maxMillis: Long) : Latency() {
+            override fun sample(random: Random): Long =
+                    minMillis + (random.nextDouble() * (maxMillis - minMillis)).toLong()
+        }
+
+        /** Heavy tailed latency of mobile networks, [sigma] controls length of the tail. */
+        class LogNormal(private val medianMillis: Long, private val sigma: Double) : Latency() {
+            override fun sample(random: Random): Long =
+                    (medianMillis * exp(sigma * random.nextGaussian())).toLong()
+        }
+    }
+
+    /**
+     * @return delay of a response of [responseLength] characters, including retransmissions
+     */
+    fun sampleDelay(random: Random, responseLength: Int): Long {
+        var delay = latency.sample(random)
+        if (packetLossRate > 0) {
+            // request and response segments
+            val segments = 1 + (responseLength + SEGMENT_SIZE - 1) / SEGMENT_SIZE
+            repeat(segments) { if (random.nextDouble() < packetLossRate) delay += retransmissionMillis }
+        }
+        return delay
+    }
+
+    companion object {
+        private const val SEGMENT_SIZE = 1400
+
+        /** Behaviour of the stub before simulation was configurable. */
+        @JvmField
+        val DEFAULT = StubSimulation()
+
+        /** Device on a busy Wi-Fi network with a list of a few hundred policies. */
+        @JvmField
+        val REALISTIC = StubSimulation(
+                latency = Latency.LogNormal(150, 0.6),
+                packetLossRate = 0.01,
+                retransmissionMillis = 300,
+                partialReadRate = 0.005,
+                timeoutRate = 0.005,
+                policyCount = 300,
+                policyDepth = 2)
+
+        /** Unreliable network and a very large list of deeply nested policies. */
+        @JvmField
+        val WORST_CASE = StubSimulation(
+                latency = Latency.LogNormal(600, 1.0),
+                packetLossRate = 0.1,
+                retransmissionMillis = 1000,
+                partialReadRate = 0.05,
+                timeoutRate = 0.05,
+                timeoutMillis = 5_000,
+                policyCount = 5_000,
+                policyDepth = 5)
+
+        /**
+         * @param name one of `default`, `realistic` and `worst_case`
+         */
+        @JvmStatic
+        fun forProfile(name: String): StubSimulation = when (name) {
+            "realistic" -> REALISTIC
+            "worst_case" -> WORST_CASE
+            else -> DEFAULT
+        }
+    }
+}
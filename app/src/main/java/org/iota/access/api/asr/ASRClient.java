@@ -28,22 +28,55 @@ import android.speech.RecognizerIntent;
 import android.speech.SpeechRecognizer;
 import androidx.annotation.MainThread;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
 import timber.log.Timber;
 
 /**
  * Class for using Automatic Speech Recognition (ASR).
+ * <p>
+ * Hypotheses are published while the user speaks through {@link #getObservablePartialResults()},
+ * so the caller can act on a likely command before recognition is complete.
  */
 @Singleton
 public class ASRClient implements RecognitionListener {
 
+    /**
+     * Number of alternatives requested from the recognizer, all of them are matched against
+     * the command list.
+     */
+    private static final int MAX_RESULTS = 5;
+
+    /** Default minimum length of an utterance. */
+    public static final int DEFAULT_MINIMUM_LENGTH_MILLIS = 3000;
+    /** Default silence after which the input is considered complete. */
+    public static final int DEFAULT_COMPLETE_SILENCE_MILLIS = 4000;
+    /** Default silence after which the input is considered possibly complete. */
+    public static final int DEFAULT_POSSIBLY_COMPLETE_SILENCE_MILLIS = 3000;
+
     private SpeechRecognizer mSpeechRecognizer;
     private Context mContext;
     private String mLanguage;
+    // null until the first check, recognizer availability does not change while app runs
+    private Boolean mIsSupported;
+    private Intent mIntent;
+    private boolean mIsListening;
+    private boolean mIsContinuous;
+
+    private int mMinimumLengthMillis = DEFAULT_MINIMUM_LENGTH_MILLIS;
+    private int mCompleteSilenceMillis = DEFAULT_COMPLETE_SILENCE_MILLIS;
+    private int mPossiblyCompleteSilenceMillis = DEFAULT_POSSIBLY_COMPLETE_SILENCE_MILLIS;
+
+    private final PublishSubject<List<String>> mPartialResults = PublishSubject.create();
+    private final PublishSubject<List<String>> mResults = PublishSubject.create();
+    private final PublishSubject<Integer> mErrors = PublishSubject.create();
 
     @Inject
     public ASRClient(Context context) {
@@ -52,25 +85,68 @@ public class ASRClient implements RecognitionListener {
     }
 
     /**
-     * Method that starts speech recognition.
+     * @return true if the device has a speech recognizer
+     */
+    public boolean isSupported() {
+        if (mIsSupported == null) {
+            PackageManager packageManager = mContext.getPackageManager();
+            List intActivities = packageManager
+                    .queryIntentActivities(new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH), 0);
+            mIsSupported = intActivities.size() > 0 && SpeechRecognizer.isRecognitionAvailable(mContext);
+        }
+        return mIsSupported;
+    }
+
+    /**
+     * Sets silence thresholds used by the recognizer, values take effect with the next
+     * {@link #startListening()}.
+     *
+     * @param minimumLengthMillis            minimum length of an utterance
+     * @param completeSilenceMillis          silence after which the input is complete
+     * @param possiblyCompleteSilenceMillis  silence after which the input is possibly complete
+     */
+    public void setSilenceThresholds(int minimumLengthMillis, int completeSilenceMillis, int possiblyCompleteSilenceMillis) {
+        mMinimumLengthMillis = minimumLengthMillis;
+        mCompleteSilenceMillis = completeSilenceMillis;
+        mPossiblyCompleteSilenceMillis = possiblyCompleteSilenceMillis;
+        mIntent = null;
+    }
+
+    /**
+     * Method that starts speech recognition of a single utterance.
      */
     @MainThread
     public void startListening() throws ASRClientException {
-        PackageManager packageManager = mContext.getPackageManager();
-
-        List intActivities = packageManager
-                .queryIntentActivities(new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH), 0);
+        startListening(false);
+    }
 
-        if (intActivities.size() == 0) {
+    /**
+     * Method that starts speech recognition.
+     * <p>
+     * Recognizer is created on the first call and reused by the following ones.
+     *
+     * @param continuous if true, listening is restarted after every result until
+     *                   {@link #stopListening()} is called
+     */
+    @MainThread
+    public void startListening(boolean continuous) throws ASRClientException {
+        if (!isSupported()) {
             throw new ASRClientException("SpeechRecognizer not supported");
         }
 
-        mSpeechRecognizer = SpeechRecognizer.createSpeechRecognizer(mContext);
-        mSpeechRecognizer.setRecognitionListener(this);
-
-        Intent intent = generateIntent();
+        if (mSpeechRecognizer == null) {
+            mSpeechRecognizer = SpeechRecognizer.createSpeechRecognizer(mContext);
+            mSpeechRecognizer.setRecognitionListener(this);
+        } else if (mIsListening) {
+            mSpeechRecognizer.cancel();
+        }
+        if (mIntent == null) {
+            mIntent = generateIntent();
+        }
 
-        mSpeechRecognizer.startListening(intent);
+        mIsContinuous = continuous;
+        mIsListening = true;
+        mSpeechRecognizer.startListening(mIntent);
 
         Timber.d("Did start ASR listening.");
     }
@@ -82,7 +158,7 @@ public class ASRClient implements RecognitionListener {
         intent.putExtra(RecognizerIntent.EXTRA_CALLING_PACKAGE, mContext.getPackageName());
 
         // Optional limit on the maximum number of results to return.
-        intent.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, 1);
+        intent.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, MAX_RESULTS);
 
         // Optional IETF language tag (as defined by BCP 47), for example "en-US".
         intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, mLanguage);
@@ -98,31 +174,67 @@ public class ASRClient implements RecognitionListener {
 
         // The minimum length of an utterance.
         intent.putExtra(RecognizerIntent.
-                EXTRA_SPEECH_INPUT_MINIMUM_LENGTH_MILLIS, 3000);
+                EXTRA_SPEECH_INPUT_MINIMUM_LENGTH_MILLIS, mMinimumLengthMillis);
 
         // The amount of time that it should take after we stop hearing
         // speech to consider the input complete.
         intent.putExtra(RecognizerIntent.
-                EXTRA_SPEECH_INPUT_COMPLETE_SILENCE_LENGTH_MILLIS, 4000);
+                EXTRA_SPEECH_INPUT_COMPLETE_SILENCE_LENGTH_MILLIS, mCompleteSilenceMillis);
 
         // The amount of time that it should take after we stop hearing
         // speech to consider the input possibly complete.
         intent.putExtra(RecognizerIntent.
-                EXTRA_SPEECH_INPUT_POSSIBLY_COMPLETE_SILENCE_LENGTH_MILLIS, 3000);
+                EXTRA_SPEECH_INPUT_POSSIBLY_COMPLETE_SILENCE_LENGTH_MILLIS, mPossiblyCompleteSilenceMillis);
 
         return intent;
     }
 
     /**
-     * Method that stops speech recognition.
+     * @return hypotheses recognized so far, published while the user speaks
+     */
+    public Observable<List<String>> getObservablePartialResults() {
+        return mPartialResults;
+    }
+
+    /**
+     * @return final hypotheses, ordered from the most to the least confident one
      */
+    public Observable<List<String>> getObservableResults() {
+        return mResults;
+    }
+
+    /**
+     * @return recognizer errors, one of {@code SpeechRecognizer.ERROR_*} constants
+     */
+    public Observable<Integer> getObservableErrors() {
+        return mErrors;
+    }
+
+    /**
+     * Method that stops speech recognition. Recognizer is kept for the next use.
+     */
+    @MainThread
     public void stopListening() {
+        mIsListening = false;
+        mIsContinuous = false;
         if (mSpeechRecognizer != null) {
-            mSpeechRecognizer.destroy();
+            mSpeechRecognizer.cancel();
         }
         Timber.d("Did stop ASR listening.");
     }
 
+    /**
+     * Stops speech recognition and releases the recognizer.
+     */
+    @MainThread
+    public void release() {
+        stopListening();
+        if (mSpeechRecognizer != null) {
+            mSpeechRecognizer.destroy();
+            mSpeechRecognizer = null;
+        }
+    }
+
     @Override
     public void onReadyForSpeech(Bundle params) {
 
@@ -150,21 +262,52 @@ public class ASRClient implements RecognitionListener {
 
     @Override
     public void onError(int error) {
-
+        Timber.d("ASR error: %d", error);
+        if (mIsContinuous && (error == SpeechRecognizer.ERROR_NO_MATCH
+                || error == SpeechRecognizer.ERROR_SPEECH_TIMEOUT)) {
+            // nothing was said, keep listening
+            restartListening();
+            return;
+        }
+        mIsListening = false;
+        mErrors.onNext(error);
     }
 
     @Override
     public void onResults(Bundle results) {
-
+        if (mIsContinuous) {
+            restartListening();
+        } else {
+            mIsListening = false;
+        }
+        mResults.onNext(getHypotheses(results));
     }
 
     @Override
     public void onPartialResults(Bundle partialResults) {
-
+        List<String> hypotheses = getHypotheses(partialResults);
+        if (!hypotheses.isEmpty()) {
+            mPartialResults.onNext(hypotheses);
+        }
     }
 
     @Override
     public void onEvent(int eventType, Bundle params) {
 
     }
+
+    private void restartListening() {
+        if (mSpeechRecognizer != null && mIsListening) {
+            if (mIntent == null) {
+                mIntent = generateIntent();
+            }
+            mSpeechRecognizer.startListening(mIntent);
+        }
+    }
+
+    private static List<String> getHypotheses(Bundle bundle) {
+        if (bundle == null) return Collections.emptyList();
+        ArrayList<String> hypotheses = bundle.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+        return hypotheses == null ? Collections.emptyList() : hypotheses;
+    }
 }
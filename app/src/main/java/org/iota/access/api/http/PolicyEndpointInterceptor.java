@@ -0,0 +1,129 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.iota.access.api.http;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends policy store requests to replica selected by {@link PolicyEndpointResolver}. If
+ * replica fails, request is repeated on the next one, as long as repeating it is safe:
+ * requests which modify policies, such as {@code PUT /policy} which creates one, are only
+ * repeated if the connection to the replica could not be established, so they can not be
+ * applied twice. Whether the connection was established is recorded by
+ * {@link ConnectionMarker}, which has to be added as a network interceptor.
+ * <p>
+ * Requests to other hosts pass through untouched.
+ */
+public class PolicyEndpointInterceptor implements Interceptor {
+
+    private static final String PLACEHOLDER_HOST = HttpUrl.get(PolicyEndpointResolver.BASE_URL).host();
+
+    private final PolicyEndpointResolver mResolver;
+
+    public PolicyEndpointInterceptor(PolicyEndpointResolver resolver) {
+        mResolver = resolver;
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        HttpUrl url = request.url();
+        if (!PLACEHOLDER_HOST.equals(url.host())) {
+            return chain.proceed(request);
+        }
+
+        List<PolicyEndpointResolver.Endpoint> candidates = mResolver.getCandidates();
+        IOException lastException = null;
+        boolean reached = false;
+        for (PolicyEndpointResolver.Endpoint endpoint : candidates) {
+            HttpUrl endpointUrl = endpoint.getUrl();
+            HttpUrl resolvedUrl = url.newBuilder()
+                    .scheme(endpointUrl.scheme())
+                    .host(endpointUrl.host())
+                    .port(endpointUrl.port())
+                    .build();
+
+            Attempt attempt = new Attempt();
+            long start = System.nanoTime();
+            try {
+                Response response = chain.proceed(request.newBuilder()
+                        .url(resolvedUrl)
+                        .tag(Attempt.class, attempt)
+                        .build());
+                mResolver.reportSuccess(endpoint, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return response;
+            } catch (IOException e) {
+                lastException = e;
+                // cancelled call says nothing about the replica
+                if (chain.call().isCanceled()) throw e;
+                mResolver.reportFailure(endpoint);
+                reached |= attempt.mConnected;
+                if (!isSafeToRepeat(request, attempt)) break;
+            }
+        }
+        if (lastException == null) throw new IOException("Policy store address is not configured");
+        throw reached ? lastException : new ReplicaNotReachedException(lastException);
+    }
+
+    private static boolean isSafeToRepeat(Request request, Attempt attempt) {
+        switch (request.method()) {
+            case "GET":
+            case "HEAD":
+            case "OPTIONS":
+                return true;
+            default:
+                // failed while resolving, connecting or in TLS handshake, including a connect
+                // timeout, so the request did not reach the replica
+                return !attempt.mConnected;
+        }
+    }
+
+    /**
+     * Request sent to one replica.
+     */
+    private static class Attempt {
+        volatile boolean mConnected;
+    }
+
+    /**
+     * Network interceptor marking requests for which the connection to the replica was
+     * established, so that they might have reached it.
+     */
+    public static class ConnectionMarker implements Interceptor {
+
+        @NonNull
+        @Override
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            Attempt attempt = chain.request().tag(Attempt.class);
+            if (attempt != null) attempt.mConnected = true;
+            return chain.proceed(chain.request());
+        }
+    }
+}
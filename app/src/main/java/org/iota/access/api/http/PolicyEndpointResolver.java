@@ -0,0 +1,244 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.iota.access.api.http;
+
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.iota.access.SettingsFragment;
+import org.iota.access.di.AppSharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import okhttp3.HttpUrl;
+import timber.log.Timber;
+
+/**
+ * Resolves policy store endpoint for every request.
+ * <p>
+ * Policy store address is read from preferences and reloaded whenever it changes, so
+ * Retrofit services can be created once against {@link #BASE_URL} placeholder. Address
+ * preference may contain several comma separated replicas ({@code host},
+ * {@code host:port}, IPv6 literal or {@code [IPv6 literal]:port}). Replicas are ordered by measured latency and a replica which fails
+ * is skipped for an exponentially growing period of time.
+ */
+@Singleton
+public class PolicyEndpointResolver implements SharedPreferences.OnSharedPreferenceChangeListener {
+
+    /**
+     * Base URL to be used for policy store services. Its scheme, host and port are replaced
+     * with the selected replica by {@link PolicyEndpointInterceptor}.
+     */
+    public static final String BASE_URL = "http://policy.store/";
+
+    private static final String DEFAULT_SERVER = "policy.store.ip.addr";
+    private static final int DEFAULT_PORT = 6008;
+    private static final long MAX_FAILURE_BACKOFF_MS = 30_000;
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    private final AppSharedPreferences mPreferences;
+    private volatile List<Endpoint> mEndpoints = Collections.emptyList();
+
+    @Inject
+    public PolicyEndpointResolver(AppSharedPreferences preferences) {
+        mPreferences = preferences;
+        reload();
+        // preferences keep only weak reference to listener, resolver is a singleton so it stays alive
+        mPreferences.registerOnChangeListener(this);
+    }
+
+    /**
+     * Parses comma separated list of policy store servers.
+     *
+     * @param servers     comma separated list of {@code host}, {@code host:port}, IPv6 literal
+     *                    or {@code [IPv6 literal]:port} items
+     * @param defaultPort port used for items without explicit port
+     * @return list of endpoint URLs
+     * @throws IllegalArgumentException if list is empty or any of items is not valid
+     */
+    @NonNull
+    public static List<HttpUrl> parseEndpoints(@Nullable String servers, @Nullable String defaultPort) {
+        if (servers == null || servers.trim().isEmpty()) {
+            throw new IllegalArgumentException("Policy store address is empty");
+        }
+        List<HttpUrl> urls = new ArrayList<>();
+        for (String item : servers.split(",")) {
+            String server = item.trim();
+            if (server.isEmpty()) continue;
+            String url = toUrl(server, defaultPort);
+            HttpUrl httpUrl = url != null ? HttpUrl.parse(url) : null;
+            if (httpUrl == null) {
+                throw new IllegalArgumentException("Invalid policy store address: " + server);
+            }
+            urls.add(httpUrl);
+        }
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("Policy store address is empty");
+        }
+        return urls;
+    }
+
+    /**
+     * @return URL of the server, or {@code null} if its brackets or port are malformed
+     */
+    @Nullable
+    private static String toUrl(@NonNull String server, @Nullable String defaultPort) {
+        String host;
+        String port;
+        if (server.startsWith("[")) {
+            // bracketed IPv6 literal, port may only follow the closing bracket
+            int end = server.indexOf(']');
+            if (end < 0) return null;
+            host = server.substring(0, end + 1);
+            String rest = server.substring(end + 1);
+            if (rest.isEmpty()) {
+                port = defaultPort;
+            } else if (rest.startsWith(":")) {
+                port = rest.substring(1);
+            } else {
+                return null;
+            }
+        } else {
+            int colon = server.indexOf(':');
+            if (colon < 0) {
+                host = server;
+                port = defaultPort;
+            } else if (colon != server.lastIndexOf(':')) {
+                // bare IPv6 literal can not have a port
+                host = "[" + server + "]";
+                port = defaultPort;
+            } else {
+                host = server.substring(0, colon);
+                port = server.substring(colon + 1);
+            }
+        }
+        if (port == null || port.isEmpty()) return null;
+        return "http://" + host + ":" + port;
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (SettingsFragment.Keys.PREF_KEY_POLICY_IP_ADDRESS.equals(key)
+                || SettingsFragment.Keys.PREF_KEY_POLICY_PORT_NUMBER.equals(key)) {
+            reload();
+        }
+    }
+
+    /**
+     * @return configured replicas, healthy ones first ordered by latency, followed by
+     * replicas which recently failed ordered by time when they may be retried
+     */
+    @NonNull
+    public List<Endpoint> getCandidates() {
+        List<Endpoint> endpoints = mEndpoints;
+        if (endpoints.size() <= 1) return endpoints;
+
+        long now = SystemClock.elapsedRealtime();
+        List<Endpoint> healthy = new ArrayList<>(endpoints.size());
+        List<Endpoint> failing = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.mRetryAfter <= now) {
+                healthy.add(endpoint);
+            } else {
+                failing.add(endpoint);
+            }
+        }
+        Collections.sort(healthy, (first, second) -> Double.compare(first.mLatencyMs, second.mLatencyMs));
+        Collections.sort(failing, (first, second) -> Long.compare(first.mRetryAfter, second.mRetryAfter));
+        healthy.addAll(failing);
+        return healthy;
+    }
+
+    void reportSuccess(Endpoint endpoint, long latencyMs) {
+        synchronized (endpoint) {
+            endpoint.mLatencyMs = endpoint.mSamples == 0
+                    ? latencyMs
+                    : LATENCY_SMOOTHING * latencyMs + (1 - LATENCY_SMOOTHING) * endpoint.mLatencyMs;
+            endpoint.mSamples++;
+            endpoint.mFailures = 0;
+            endpoint.mRetryAfter = 0;
+        }
+    }
+
+    void reportFailure(Endpoint endpoint) {
+        synchronized (endpoint) {
+            endpoint.mFailures++;
+            long backoff = Math.min(MAX_FAILURE_BACKOFF_MS, 1000L << Math.min(endpoint.mFailures - 1, 5));
+            endpoint.mRetryAfter = SystemClock.elapsedRealtime() + backoff;
+        }
+        Timber.w("Policy store endpoint %s failed %d time(s)", endpoint.mUrl, endpoint.mFailures);
+    }
+
+    private void reload() {
+        String servers = mPreferences.getString(SettingsFragment.Keys.PREF_KEY_POLICY_IP_ADDRESS, DEFAULT_SERVER);
+        String port = String.valueOf(mPreferences.getInt(SettingsFragment.Keys.PREF_KEY_POLICY_PORT_NUMBER, DEFAULT_PORT));
+        List<HttpUrl> urls;
+        try {
+            urls = parseEndpoints(servers, port);
+        } catch (IllegalArgumentException e) {
+            Timber.e(e);
+            return;
+        }
+
+        // keep statistics of replicas which are still configured
+        List<Endpoint> old = mEndpoints;
+        List<Endpoint> endpoints = new ArrayList<>(urls.size());
+        for (HttpUrl url : urls) {
+            Endpoint endpoint = null;
+            for (Endpoint candidate : old) {
+                if (candidate.mUrl.equals(url)) {
+                    endpoint = candidate;
+                    break;
+                }
+            }
+            endpoints.add(endpoint != null ? endpoint : new Endpoint(url));
+        }
+        mEndpoints = Collections.unmodifiableList(endpoints);
+    }
+
+    public static class Endpoint {
+        private final HttpUrl mUrl;
+        private volatile double mLatencyMs = 0;
+        private volatile long mRetryAfter = 0;
+        private int mSamples = 0;
+        private int mFailures = 0;
+
+        Endpoint(HttpUrl url) {
+            mUrl = url;
+        }
+
+        @NonNull
+        public HttpUrl getUrl() {
+            return mUrl;
+        }
+
+        public double getLatencyMs() {
+            return mLatencyMs;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.iota.access.api.http;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * In-process store of HTTP request metrics.
+ * <p>
+ * Every request is aggregated into per endpoint counters and latency histogram, and the
+ * latest {@link #CAPACITY} requests are kept in a preallocated ring buffer. Recording
+ * does not allocate, apart from the first request to a new endpoint.
+ */
+@Singleton
+public class RequestMetrics {
+
+    public static final int CAPACITY = 256;
+
+    /**
+     * Upper bounds (inclusive, in milliseconds) of latency histogram buckets. Last bucket
+     * holds everything slower than the last bound.
+     */
+    private static final long[] LATENCY_BUCKETS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final ConcurrentHashMap<String, EndpointStats> mEndpoints = new ConcurrentHashMap<>();
+
+    private final String[] mRingEndpoint = new String[CAPACITY];
+    private final long[] mRingLatencyMs = new long[CAPACITY];
+    private final long[] mRingRequestBytes = new long[CAPACITY];
+    private final long[] mRingResponseBytes = new long[CAPACITY];
+    private final int[] mRingCode = new int[CAPACITY];
+    private long mRingCount = 0;
+
+    @Inject
+    public RequestMetrics() {
+    }
+
+    /**
+     * Records one finished request.
+     *
+     * @param endpoint      endpoint key, for example {@code "PUT /policy"}
+     * @param latencyMs     time from sending request until response headers were received
+     * @param requestBytes  size of request body, or -1 if unknown
+     * @param responseBytes size of response body, or -1 if unknown
+     * @param code          HTTP status code, or 0 if request failed without a response
+     */
+    public void record(@NonNull String endpoint, long latencyMs, long requestBytes, long responseBytes, int code) {
+        EndpointStats stats = mEndpoints.get(endpoint);
+        if (stats == null) {
+            EndpointStats created = new EndpointStats(endpoint);
+            stats = mEndpoints.putIfAbsent(endpoint, created);
+            if (stats == null) stats = created;
+        }
+        stats.record(latencyMs, requestBytes, responseBytes, code);
+
+        synchronized (this) {
+            int index = (int) (mRingCount % CAPACITY);
+            mRingEndpoint[index] = endpoint;
+            mRingLatencyMs[index] = latencyMs;
+            mRingRequestBytes[index] = requestBytes;
+            mRingResponseBytes[index] = responseBytes;
+            mRingCode[index] = code;
+            mRingCount++;
+        }
+    }
+
+    /**
+     * @return aggregated statistics of every endpoint seen so far
+     */
+    public List<EndpointStats> getEndpointStats() {
+        return new ArrayList<>(mEndpoints.values());
+    }
+
+    /**
+     * @return the latest requests, oldest first
+     */
+    public synchronized List<Sample> getRecentSamples() {
+        int size = (int) Math.min(mRingCount, CAPACITY);
+        List<Sample> samples = new ArrayList<>(size);
+        for (long i = mRingCount - size; i < mRingCount; i++) {
+            int index = (int) (i % CAPACITY);
+            samples.add(new Sample(mRingEndpoint[index], mRingLatencyMs[index],
+                    mRingRequestBytes[index], mRingResponseBytes[index], mRingCode[index]));
+        }
+        return samples;
+    }
+
+    public void reset() {
+        mEndpoints.clear();
+        synchronized (this) {
+            mRingCount = 0;
+        }
+    }
+
+    public static class Sample {
+        public final String endpoint;
+        public final long latencyMs;
+        public final long requestBytes;
+        public final long responseBytes;
+        public final int code;
+
+        Sample(String endpoint, long latencyMs, long requestBytes, long responseBytes, int code) {
+            this.endpoint = endpoint;
+            this.latencyMs = latencyMs;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            this.code = code;
+        }
+
+        public boolean isError() {
+            return code == 0 || code >= 400;
+        }
+    }
+
+    public static class EndpointStats {
+        private final String mEndpoint;
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mErrorCount = new AtomicLong();
+        private final AtomicLong mRequestBytes = new AtomicLong();
+        private final AtomicLong mResponseBytes = new AtomicLong();
+        private final AtomicLong mTotalLatencyMs = new AtomicLong();
+        private final AtomicLongArray mHistogram = new AtomicLongArray(LATENCY_BUCKETS_MS.length + 1);
+
+        EndpointStats(String endpoint) {
+            mEndpoint = endpoint;
+        }
+
+        void record(long latencyMs, long requestBytes, long responseBytes, int code) {
+            mCount.incrementAndGet();
+            if (code == 0 || code >= 400) mErrorCount.incrementAndGet();
+            if (requestBytes > 0) mRequestBytes.addAndGet(requestBytes);
+            if (responseBytes > 0) mResponseBytes.addAndGet(responseBytes);
+            mTotalLatencyMs.addAndGet(latencyMs);
+
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS_MS.length && latencyMs > LATENCY_BUCKETS_MS[bucket]) {
+                bucket++;
+            }
+            mHistogram.incrementAndGet(bucket);
+        }
+
+        public String getEndpoint() {
+            return mEndpoint;
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getErrorCount() {
+            return mErrorCount.get();
+        }
+
+        public float getErrorRate() {
+            long count = mCount.get();
+            return count == 0 ? 0f : (float) mErrorCount.get() / count;
+        }
+
+        public long getRequestBytes() {
+            return mRequestBytes.get();
+        }
+
+        public long getResponseBytes() {
+            return mResponseBytes.get();
+        }
+
+        public long getAverageLatencyMs() {
+            long count = mCount.get();
+            return count == 0 ? 0 : mTotalLatencyMs.get() / count;
+        }
+
+        /**
+         * Estimates latency percentile from histogram.
+         *
+         * @param percentile value between 0 and 1
+         * @return upper bound of the bucket containing requested percentile, or
+         * {@link Long#MAX_VALUE} if it falls into the last, unbounded, bucket
+         */
+        public long getLatencyPercentileMs(float percentile) {
+            long count = mCount.get();
+            if (count == 0) return 0;
+            long target = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < LATENCY_BUCKETS_MS.length; i++) {
+                seen += mHistogram.get(i);
+                if (seen >= target) return LATENCY_BUCKETS_MS[i];
+            }
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * @return copy of latency histogram, see {@link #getLatencyBucketBounds()}
+         */
+        public long[] getLatencyHistogram() {
+            long[] histogram = new long[mHistogram.length()];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = mHistogram.get(i);
+            }
+            return histogram;
+        }
+
+        public static long[] getLatencyBucketBounds() {
+            return LATENCY_BUCKETS_MS.clone();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.iota.access.api.http;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Interceptor recording latency, transferred bytes and outcome of every request into
+ * {@link RequestMetrics}.
+ * <p>
+ * Body sizes are taken from declared content length, bodies are never read or buffered.
+ */
+public class RequestMetricsInterceptor implements Interceptor {
+
+    private final RequestMetrics mMetrics;
+
+    public RequestMetricsInterceptor(RequestMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = request.method() + " " + request.url().encodedPath();
+        RequestBody requestBody = request.body();
+        long requestBytes = requestBody != null ? requestBody.contentLength() : 0;
+
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            mMetrics.record(endpoint, elapsedMillis(start), requestBytes, -1, 0);
+            throw e;
+        }
+
+        ResponseBody responseBody = response.body();
+        long responseBytes = responseBody != null ? responseBody.contentLength() : 0;
+        mMetrics.record(endpoint, elapsedMillis(start), requestBytes, responseBytes, response.code());
+        return response;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
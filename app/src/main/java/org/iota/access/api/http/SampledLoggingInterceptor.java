@@ -0,0 +1,58 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.iota.access.api.http;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.logging.HttpLoggingInterceptor;
+
+/**
+ * Logs only a random sample of requests through {@link HttpLoggingInterceptor}, all other
+ * requests pass through untouched.
+ */
+public class SampledLoggingInterceptor implements Interceptor {
+
+    private final HttpLoggingInterceptor mDelegate;
+    private final float mSampleRate;
+
+    /**
+     * @param level      level used for sampled requests
+     * @param sampleRate share of requests to be logged, between 0 and 1
+     */
+    public SampledLoggingInterceptor(HttpLoggingInterceptor.Level level, float sampleRate) {
+        mDelegate = new HttpLoggingInterceptor();
+        mDelegate.setLevel(level);
+        mSampleRate = sampleRate;
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        if (mSampleRate >= 1f || ThreadLocalRandom.current().nextFloat() < mSampleRate) {
+            return mDelegate.intercept(chain);
+        }
+        return chain.proceed(chain.request());
+    }
+}
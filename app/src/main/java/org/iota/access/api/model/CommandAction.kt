@@ -20,6 +20,8 @@ package org.iota.access.api.model
 
 import androidx.annotation.DrawableRes
 import org.iota.access.R
+import org.iota.access.models.PolicyObject
+import org.iota.access.models.evaluation.PolicyProgram
 import org.iota.access.utils.ResourceProvider
 import org.json.JSONArray
 import org.json.JSONObject
@@ -36,7 +38,11 @@ class CommandAction(
         val actionName: String,
         val headerName: String,
         var cost: Float? = null,
-        val deletable: Boolean = false
+        val deletable: Boolean = false,
+        /** Version of the policy, if device reports it. */
+        val version: String? = null,
+        /** Compiled policy, available only if device sent policy object along with the policy. */
+        val policyProgram: PolicyProgram? = null
 ) {
 
     var isPaid: Boolean
@@ -51,6 +57,20 @@ class CommandAction(
             }
         }
 
+    /**
+     * @return copy of this command which is marked as paid
+     */
+    fun paidCopy(): CommandAction = CommandAction(
+            policyId = policyId,
+            action = action,
+            imageResId = imageResId,
+            actionName = actionName,
+            headerName = headerName,
+            cost = null,
+            deletable = deletable,
+            version = version,
+            policyProgram = policyProgram)
+
     fun toMap(): Map<String, Any?> = mapOf(
             POLICY_ID to policyId,
             ACTION to action,
@@ -68,6 +88,8 @@ class CommandAction(
         private const val ACTION = "action"
         private const val POLICY_ID = "policy_id"
         private const val COST = "cost"
+        private const val POLICY_OBJECT = "policy_object"
+        private const val VERSION = "version"
 
         @Suppress("unused")
         @JvmStatic
@@ -81,6 +103,21 @@ class CommandAction(
             return actions
         }
 
+        /**
+         * @return user friendly name of [action]
+         */
+        @JvmStatic
+        fun actionNameOf(action: String, resourceProvider: ResourceProvider): String {
+            val actionNameResId: Int = when (action.toLowerCase(Locale.ROOT)) {
+                KnownCommandAction.ACTION_1 -> R.string.action_1
+                KnownCommandAction.ACTION_2 -> R.string.action_2
+                KnownCommandAction.ACTION_3 -> R.string.action_3
+                KnownCommandAction.ACTION_4 -> R.string.action_4
+                else -> 0
+            }
+            return if (actionNameResId == 0) "Unknown" else resourceProvider.getString(actionNameResId)
+        }
+
         @JvmStatic
         fun fromJSON(json: JSONObject, resourceProvider: ResourceProvider): CommandAction? {
             val action = json.optString(ACTION) ?: return null
@@ -91,14 +128,7 @@ class CommandAction(
 
             val imageResId = R.drawable.ic_key
 
-            val actionNameResId: Int = when (action.toLowerCase(Locale.ROOT)) {
-                KnownCommandAction.ACTION_1 -> R.string.action_1
-                KnownCommandAction.ACTION_2 -> R.string.action_2
-                KnownCommandAction.ACTION_3 -> R.string.action_3
-                KnownCommandAction.ACTION_4 -> R.string.action_4
-                else -> 0
-            }
-            val actionName = if (actionNameResId == 0) "Unknown" else resourceProvider.getString(actionNameResId)
+            val actionName = actionNameOf(action, resourceProvider)
 
             val headerNameResId: Int = when (action.toLowerCase(Locale.ROOT)) {
                 KnownCommandAction.ACTION_1 -> R.string.action_1
@@ -109,13 +139,19 @@ class CommandAction(
             }
             val headerName = if (headerNameResId == 0) "Unknown" else resourceProvider.getString(headerNameResId)
 
+            val policyProgram = json.optJSONObject(POLICY_OBJECT)
+                    ?.let { PolicyObject.fromJSON(it) }
+                    ?.let { PolicyProgram.compile(it) }
+
             return CommandAction(
                     policyId = policyId,
                     action = action,
                     imageResId = imageResId,
                     actionName = actionName,
                     headerName = headerName,
-                    cost = cost)
+                    cost = cost,
+                    version = if (json.has(VERSION)) json.optString(VERSION) else null,
+                    policyProgram = policyProgram)
         }
     }
 
@@ -40,13 +40,27 @@ object CommunicationMessage {
     const val REGISTER_USER = "register_user"
     const val USER = "user"
     const val CLEAR_ALL_USERS = "clear_all_users"
+    const val POLICY_LIST_VERSION_ELEMENT = "version"
+    const val POLICY_LIST_CURSOR_ELEMENT = "cursor"
+    const val POLICY_LIST_LIMIT_ELEMENT = "limit"
 
+    /**
+     * @param version Version of the policy list known to the client. If present, device
+     * may respond only with changes since that version.
+     * @param cursor Cursor of the page to be loaded, as returned with the previous page.
+     * If `null`, the first page is requested.
+     * @param limit Maximum number of policies in the response, or `0` for no limit.
+     */
     @JvmStatic
-    fun makePolicyListRequest(userId: String): String {
+    @JvmOverloads
+    fun makePolicyListRequest(userId: String, version: String? = null, cursor: String? = null, limit: Int = 0): String {
         val json = JSONObject()
         try {
             json.put(CMD_ELEMENT, GET_POLICY_LIST)
             json.put(USER_ID_ELEMENT, userId)
+            if (version != null) json.put(POLICY_LIST_VERSION_ELEMENT, version)
+            if (cursor != null) json.put(POLICY_LIST_CURSOR_ELEMENT, cursor)
+            if (limit > 0) json.put(POLICY_LIST_LIMIT_ELEMENT, limit)
         } catch (e: JSONException) {
             e.printStackTrace()
         }
@@ -107,6 +121,20 @@ object CommunicationMessage {
         return json.toString()
     }
 
+    /**
+     * @return value of [element] in message, or `null` if message does not contain it
+     */
+    @JvmStatic
+    fun getElementFromMessage(message: String, element: String): String? {
+        try {
+            val jsonObject = JSONObject(message)
+            return if (jsonObject.has(element)) jsonObject.optString(element) else null
+        } catch (e: JSONException) {
+            e.printStackTrace()
+        }
+        return null
+    }
+
     @JvmStatic
     fun getCmdFromMessage(message: String): String? {
         try {
@@ -0,0 +1,81 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.api.model
+
+import com.google.gson.JsonElement
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+
+/**
+ * Response to [CommunicationMessage.GET_POLICY_LIST] request.
+ *
+ * Devices which do not support delta sync respond with plain array of policies, which is
+ * treated as a full update without version. Devices supporting it respond with an object
+ * containing changed policies, IDs of removed policies and the new version of the list.
+ * Such response may be one page of the list, in which case it contains cursor of the next
+ * page.
+ */
+class PolicyListUpdate(
+        /** If `true`, [policies] replace every previously known policy. */
+        val isFull: Boolean,
+        val policies: JSONArray,
+        val removedPolicyIds: List<String>,
+        val version: String?,
+        /** Cursor of the next page, or `null` if this is the last page. */
+        val nextCursor: String? = null
+) {
+
+    companion object {
+        private const val POLICIES = "policies"
+        private const val REMOVED = "removed"
+        private const val VERSION = "version"
+        private const val FULL = "full"
+        private const val NEXT_CURSOR = "next_cursor"
+
+        @JvmStatic
+        fun fromJsonElement(jsonElement: JsonElement): PolicyListUpdate? = try {
+            when {
+                jsonElement.isJsonArray -> PolicyListUpdate(
+                        isFull = true,
+                        policies = JSONArray(jsonElement.toString()),
+                        removedPolicyIds = listOf(),
+                        version = null)
+                jsonElement.isJsonObject -> fromJSON(JSONObject(jsonElement.toString()))
+                else -> null
+            }
+        } catch (ignored: JSONException) {
+            null
+        }
+
+        private fun fromJSON(json: JSONObject): PolicyListUpdate? {
+            val policies = json.optJSONArray(POLICIES) ?: return null
+            val removedArray = json.optJSONArray(REMOVED)
+            val removed = mutableListOf<String>()
+            if (removedArray != null) {
+                for (index in 0 until removedArray.length()) {
+                    removedArray.optString(index)?.let { if (it.isNotEmpty()) removed.add(it) }
+                }
+            }
+            val version = if (json.has(VERSION)) json.optString(VERSION) else null
+            val nextCursor = if (json.isNull(NEXT_CURSOR)) null else json.optString(NEXT_CURSOR)
+            return PolicyListUpdate(json.optBoolean(FULL, false), policies, removed, version, nextCursor)
+        }
+    }
+}
@@ -49,4 +49,27 @@ public class PSDelegatePolicyRequest extends PSSendCommandRequest implements Ser
         this.signature = signature;
     }
 
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public Map<String, Object> getPolicy() {
+        return policy;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return ID of the delegated policy, or {@code null} if policy does not contain it
+     */
+    public String getPolicyId() {
+        Object policyId = policy != null ? policy.get("policy_id") : null;
+        return policyId != null ? policyId.toString() : null;
+    }
 }
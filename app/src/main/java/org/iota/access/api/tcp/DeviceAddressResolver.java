@@ -0,0 +1,122 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.iota.access.api.tcp;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Resolves access device host to the addresses a connection is attempted to.
+ * <p>
+ * DNS results are cached for {@link #DNS_TTL_MILLIS}, so the lookup is not repeated for
+ * every command. A host with several addresses has several candidates, which are raced
+ * by {@link NioEngine}.
+ */
+@Singleton
+public class DeviceAddressResolver {
+
+    private static final long DNS_TTL_MILLIS = 60_000;
+
+    private final Map<String, CacheEntry> mDnsCache = new HashMap<>();
+
+    @Inject
+    public DeviceAddressResolver() {
+    }
+
+    /**
+     * @return candidate addresses of the host, with IPv6 and IPv4 interleaved
+     * @throws UnknownHostException if host can not be resolved
+     */
+    @NonNull
+    @WorkerThread
+    public List<InetAddress> resolve(@NonNull String host) throws UnknownHostException {
+        return lookup(host);
+    }
+
+    /**
+     * Drops cached DNS result of the host, after none of its addresses could be connected.
+     */
+    public synchronized void invalidate(@NonNull String host) {
+        mDnsCache.remove(host);
+    }
+
+    private List<InetAddress> lookup(String host) throws UnknownHostException {
+        synchronized (this) {
+            CacheEntry entry = mDnsCache.get(host);
+            if (entry != null && SystemClock.elapsedRealtime() < entry.expiresAt) {
+                return entry.addresses;
+            }
+        }
+
+        // lookup blocks, so it is done outside of the lock
+        List<InetAddress> addresses = interleave(InetAddress.getAllByName(host));
+        synchronized (this) {
+            mDnsCache.put(host, new CacheEntry(addresses, SystemClock.elapsedRealtime() + DNS_TTL_MILLIS));
+        }
+        return addresses;
+    }
+
+    /**
+     * Orders addresses as RFC 8305 suggests, alternating IPv6 and IPv4 and starting with
+     * the family of the first address returned by the system resolver.
+     */
+    private static List<InetAddress> interleave(InetAddress[] addresses) {
+        List<InetAddress> first = new ArrayList<>();
+        List<InetAddress> second = new ArrayList<>();
+        boolean firstIsIpv6 = addresses.length > 0 && addresses[0] instanceof Inet6Address;
+        for (InetAddress address : addresses) {
+            if ((address instanceof Inet6Address) == firstIsIpv6) {
+                first.add(address);
+            } else {
+                second.add(address);
+            }
+        }
+
+        List<InetAddress> result = new ArrayList<>(addresses.length);
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if (i < first.size()) result.add(first.get(i));
+            if (i < second.size()) result.add(second.get(i));
+        }
+        return result;
+    }
+
+    private static class CacheEntry {
+        final List<InetAddress> addresses;
+        final long expiresAt;
+
+        CacheEntry(List<InetAddress> addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.iota.access.api.tcp;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Non-blocking connection driven by {@link NioEngine}.
+ * <p>
+ * Received data is either delivered to a {@link Listener} on the loop thread, or kept in
+ * the inbound buffer for blocking reads through {@link #getInputStream()}, which libdac
+ * needs. Writes are queued and written by the loop thread when the channel is ready.
+ * Reading stops while the inbound buffer is full, so a slow reader pushes back on the
+ * device instead of buffering without bound.
+ */
+final class NioConnection implements NioEngine.Handler, NioEngine.Timed {
+
+    private static final int INBOUND_L = 16 * 1024;
+
+    /**
+     * Receives data on the loop thread.
+     */
+    interface Listener {
+        void onData(byte[] data, int length);
+
+        /**
+         * @param error null if the device closed the connection, cause of the failure otherwise
+         */
+        void onClosed(@Nullable IOException error);
+    }
+
+    private final NioEngine mEngine;
+    private final SocketChannel mChannel;
+    private final SelectionKey mKey;
+    private final int mReadTimeoutMillis;
+    private final int mWriteTimeoutMillis;
+
+    // guarded by this
+    private final ByteBuffer mInbound = ByteBuffer.allocate(INBOUND_L);
+    private final Queue<ByteBuffer> mOutbound = new ArrayDeque<>();
+    private Listener mListener;
+    private boolean mResponseExpected;
+    private long mLastActivity;
+    private boolean mEndOfStream;
+    private boolean mClosed;
+    private IOException mError;
+
+    private final InputStream mInputStream = new ConnectionInputStream();
+    private final OutputStream mOutputStream = new ConnectionOutputStream();
+
+    /**
+     * Called on the loop thread with connected channel.
+     */
+    NioConnection(NioEngine engine, SocketChannel channel, SelectionKey key, SocketProfile profile) {
+        mEngine = engine;
+        mChannel = channel;
+        mKey = key;
+        mReadTimeoutMillis = profile.getReadTimeoutMillis();
+        mWriteTimeoutMillis = profile.getWriteTimeoutMillis();
+        mKey.attach(this);
+        mKey.interestOps(SelectionKey.OP_READ);
+        mEngine.addTimed(this);
+    }
+
+    /**
+     * Delivers received data to the listener, instead of keeping it for the input stream.
+     */
+    synchronized void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Starts or stops the read timeout of the listener. While a response is expected, the
+     * connection fails if the device sends nothing for the read timeout.
+     */
+    synchronized void setResponseExpected(boolean responseExpected) {
+        mResponseExpected = responseExpected;
+        mLastActivity = SystemClock.elapsedRealtime();
+        // deadline of the loop may have changed
+        mEngine.execute(() -> { });
+    }
+
+    synchronized boolean isResponseExpected() {
+        return mResponseExpected;
+    }
+
+    @NonNull
+    InputStream getInputStream() {
+        return mInputStream;
+    }
+
+    @NonNull
+    OutputStream getOutputStream() {
+        return mOutputStream;
+    }
+
+    /**
+     * Queues data to be written, without waiting for it.
+     */
+    synchronized void write(byte[] data, int offset, int length) throws IOException {
+        checkOpen();
+        byte[] copy = new byte[length];
+        System.arraycopy(data, offset, copy, 0, length);
+        mOutbound.add(ByteBuffer.wrap(copy));
+        mEngine.execute(this::updateInterest);
+    }
+
+    /**
+     * Closes the connection, without waiting for queued data to be written. Listener is not
+     * notified.
+     */
+    void close() {
+        synchronized (this) {
+            if (mClosed) return;
+            mClosed = true;
+            mOutbound.clear();
+            notifyAll();
+        }
+        mEngine.execute(this::closeChannel);
+    }
+
+    private void checkOpen() throws IOException {
+        if (mError != null) throw new IOException(mError);
+        if (mClosed || mEndOfStream || !mChannel.isOpen()) throw new IOException("Connection closed");
+    }
+
+    @Override
+    public void onReady(SelectionKey key) {
+        if (key.isReadable()) onReadable();
+        if (key.isValid() && key.isWritable()) onWritable();
+    }
+
+    private void onReadable() {
+        Listener listener;
+        byte[] data = null;
+        int length = 0;
+        boolean endOfStream;
+        synchronized (this) {
+            int read;
+            try {
+                read = mChannel.read(mInbound);
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            if (read < 0) {
+                mEndOfStream = true;
+                notifyAll();
+                closeChannel();
+            } else {
+                mLastActivity = SystemClock.elapsedRealtime();
+            }
+
+            endOfStream = mEndOfStream;
+            listener = mListener;
+            if (listener != null && mInbound.position() > 0) {
+                mInbound.flip();
+                length = mInbound.remaining();
+                data = new byte[length];
+                mInbound.get(data);
+                mInbound.clear();
+            } else if (listener == null) {
+                notifyAll();
+                updateInterest();
+            }
+        }
+
+        if (listener == null) return;
+        if (data != null) listener.onData(data, length);
+        if (endOfStream) listener.onClosed(null);
+    }
+
+    private void onWritable() {
+        synchronized (this) {
+            try {
+                while (!mOutbound.isEmpty()) {
+                    ByteBuffer buffer = mOutbound.peek();
+                    mChannel.write(buffer);
+                    if (buffer.hasRemaining()) break;
+                    mOutbound.poll();
+                }
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            if (mOutbound.isEmpty()) {
+                // read timeout of the response starts when the request is written
+                mLastActivity = SystemClock.elapsedRealtime();
+                notifyAll();
+            }
+            updateInterest();
+        }
+    }
+
+    /**
+     * Called on the loop thread, after the connection failed.
+     */
+    private void fail(IOException error) {
+        Listener listener;
+        synchronized (this) {
+            if (mClosed || mError != null) return;
+            mError = error;
+            listener = mListener;
+            notifyAll();
+        }
+        closeChannel();
+        if (listener != null) listener.onClosed(error);
+    }
+
+    private synchronized void updateInterest() {
+        if (!mKey.isValid()) return;
+        int ops = 0;
+        if (mListener != null || mInbound.hasRemaining()) ops |= SelectionKey.OP_READ;
+        if (!mOutbound.isEmpty()) ops |= SelectionKey.OP_WRITE;
+        mKey.interestOps(ops);
+    }
+
+    private void closeChannel() {
+        mEngine.removeTimed(this);
+        mKey.cancel();
+        try {
+            mChannel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public synchronized long deadline() {
+        if (mListener == null || !mResponseExpected || mReadTimeoutMillis == 0) return Long.MAX_VALUE;
+        return mLastActivity + mReadTimeoutMillis;
+    }
+
+    @Override
+    public void onDeadline(long now) {
+        fail(new SocketTimeoutException("Read timed out"));
+    }
+
+    /**
+     * Blocking read of the inbound buffer.
+     */
+    private synchronized int read(byte[] data, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        long deadline = mReadTimeoutMillis > 0
+                ? SystemClock.elapsedRealtime() + mReadTimeoutMillis
+                : Long.MAX_VALUE;
+        while (mInbound.position() == 0) {
+            if (mError != null) throw new IOException(mError);
+            if (mEndOfStream || mClosed) return -1;
+            long wait = deadline - SystemClock.elapsedRealtime();
+            if (wait <= 0) throw new SocketTimeoutException("Read timed out");
+            waitFor(wait);
+        }
+
+        boolean wasFull = !mInbound.hasRemaining();
+        mInbound.flip();
+        int read = Math.min(length, mInbound.remaining());
+        mInbound.get(data, offset, read);
+        mInbound.compact();
+        if (wasFull) mEngine.execute(this::updateInterest);
+        return read;
+    }
+
+    /**
+     * Waits until all queued data is written.
+     */
+    private synchronized void flush() throws IOException {
+        long deadline = mWriteTimeoutMillis > 0
+                ? SystemClock.elapsedRealtime() + mWriteTimeoutMillis
+                : Long.MAX_VALUE;
+        while (!mOutbound.isEmpty()) {
+            checkOpen();
+            long wait = deadline - SystemClock.elapsedRealtime();
+            if (wait <= 0) throw new SocketTimeoutException("Write timed out");
+            waitFor(wait);
+        }
+        checkOpen();
+    }
+
+    private void waitFor(long millis) throws InterruptedIOException {
+        try {
+            wait(millis == Long.MAX_VALUE ? 0 : millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private class ConnectionInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] data = new byte[1];
+            return NioConnection.this.read(data, 0, 1) < 0 ? -1 : data[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@NonNull byte[] data, int offset, int length) throws IOException {
+            return NioConnection.this.read(data, offset, length);
+        }
+
+        @Override
+        public void close() {
+            NioConnection.this.close();
+        }
+    }
+
+    private class ConnectionOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            NioConnection.this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] data, int offset, int length) throws IOException {
+            NioConnection.this.write(data, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            NioConnection.this.flush();
+        }
+
+        @Override
+        public void close() {
+            NioConnection.this.close();
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.iota.access.api.tcp;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Event loop that drives all device connections from a single thread.
+ * <p>
+ * Channels are non-blocking and registered with one {@link Selector}; connects, reads
+ * and writes happen when the channel is ready, so a silent device holds no thread.
+ * Connecting races all candidate addresses in the manner of Happy Eyeballs (RFC 8305):
+ * attempts start {@link #ATTEMPT_DELAY_MILLIS} apart, or as soon as the previous one
+ * fails, and the first connected channel wins.
+ * <p>
+ * Channels, selection keys and deadlines are touched only by the loop thread, other
+ * threads hand work over with {@link #execute(Runnable)}.
+ */
+@Singleton
+public class NioEngine {
+
+    private static final long ATTEMPT_DELAY_MILLIS = 250;
+
+    private final Queue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+    // loop thread only
+    private final List<Timed> mTimed = new ArrayList<>();
+    private Selector mSelector;
+
+    /**
+     * Channel registered with the selector.
+     */
+    interface Handler {
+        void onReady(SelectionKey key);
+    }
+
+    /**
+     * Object with a deadline, checked after every select.
+     */
+    interface Timed {
+        /**
+         * @return elapsed realtime of the deadline, or Long.MAX_VALUE if there is none
+         */
+        long deadline();
+
+        void onDeadline(long now);
+    }
+
+    @Inject
+    public NioEngine() {
+    }
+
+    /**
+     * Connects to the first reachable of the addresses.
+     *
+     * @return connection to one of the addresses
+     * @throws IOException failure of the last attempt, if no address could be connected
+     */
+    @NonNull
+    @WorkerThread
+    NioConnection connect(List<InetAddress> addresses, int port, SocketProfile profile) throws IOException {
+        if (addresses.isEmpty()) throw new IOException("No address to connect to");
+        start();
+        ConnectRace race = new ConnectRace(addresses, port, profile);
+        execute(race::start);
+        // attempts end by their own timeouts, this only guards against a stuck loop
+        long connectTimeout = profile.getConnectTimeoutMillis() > 0 ? profile.getConnectTimeoutMillis() : 30_000;
+        return race.await(connectTimeout * addresses.size() + ATTEMPT_DELAY_MILLIS);
+    }
+
+    /**
+     * Runs the task on the loop thread.
+     */
+    void execute(Runnable task) {
+        mTasks.add(task);
+        mSelector.wakeup();
+    }
+
+    void addTimed(Timed timed) {
+        mTimed.add(timed);
+    }
+
+    void removeTimed(Timed timed) {
+        mTimed.remove(timed);
+    }
+
+    private synchronized void start() throws IOException {
+        if (mSelector != null) return;
+        mSelector = Selector.open();
+        Thread thread = new Thread(this::run, "NioEngine");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            try {
+                Runnable task;
+                while ((task = mTasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        Timber.e(e, "Event loop task error");
+                    }
+                }
+
+                long nextDeadline = Long.MAX_VALUE;
+                for (Timed timed : mTimed) {
+                    nextDeadline = Math.min(nextDeadline, timed.deadline());
+                }
+                if (nextDeadline == Long.MAX_VALUE) {
+                    mSelector.select();
+                } else {
+                    mSelector.select(Math.max(1, nextDeadline - SystemClock.elapsedRealtime()));
+                }
+
+                Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) onReady(key);
+                }
+
+                long now = SystemClock.elapsedRealtime();
+                for (Timed timed : new ArrayList<>(mTimed)) {
+                    if (timed.deadline() <= now) onDeadline(timed, now);
+                }
+            } catch (IOException | RuntimeException e) {
+                Timber.e(e, "Event loop error");
+            }
+        }
+    }
+
+    /**
+     * Failure of one handler must not stop the loop for other connections, the channel of
+     * a failed handler is closed, so that its deadline reports the failure.
+     */
+    private static void onReady(SelectionKey key) {
+        try {
+            ((Handler) key.attachment()).onReady(key);
+        } catch (CancelledKeyException e) {
+            Timber.d("Key cancelled");
+        } catch (RuntimeException e) {
+            Timber.e(e, "Event loop handler error");
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void onDeadline(Timed timed, long now) {
+        try {
+            timed.onDeadline(now);
+        } catch (RuntimeException e) {
+            Timber.e(e, "Event loop deadline error");
+            // deadline would fire again on every select
+            removeTimed(timed);
+        }
+    }
+
+    /**
+     * Parallel connect attempts to the addresses of one device.
+     */
+    private class ConnectRace implements Timed {
+        private final List<InetAddress> mAddresses;
+        private final int mPort;
+        private final SocketProfile mProfile;
+        // loop thread only
+        private final List<Attempt> mAttempts = new ArrayList<>();
+        private int mNext;
+        private long mNextAttemptAt = Long.MAX_VALUE;
+        private IOException mLastError;
+        // guarded by this
+        private boolean mDone;
+        private boolean mAbandoned;
+        private NioConnection mResult;
+        private IOException mError;
+
+        ConnectRace(List<InetAddress> addresses, int port, SocketProfile profile) {
+            mAddresses = addresses;
+            mPort = port;
+            mProfile = profile;
+        }
+
+        void start() {
+            addTimed(this);
+            startAttempt();
+        }
+
+        private void startAttempt() {
+            InetAddress address = mAddresses.get(mNext++);
+            long now = SystemClock.elapsedRealtime();
+            mNextAttemptAt = mNext < mAddresses.size() ? now + ATTEMPT_DELAY_MILLIS : Long.MAX_VALUE;
+
+            Attempt attempt = new Attempt(address, now);
+            mAttempts.add(attempt);
+            try {
+                attempt.open();
+            } catch (IOException e) {
+                onFailed(attempt, e);
+            }
+        }
+
+        @Override
+        public long deadline() {
+            long deadline = mNextAttemptAt;
+            for (Attempt attempt : mAttempts) {
+                deadline = Math.min(deadline, attempt.mDeadline);
+            }
+            return deadline;
+        }
+
+        @Override
+        public void onDeadline(long now) {
+            for (Attempt attempt : new ArrayList<>(mAttempts)) {
+                if (attempt.mDeadline <= now) onFailed(attempt, new SocketTimeoutException("Connect timed out"));
+            }
+            if (mNextAttemptAt <= now && !isDone()) startAttempt();
+        }
+
+        void onFailed(Attempt attempt, IOException e) {
+            attempt.close();
+            if (!mAttempts.remove(attempt)) return;
+            mLastError = e;
+            if (mNext < mAddresses.size()) {
+                startAttempt();
+            } else if (mAttempts.isEmpty()) {
+                finish(null, mLastError);
+            }
+        }
+
+        void onConnected(Attempt attempt) {
+            mAttempts.remove(attempt);
+            NioConnection connection;
+            try {
+                mProfile.applyAfterConnect(attempt.mChannel.socket());
+                connection = new NioConnection(NioEngine.this, attempt.mChannel, attempt.mKey, mProfile);
+            } catch (IOException e) {
+                onFailed(attempt, e);
+                return;
+            }
+            Timber.d("Connected to %s, address %d of %d", attempt.mAddress,
+                    mAddresses.indexOf(attempt.mAddress) + 1, mAddresses.size());
+            finish(connection, null);
+        }
+
+        private void finish(NioConnection connection, IOException error) {
+            removeTimed(this);
+            for (Attempt attempt : mAttempts) {
+                attempt.close();
+            }
+            mAttempts.clear();
+            mNextAttemptAt = Long.MAX_VALUE;
+
+            synchronized (this) {
+                if (mAbandoned) {
+                    if (connection != null) connection.close();
+                    return;
+                }
+                mDone = true;
+                mResult = connection;
+                mError = error;
+                notifyAll();
+            }
+        }
+
+        private synchronized boolean isDone() {
+            return mDone || mAbandoned;
+        }
+
+        /**
+         * @param timeoutMillis time to wait for the race to finish
+         */
+        synchronized NioConnection await(long timeoutMillis) throws IOException {
+            long deadline = SystemClock.elapsedRealtime() + timeoutMillis;
+            try {
+                while (!mDone) {
+                    long wait = deadline - SystemClock.elapsedRealtime();
+                    if (wait <= 0) {
+                        abandon();
+                        throw new SocketTimeoutException("Connect timed out");
+                    }
+                    wait(wait);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandon();
+                throw new InterruptedIOException("Connect interrupted");
+            }
+            if (mResult == null) throw mError;
+            return mResult;
+        }
+
+        /**
+         * Stops the attempts, connection that wins later is closed.
+         */
+        private void abandon() {
+            mAbandoned = true;
+            execute(() -> {
+                if (!mAttempts.isEmpty() || mNextAttemptAt != Long.MAX_VALUE) finish(null, null);
+            });
+        }
+
+        private class Attempt implements Handler {
+            final InetAddress mAddress;
+            final long mDeadline;
+            SocketChannel mChannel;
+            SelectionKey mKey;
+
+            Attempt(InetAddress address, long now) {
+                mAddress = address;
+                mDeadline = mProfile.getConnectTimeoutMillis() > 0
+                        ? now + mProfile.getConnectTimeoutMillis()
+                        : Long.MAX_VALUE;
+            }
+
+            void open() throws IOException {
+                mChannel = SocketChannel.open();
+                mChannel.configureBlocking(false);
+                mProfile.applyBeforeConnect(mChannel.socket());
+                boolean connected = mChannel.connect(new InetSocketAddress(mAddress, mPort));
+                mKey = mChannel.register(mSelector, connected ? 0 : SelectionKey.OP_CONNECT, this);
+                if (connected) onConnected(this);
+            }
+
+            @Override
+            public void onReady(SelectionKey key) {
+                try {
+                    if (mChannel.finishConnect()) onConnected(this);
+                } catch (IOException e) {
+                    onFailed(this, e);
+                }
+            }
+
+            void close() {
+                if (mKey != null) mKey.cancel();
+                if (mChannel == null) return;
+                try {
+                    mChannel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.api.tcp
+
+import java.net.Socket
+import java.net.SocketException
+
+/**
+ * Options applied to every connection to an access device.
+ *
+ * Defaults suit short command frames: Nagle is off, so a frame is not held back until
+ * the previous one is acknowledged, and a device that stops responding is detected
+ * within [readTimeoutMillis] instead of blocking the worker thread forever.
+ *
+ * Timeouts are enforced by [NioEngine], socket options are applied to the channel socket.
+ */
+data class SocketProfile(
+        val connectTimeoutMillis: Int = 3_000,
+        /** Maximum wait for data from the device, 0 to wait forever. */
+        val readTimeoutMillis: Int = 10_000,
+        /** Maximum wait for the device to accept written data, 0 to wait forever. */
+        val writeTimeoutMillis: Int = 10_000,
+        val tcpNoDelay: Boolean = true,
+        val keepAlive: Boolean = true,
+        /** Size of the socket send buffer, 0 for the system default. */
+        val sendBufferSize: Int = 0,
+        /** Size of the socket receive buffer, 0 for the system default. */
+        val receiveBufferSize: Int = 0,
+        /** IP_TOS of outgoing packets, -1 to leave unchanged. */
+        val trafficClass: Int = IPTOS_LOWDELAY
+) {
+
+    /**
+     * Applies options that must be set before the socket is connected.
+     */
+    @Throws(SocketException::class)
+    fun applyBeforeConnect(socket: Socket) {
+        // buffer sizes above 64 KB affect TCP window scaling, which is negotiated on connect
+        if (sendBufferSize > 0) socket.sendBufferSize = sendBufferSize
+        if (receiveBufferSize > 0) socket.receiveBufferSize = receiveBufferSize
+        if (trafficClass >= 0) socket.trafficClass = trafficClass
+    }
+
+    /**
+     * Applies options of the connected socket.
+     */
+    @Throws(SocketException::class)
+    fun applyAfterConnect(socket: Socket) {
+        socket.tcpNoDelay = tcpNoDelay
+        socket.keepAlive = keepAlive
+    }
+
+    companion object {
+        private const val IPTOS_LOWDELAY = 0x10
+    }
+}
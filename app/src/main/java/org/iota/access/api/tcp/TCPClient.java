@@ -25,21 +25,39 @@ import io.reactivex.Observable;
 
 public interface TCPClient {
 
+    /**
+     * Sends message to the device. Every message gets exactly one outcome, either its
+     * response or an error.
+     */
     void sendMessage(final String message);
 
+    /**
+     * @return sent messages paired with their responses
+     */
     Observable<Pair<String, String>> getObservableResponse();
 
-    Observable<TCPError> getObservableTCPError();
+    /**
+     * @return sent messages paired with errors which ended them
+     */
+    Observable<Pair<String, TCPError>> getObservableTCPError();
 
     void cancelAllTasks();
 
     boolean isConnected();
 
+    /**
+     * Opens and authenticates a session in advance, so the next message can be sent
+     * without waiting for the handshake. Does nothing if such session already exists.
+     */
+    void prepareConnection();
+
     void closeConnection();
 
     enum TCPError {
         UNABLE_TO_CONNECT,
         TIMEOUT,
-        UNKNOWN
+        UNKNOWN,
+        /** Connection was closed by the app before the response arrived. */
+        CLOSED
     }
 }
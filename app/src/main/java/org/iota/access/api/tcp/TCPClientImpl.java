@@ -22,21 +22,18 @@ package org.iota.access.api.tcp;
 import androidx.annotation.WorkerThread;
 import android.util.Pair;
 
-import org.iota.access.SettingsFragment;
 import org.iota.access.api.APILibDacAuthNative;
 import org.iota.access.di.AppSharedPreferences;
+import org.iota.access.di.ConnectionSettings;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.util.ArrayDeque;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -47,6 +44,18 @@ import timber.log.Timber;
 
 /**
  * Helper class for managing TCP connection
+ * <p>
+ * Connections are driven by {@link NioEngine}. Plain TCP responses are decoded as they
+ * arrive on the event loop. Tiny Embedded sessions call back into blocking streams from
+ * libdac, so they are run on the worker thread, where a read waits at most for the read
+ * timeout of the {@link SocketProfile}.
+ * <p>
+ * Connect and handshake never run while holding the lock of the client, so closing the
+ * connection from the main thread does not wait for the device.
+ * <p>
+ * A message is queued as soon as it is given to the connection and leaves the queue with
+ * its response. Closing the connection, or replacing it with a new one, fails the messages
+ * left in the queue, so every message gets exactly one outcome.
  */
 @Singleton
 public class TCPClientImpl implements TCPClient {
@@ -56,33 +65,46 @@ public class TCPClientImpl implements TCPClient {
 
     private final int BUFFER_SIZE = 4096;
 
+    // device drops idle sessions, so a prepared session is not used after this time
+    private static final long PREPARED_SESSION_TTL_MILLIS = 10_000;
+
     private PublishSubject<Pair<String, String>> mResponse = PublishSubject.create();
-    private PublishSubject<TCPError> mTCPError = PublishSubject.create();
+    private PublishSubject<Pair<String, TCPError>> mTCPError = PublishSubject.create();
 
+    // messages sent on the current connection, waiting for their responses, guarded by this
     private Queue<String> mMessageQueue = new ArrayDeque<>();
     private AppSharedPreferences mPreferences;
     // while this is true, the server will continue running
-    private boolean mRun = false;
+    private volatile boolean mRun = false;
     private TCPSocketObject mTcpSocketObject;
     private APILibDacAuthNative mApiLibDacAuthNative;
-    // used to store pointer to native data structure
+    // used to store pointer to native data structure, native calls on it run on the worker
     private long[] mSession;
-    // used to send messages
-    private PrintWriter mBufferOut;
-    // used to read messages from the server
-    private BufferedReader mBufferIn;
     private TCPClientWorker mWorker;
+    // session opened in advance by prepareConnection()
+    private long[] mPreparedSession;
+    // set while prepareConnection() connects, a message waits for it instead of connecting
+    private CountDownLatch mPreparing;
+    private TCPSocketObject mPreparedSocketObject;
+    private long mPreparedSessionTime;
+    private final SocketProfile mSocketProfile;
+    private final DeviceAddressResolver mAddressResolver;
+    private final NioEngine mEngine;
 //    private ErrorListener mErrorListener;
 
     @Inject
-    public TCPClientImpl(AppSharedPreferences sharedPreferences, APILibDacAuthNative apiLibDacAuthNative) {
+    public TCPClientImpl(AppSharedPreferences sharedPreferences, APILibDacAuthNative apiLibDacAuthNative,
+                         SocketProfile socketProfile, DeviceAddressResolver addressResolver, NioEngine engine) {
         mPreferences = sharedPreferences;
         mApiLibDacAuthNative = apiLibDacAuthNative;
+        mSocketProfile = socketProfile;
+        mAddressResolver = addressResolver;
+        mEngine = engine;
         mWorker = new TCPClientWorker();
     }
 
     public void sendMessage(final String message) {
-        switch (mPreferences.getInt(SettingsFragment.Keys.PREF_KEY_PROTOCOL)) {
+        switch (mPreferences.getConnectionSettings().getProtocol()) {
             case PROTOCOL_TINY:
                 doTinyConnection(message);
                 break;
@@ -98,82 +120,170 @@ public class TCPClientImpl implements TCPClient {
     }
 
     @Override
-    public Observable<TCPClient.TCPError> getObservableTCPError() {
+    public Observable<Pair<String, TCPError>> getObservableTCPError() {
         return mTCPError;
     }
 
     private void sendTcpMessage(final String message) {
         Timber.d("Sending TCP message: %s", message);
         String modifiedMessage = message + "\0";
-        Runnable runnable;
-        switch (mPreferences.getInt(SettingsFragment.Keys.PREF_KEY_PROTOCOL)) {
+        switch (mPreferences.getConnectionSettings().getProtocol()) {
             case PROTOCOL_TINY:
-                runnable = () -> {
-                    mMessageQueue.add(message);
-                    byte[] data = modifiedMessage.getBytes();
-                    mApiLibDacAuthNative.dacSend(mSession, data, (short) data.length);
-                };
+                sendTinyMessage(message, modifiedMessage);
                 break;
             case PROTOCOL_NONE:
             default:
-                runnable = () -> {
-                    if (mBufferOut != null) {
-                        mMessageQueue.add(message);
-                        mBufferOut.println(modifiedMessage);
-                        mBufferOut.flush();
-                    } else {
-                        closeConnection();
-                        mTCPError.onNext(TCPError.UNKNOWN);
-                    }
-                };
+                sendPlainMessage(message, modifiedMessage);
                 break;
         }
-        mWorker.execute(runnable);
     }
 
     /**
-     * Receives message from server.
+     * Queues message on the current Tiny Embedded session and lets the worker send it and
+     * receive the response.
      */
-    private void receiveTcpMessage() {
-        Runnable runnable;
-        switch (mPreferences.getInt(SettingsFragment.Keys.PREF_KEY_PROTOCOL)) {
-            case PROTOCOL_TINY:
-                runnable = () -> {
-                    if (!mRun) return;
-                    byte[] data = new byte[BUFFER_SIZE];
-                    mApiLibDacAuthNative.dacReceive(mSession, data, (short) BUFFER_SIZE);
-                    String receivedMessage = new String(data);
-
-                    String sentMessage = mMessageQueue.poll();
-                    if (sentMessage != null) {
-                        mResponse.onNext(new Pair<>(sentMessage, receivedMessage));
-                    }
-
-                };
-                break;
-            case PROTOCOL_NONE:
-            default:
-                runnable = () -> {
-                    StringBuilder message = new StringBuilder();
-                    int c;
-                    try {
-                        while ((mBufferIn != null) && ((c = mBufferIn.read()) != '\0')) {
-                            message.append((char) c);
-                        }
-                    } catch (IOException ex) {
-                        ex.printStackTrace();
-                        Timber.e("Buffer reading error!");
-                    }
-                    Timber.d("S: Received Message: '%s'", message.toString());
-                    String sentMessage = mMessageQueue.poll();
-                    if (sentMessage != null) {
-                        mResponse.onNext(new Pair<>(sentMessage, message.toString()));
-                    }
-
-                };
-                break;
+    private synchronized void sendTinyMessage(String message, String modifiedMessage) {
+        if (mSession == null) {
+            onMessageFailed(message, TCPError.CLOSED);
+            return;
+        }
+        mMessageQueue.add(message);
+        long[] session = mSession;
+        mWorker.execute(() -> {
+            // message was failed when the session was closed
+            if (!isCurrent(session)) return;
+            byte[] data = modifiedMessage.getBytes();
+            if (mApiLibDacAuthNative.dacSend(session, data, (short) data.length) != 0) {
+                onTinyConnectionFailed(session);
+            }
+        });
+        receiveTcpMessage(session);
+    }
+
+    /**
+     * Queues message on the plain TCP connection, the response is received by {@link FrameListener}.
+     */
+    private synchronized void sendPlainMessage(String message, String modifiedMessage) {
+        NioConnection connection = mTcpSocketObject != null ? mTcpSocketObject.getConnection() : null;
+        if (connection == null) {
+            closeConnection();
+            onMessageFailed(message, TCPError.UNKNOWN);
+            return;
+        }
+        mMessageQueue.add(message);
+        // same line ending as PrintWriter.println the device was written against
+        byte[] data = (modifiedMessage + "\n").getBytes();
+        try {
+            connection.write(data, 0, data.length);
+            connection.setResponseExpected(true);
+        } catch (IOException e) {
+            Timber.e(e);
+            onConnectionFailed();
         }
-        mWorker.execute(runnable);
+    }
+
+    /**
+     * Receives message from server through Tiny Embedded.
+     */
+    private void receiveTcpMessage(long[] session) {
+        mWorker.execute(() -> {
+            if (!isCurrent(session)) return;
+            byte[] data = new byte[BUFFER_SIZE];
+            if (mApiLibDacAuthNative.dacReceive(session, data, (short) BUFFER_SIZE) != 0) {
+                onTinyConnectionFailed(session);
+                return;
+            }
+            String receivedMessage = new String(data);
+
+            String sentMessage;
+            synchronized (this) {
+                // session was closed meanwhile and its messages were failed
+                if (!isCurrent(session)) return;
+                sentMessage = mMessageQueue.poll();
+            }
+            if (sentMessage != null) {
+                mResponse.onNext(new Pair<>(sentMessage, receivedMessage));
+            }
+        });
+    }
+
+    /**
+     * @return true if the session was not closed, in which case it was not released either,
+     * as the release runs on the worker after the session is closed
+     */
+    private synchronized boolean isCurrent(long[] session) {
+        return mRun && session != null && session == mSession;
+    }
+
+    private synchronized void onTinyConnectionFailed(long[] session) {
+        // messages of a session which was closed meanwhile were already failed
+        if (!isCurrent(session)) return;
+        onConnectionFailed();
+    }
+
+    /**
+     * Splits plain TCP responses at the terminating zero, on the event loop.
+     */
+    private class FrameListener implements NioConnection.Listener {
+        private final ByteArrayOutputStream mFrame = new ByteArrayOutputStream();
+        private final NioConnection mConnection;
+
+        FrameListener(NioConnection connection) {
+            mConnection = connection;
+        }
+
+        @Override
+        public void onData(byte[] data, int length) {
+            for (int i = 0; i < length; i++) {
+                if (data[i] == 0) {
+                    onFrame();
+                } else {
+                    mFrame.write(data[i]);
+                }
+            }
+        }
+
+        @Override
+        public void onClosed(IOException error) {
+            if (error == null) {
+                // device closed the connection after the last response
+                if (mFrame.size() > 0) onFrame();
+                if (!mConnection.isResponseExpected()) return;
+                Timber.e("Connection closed before the response");
+            } else {
+                Timber.e(error, "Buffer reading error!");
+            }
+            // on the worker, in order with the responses of the connection
+            mWorker.execute(() -> onPlainConnectionFailed(mConnection, error));
+        }
+
+        private void onFrame() {
+            String message = mFrame.toString();
+            mFrame.reset();
+            mConnection.setResponseExpected(false);
+            Timber.d("S: Received Message: '%s'", message);
+            // on the worker, in order with failure of the connection
+            mWorker.execute(() -> onPlainResponse(mConnection, message));
+        }
+    }
+
+    private void onPlainResponse(NioConnection connection, String message) {
+        String sentMessage;
+        synchronized (this) {
+            // messages of a connection which was closed meanwhile were already failed
+            if (mTcpSocketObject == null || mTcpSocketObject.getConnection() != connection) return;
+            sentMessage = mMessageQueue.poll();
+        }
+        if (sentMessage != null) {
+            mResponse.onNext(new Pair<>(sentMessage, message));
+        }
+    }
+
+    private synchronized void onPlainConnectionFailed(NioConnection connection, IOException error) {
+        // connection may have been replaced meanwhile
+        if (mTcpSocketObject == null || mTcpSocketObject.getConnection() != connection) return;
+        mTcpSocketObject.recordFailure(error);
+        onConnectionFailed();
     }
 
     /**
@@ -185,19 +295,14 @@ public class TCPClientImpl implements TCPClient {
 
         mRun = false;
 
-        if (mApiLibDacAuthNative != null && mPreferences.getInt(SettingsFragment.Keys.PREF_KEY_PROTOCOL) == PROTOCOL_TINY && mSession != null) {
-            mApiLibDacAuthNative.dacRelease(mSession);
+        if (mApiLibDacAuthNative != null && mSession != null) {
+            // worker may be blocked in a native call on the session until the socket below
+            // is closed, the session is freed only after that call returns
+            long[] session = mSession;
             mSession = null;
+            mWorker.execute(() -> mApiLibDacAuthNative.dacRelease(session));
         }
 
-        // close IN and OUT buffers
-        if (mBufferOut != null) {
-            mBufferOut.flush();
-            mBufferOut.close();
-            mBufferOut = null;
-        }
-        mBufferIn = null;
-
         if (mTcpSocketObject != null) {
             try {
                 mTcpSocketObject.close();
@@ -207,81 +312,255 @@ public class TCPClientImpl implements TCPClient {
             mTcpSocketObject = null;
         }
 
+        failQueuedMessages(TCPError.CLOSED);
+
         Timber.d("TCP connection stopped");
     }
 
+    /**
+     * Closes the connection after failed read or write and reports whether it timed out.
+     */
+    private synchronized void onConnectionFailed() {
+        boolean timedOut = mTcpSocketObject != null && mTcpSocketObject.hasTimedOut();
+        failQueuedMessages(timedOut ? TCPError.TIMEOUT : TCPError.UNKNOWN);
+        closeConnection();
+    }
+
+    private synchronized void failQueuedMessages(TCPError error) {
+        String message;
+        while ((message = mMessageQueue.poll()) != null) {
+            onMessageFailed(message, error);
+        }
+    }
+
+    private void onMessageFailed(String message, TCPError error) {
+        mTCPError.onNext(new Pair<>(message, error));
+    }
+
+    /**
+     * @return error reported when connection could not be opened
+     */
+    private static TCPError connectError(TCPClientException e) {
+        return TCPSocketObject.isTimeout(e) ? TCPError.TIMEOUT : TCPError.UNABLE_TO_CONNECT;
+    }
+
     public synchronized void cancelAllTasks() {
+        // session being prepared is released when its handshake ends
+        mPreparing = null;
+        releasePreparedSession();
         closeConnection();
         mWorker.interrupt();
         mWorker = new TCPClientWorker();
     }
 
+    @Override
+    public void prepareConnection() {
+        if (mPreferences.getConnectionSettings().getProtocol() != PROTOCOL_TINY) return;
+        CountDownLatch preparing = new CountDownLatch(1);
+        synchronized (this) {
+            if (mPreparing != null) return;
+            if (mPreparedSession != null) {
+                if (System.currentTimeMillis() - mPreparedSessionTime < PREPARED_SESSION_TTL_MILLIS) return;
+                releasePreparedSession();
+            }
+            mPreparing = preparing;
+        }
+
+        TCPSocketObject socketObject = null;
+        long[] session = null;
+        try {
+            socketObject = openSocket();
+            session = openTinySession(socketObject);
+        } catch (TCPClientException e) {
+            // not an error yet, the connection will be retried when the message is sent
+            Timber.d(e, "Unable to prepare connection");
+        }
+
+        synchronized (this) {
+            if (mPreparing == preparing) {
+                mPreparing = null;
+                if (session != null) {
+                    mPreparedSession = session;
+                    mPreparedSocketObject = socketObject;
+                    mPreparedSessionTime = System.currentTimeMillis();
+                    // device resources are held only for the idle budget, even if no message follows
+                    mWorker.executeDelayed(this::releaseExpiredPreparedSession, PREPARED_SESSION_TTL_MILLIS);
+                    Timber.d("Connection prepared");
+                    session = null;
+                    socketObject = null;
+                }
+            }
+        }
+        preparing.countDown();
+
+        // handshake failed or the client was cancelled meanwhile
+        if (session != null) mApiLibDacAuthNative.dacRelease(session);
+        closeSocket(socketObject);
+    }
+
     /**
-     * Sends message through Tiny Embedded
+     * Waits for the session being prepared, so that the message does not open another one.
+     */
+    private void awaitPreparedSession() {
+        CountDownLatch preparing;
+        synchronized (this) {
+            preparing = mPreparing;
+        }
+        if (preparing == null) return;
+        try {
+            if (!preparing.await(PREPARED_SESSION_TTL_MILLIS, TimeUnit.MILLISECONDS)) {
+                Timber.d("Prepared connection is late, connecting anew");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes over the prepared session, if there is a fresh one.
      *
-     * @param message message to be sent
+     * @return true if the prepared session became the current session
      */
-    private void doTinyConnection(String message) {
+    private synchronized boolean usePreparedSession() {
+        if (mPreparedSession == null) return false;
+        if (System.currentTimeMillis() - mPreparedSessionTime >= PREPARED_SESSION_TTL_MILLIS) {
+            releasePreparedSession();
+            return false;
+        }
+        // the only connection in use, messages of the previous one are failed
+        closeConnection();
+        mSession = mPreparedSession;
+        mTcpSocketObject = mPreparedSocketObject;
+        mPreparedSession = null;
+        mPreparedSocketObject = null;
+        mRun = true;
+        return true;
+    }
+
+    private synchronized void releaseExpiredPreparedSession() {
+        if (mPreparedSession != null
+                && System.currentTimeMillis() - mPreparedSessionTime >= PREPARED_SESSION_TTL_MILLIS) {
+            Timber.d("Prepared connection was not used");
+            releasePreparedSession();
+        }
+    }
+
+    private synchronized void releasePreparedSession() {
+        if (mPreparedSession != null) {
+            mApiLibDacAuthNative.dacRelease(mPreparedSession);
+            mPreparedSession = null;
+        }
+        closeSocket(mPreparedSocketObject);
+        mPreparedSocketObject = null;
+    }
+
+    private static void closeSocket(TCPSocketObject socketObject) {
+        if (socketObject == null) return;
         try {
-            initConnection();
-        } catch (TCPClientException e) {
-            Timber.e(e);
-            mTCPError.onNext(TCPError.UNABLE_TO_CONNECT);
-            return;
+            socketObject.close();
+        } catch (IOException e) {
+            Timber.e("Error %s", e.toString());
         }
-        mSession = new long[1];
-        //noinspection ConstantConditions
-        mSession[0] = 0;
-        if (mApiLibDacAuthNative.dacInitClient(mSession, mTcpSocketObject) == 1) {
-            mApiLibDacAuthNative.dacRelease(mSession);
-            mTCPError.onNext(TCPError.UNABLE_TO_CONNECT);
-            return;
+    }
+
+    /**
+     * Initializes and authenticates Tiny Embedded session over the socket.
+     *
+     * @return session, or null if the handshake failed
+     */
+    private long[] openTinySession(TCPSocketObject socketObject) {
+        long[] session = new long[1];
+        session[0] = 0;
+        if (mApiLibDacAuthNative.dacInitClient(session, socketObject) == 1) {
+            mApiLibDacAuthNative.dacRelease(session);
+            return null;
         }
-        if (mApiLibDacAuthNative.dacAuthenticate(mSession) == 1) {
-            mApiLibDacAuthNative.dacRelease(mSession);
-            mTCPError.onNext(TCPError.UNABLE_TO_CONNECT);
-            return;
+        if (mApiLibDacAuthNative.dacAuthenticate(session) == 1) {
+            mApiLibDacAuthNative.dacRelease(session);
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Sends message through Tiny Embedded
+     *
+     * @param message message to be sent
+     */
+    private void doTinyConnection(String message) {
+        awaitPreparedSession();
+        if (!usePreparedSession()) {
+            TCPSocketObject socketObject;
+            try {
+                socketObject = openSocket();
+            } catch (TCPClientException e) {
+                Timber.e(e);
+                onMessageFailed(message, connectError(e));
+                return;
+            }
+            long[] session = openTinySession(socketObject);
+            if (session == null) {
+                boolean timedOut = socketObject.hasTimedOut();
+                closeSocket(socketObject);
+                onMessageFailed(message, timedOut ? TCPError.TIMEOUT : TCPError.UNABLE_TO_CONNECT);
+                return;
+            }
+            synchronized (this) {
+                closeConnection();
+                mTcpSocketObject = socketObject;
+                mSession = session;
+                mRun = true;
+            }
         }
-        mRun = true;
 
         sendTcpMessage(message);
-        receiveTcpMessage();
     }
 
     /**
      * Does the connection through plain TCP
      */
     private void doSimpleConnection(String message) {
+        TCPSocketObject socketObject;
         try {
-            initConnection();
+            socketObject = openSocket();
         } catch (TCPClientException e) {
             Timber.e(e);
-            mTCPError.onNext(TCPError.UNABLE_TO_CONNECT);
+            onMessageFailed(message, connectError(e));
             return;
         }
 
-        if (mTcpSocketObject == null) return;
-
-        DataInputStream dataInputStream = mTcpSocketObject.getDataInputStream();
-        DataOutputStream dataOutputStream = mTcpSocketObject.getDataOutputStream();
-
-        //sends the message to the server
-        mBufferOut = new PrintWriter(new BufferedWriter(new OutputStreamWriter(dataOutputStream)), true);
-        //receives the message which the server sends back
-        mBufferIn = new BufferedReader(new InputStreamReader(dataInputStream));
-        mRun = true;
+        // responses are received on the event loop, no thread waits for them
+        NioConnection connection = socketObject.getConnection();
+        connection.setListener(new FrameListener(connection));
+        synchronized (this) {
+            closeConnection();
+            mTcpSocketObject = socketObject;
+            mRun = true;
+        }
 
         sendTcpMessage(message);
-        receiveTcpMessage();
     }
 
+    /**
+     * Connects to the device, racing all of its known addresses.
+     * <p>
+     * Members are not touched, so a connection can be prepared while another one is in use.
+     *
+     * @return connected socket
+     */
     @WorkerThread
-    private void initConnection() throws TCPClientException {
+    private TCPSocketObject openSocket() throws TCPClientException {
+        ConnectionSettings settings = mPreferences.getConnectionSettings();
+        String host = settings.getAccessIpAddress();
         try {
-            InetAddress serverAddress = InetAddress.getByName(mPreferences.getString(SettingsFragment.Keys.PREF_KEY_ACCESS_IP_ADDRESS));
-            mTcpSocketObject = new TCPSocketObject(serverAddress, mPreferences.getInt(SettingsFragment.Keys.PREF_KEY_ACCESS_PORT_NUMBER));
-            mBufferIn = new BufferedReader(new InputStreamReader(mTcpSocketObject.getDataInputStream()));
-            mBufferOut = new PrintWriter(new BufferedWriter(new OutputStreamWriter(mTcpSocketObject.getDataOutputStream())), true);
+            List<InetAddress> addresses = mAddressResolver.resolve(host);
+            try {
+                return new TCPSocketObject(mEngine.connect(addresses, settings.getAccessPort(), mSocketProfile));
+            } catch (IOException e) {
+                // device may have got a new address
+                mAddressResolver.invalidate(host);
+                throw e;
+            }
         } catch (Exception e) {
             throw new TCPClientException(e);
         }
@@ -32,6 +32,10 @@ class TCPClientWorker : HandlerThread(TAG) {
         handler.post(task)
     }
 
+    fun executeDelayed(task: Runnable, delayMillis: Long) {
+        handler.postDelayed(task, delayMillis)
+    }
+
     companion object {
         private const val TAG = "TCPClientWorker"
     }
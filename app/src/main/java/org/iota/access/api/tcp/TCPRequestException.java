@@ -0,0 +1,40 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.iota.access.api.tcp;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Failure of a request to the device, carrying the error reported by {@link TCPClient}.
+ */
+public class TCPRequestException extends TCPClientException {
+
+    private final TCPClient.TCPError mError;
+
+    public TCPRequestException(@NonNull TCPClient.TCPError error) {
+        super("Request failed: " + error);
+        mError = error;
+    }
+
+    @NonNull
+    public TCPClient.TCPError getError() {
+        return mError;
+    }
+}
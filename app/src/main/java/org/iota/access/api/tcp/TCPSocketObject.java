@@ -22,42 +22,71 @@ package org.iota.access.api.tcp;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.net.SocketTimeoutException;
 
 import io.reactivex.annotations.Nullable;
 
 /**
  * Socket class implementation
+ * <p>
+ * Streams of the object block the calling thread, as libdac expects, while the I/O itself
+ * is done by {@link NioEngine}.
  */
 public class TCPSocketObject {
 
-    private Socket mSocket;
+    private NioConnection mConnection;
     private DataInputStream mDataInputStream;
     private DataOutputStream mDataOutputStream;
+    private volatile boolean mTimedOut;
 
-    TCPSocketObject(InetAddress address, int port) throws IOException {
-        mSocket = new Socket();
-
-        // connect to address and set timeout to be 3 seconds
-        mSocket.connect(new InetSocketAddress(address, port), 3000);
+    TCPSocketObject(NioConnection connection) {
+        mConnection = connection;
 
         // sends the message to the server
-        mDataOutputStream = new DataOutputStream(mSocket.getOutputStream());
+        mDataOutputStream = new DataOutputStream(connection.getOutputStream());
 
         // receives the message which the server sends back
-        mDataInputStream = new DataInputStream(mSocket.getInputStream());
+        mDataInputStream = new DataInputStream(connection.getInputStream());
     }
 
-    void close() throws IOException {
-        if (mDataOutputStream != null) {
-            mDataOutputStream.flush();
-            mDataOutputStream.close();
+    /**
+     * Records failure of a read or write, so that the caller can tell a timeout from other errors.
+     */
+    public void recordFailure(Exception e) {
+        if (isTimeout(e)) mTimedOut = true;
+    }
+
+    /**
+     * @return true if a read or write has timed out since the socket was connected
+     */
+    public boolean hasTimedOut() {
+        return mTimedOut;
+    }
+
+    /**
+     * @return true if the exception, or any of its causes, is a socket timeout
+     */
+    static boolean isTimeout(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SocketTimeoutException) return true;
         }
+        return false;
+    }
+
+    @Nullable
+    NioConnection getConnection() {
+        return mConnection;
+    }
+
+    /**
+     * Closes the connection without waiting for the device, output which was not written
+     * yet is discarded.
+     */
+    void close() throws IOException {
+        if (mConnection != null) mConnection.close();
         mDataInputStream = null;
         mDataOutputStream = null;
-        mSocket = null;
+        mConnection = null;
     }
 
     @Nullable
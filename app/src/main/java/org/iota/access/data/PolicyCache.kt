@@ -0,0 +1,280 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.data
+
+import android.content.ContentValues
+import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import android.database.sqlite.SQLiteOpenHelper
+import androidx.annotation.WorkerThread
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Persistent cache of policy lists obtained from the device.
+ *
+ * Policies are stored per device and user and keyed by policy ID, together with version of
+ * the list they were synced at. Device is identified by its address, so that lists of
+ * different devices the user connects to are not mixed up. The version is sent back to the device so that it responds only
+ * with changes since the last sync. All methods access the database and must not be
+ * called from the main thread.
+ */
+@Singleton
+class PolicyCache @Inject constructor(context: Context) {
+
+    private val helper = Helper(context.applicationContext)
+
+    /**
+     * Page of cached policies.
+     *
+     * @property rowCount Number of rows read, rows that can not be parsed are counted, but
+     * left out of [policies].
+     */
+    class Page(val policies: JSONArray, val rowCount: Int)
+
+    class PolicyName(val policyId: String, val action: String)
+
+    /**
+     * @return at most [limit] cached policies of the user after the first [offset] ones, in
+     * the order they were received
+     */
+    @WorkerThread
+    fun getPolicies(device: String, userId: String, offset: Int, limit: Int): Page {
+        val policies = JSONArray()
+        var rowCount = 0
+        helper.readableDatabase.query(
+                TABLE_POLICY,
+                arrayOf(COLUMN_JSON),
+                "$COLUMN_DEVICE = ? AND $COLUMN_USER_ID = ?",
+                arrayOf(device, userId),
+                null,
+                null,
+                COLUMN_POSITION,
+                "$limit OFFSET $offset"
+        ).use { cursor ->
+            while (cursor.moveToNext()) {
+                rowCount++
+                try {
+                    policies.put(JSONObject(cursor.getString(0)))
+                } catch (ignored: JSONException) {
+                }
+            }
+        }
+        return Page(policies, rowCount)
+    }
+
+    /**
+     * @return ID and action of every cached policy of the user, in the order they were
+     * received, without reading the policies themselves
+     */
+    @WorkerThread
+    fun getPolicyNames(device: String, userId: String): List<PolicyName> {
+        val names = mutableListOf<PolicyName>()
+        helper.readableDatabase.query(
+                TABLE_POLICY,
+                arrayOf(COLUMN_POLICY_ID, COLUMN_ACTION),
+                "$COLUMN_DEVICE = ? AND $COLUMN_USER_ID = ?",
+                arrayOf(device, userId),
+                null,
+                null,
+                COLUMN_POSITION
+        ).use { cursor ->
+            while (cursor.moveToNext()) {
+                names.add(PolicyName(cursor.getString(0), cursor.getString(1) ?: ""))
+            }
+        }
+        return names
+    }
+
+    /**
+     * @return cached policy of the user, or `null` if it is not cached
+     */
+    @WorkerThread
+    fun getPolicy(device: String, userId: String, policyId: String): JSONObject? {
+        helper.readableDatabase.query(
+                TABLE_POLICY,
+                arrayOf(COLUMN_JSON),
+                "$COLUMN_DEVICE = ? AND $COLUMN_USER_ID = ? AND $COLUMN_POLICY_ID = ?",
+                arrayOf(device, userId, policyId),
+                null,
+                null,
+                null
+        ).use { cursor ->
+            if (!cursor.moveToFirst()) return null
+            return try {
+                JSONObject(cursor.getString(0))
+            } catch (ignored: JSONException) {
+                null
+            }
+        }
+    }
+
+    /**
+     * @return version of the policy list at the last sync, or `null` if user never synced
+     * with the device or device does not support versioning
+     */
+    @WorkerThread
+    fun getVersion(device: String, userId: String): String? {
+        helper.readableDatabase.query(
+                TABLE_SYNC,
+                arrayOf(COLUMN_VERSION),
+                "$COLUMN_DEVICE = ? AND $COLUMN_USER_ID = ?",
+                arrayOf(device, userId),
+                null,
+                null,
+                null
+        ).use { cursor ->
+            return if (cursor.moveToFirst() && !cursor.isNull(0)) cursor.getString(0) else null
+        }
+    }
+
+    /**
+     * Applies update received from the device.
+     *
+     * @param full If `true`, [policies] replace all cached policies of the user, otherwise
+     * they are inserted or updated and policies from [removedPolicyIds] are deleted.
+     * @param version Version of the list after the update, or `null` if the cached list is
+     * not complete yet and next sync must not be a delta sync.
+     */
+    @WorkerThread
+    fun update(
+            device: String,
+            userId: String,
+            full: Boolean,
+            policies: JSONArray,
+            removedPolicyIds: List<String>,
+            version: String?
+    ) {
+        val db = helper.writableDatabase
+        db.beginTransaction()
+        try {
+            if (full) {
+                db.delete(TABLE_POLICY, "$COLUMN_DEVICE = ? AND $COLUMN_USER_ID = ?", arrayOf(device, userId))
+            } else {
+                for (policyId in removedPolicyIds) {
+                    db.delete(TABLE_POLICY, "$COLUMN_DEVICE = ? AND $COLUMN_USER_ID = ? AND $COLUMN_POLICY_ID = ?", arrayOf(device, userId, policyId))
+                }
+            }
+
+            var position = nextPosition(db, device, userId)
+            val values = ContentValues()
+            for (index in 0 until policies.length()) {
+                val policy = policies.optJSONObject(index) ?: continue
+                val policyId = policy.optString(KEY_POLICY_ID)
+                if (policyId.isEmpty()) continue
+
+                values.clear()
+                values.put(COLUMN_JSON, policy.toString())
+                values.put(COLUMN_ACTION, policy.optString(KEY_ACTION))
+                values.put(COLUMN_VERSION, policy.optString(KEY_VERSION, null))
+                val updated = db.update(TABLE_POLICY, values,
+                        "$COLUMN_DEVICE = ? AND $COLUMN_USER_ID = ? AND $COLUMN_POLICY_ID = ?", arrayOf(device, userId, policyId))
+                if (updated == 0) {
+                    values.put(COLUMN_DEVICE, device)
+                    values.put(COLUMN_USER_ID, userId)
+                    values.put(COLUMN_POLICY_ID, policyId)
+                    values.put(COLUMN_POSITION, position++)
+                    db.insert(TABLE_POLICY, null, values)
+                }
+            }
+
+            values.clear()
+            values.put(COLUMN_DEVICE, device)
+            values.put(COLUMN_USER_ID, userId)
+            values.put(COLUMN_VERSION, version)
+            db.insertWithOnConflict(TABLE_SYNC, null, values, SQLiteDatabase.CONFLICT_REPLACE)
+
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+    }
+
+    /**
+     * Removes every cached policy and sync state of the user on the device.
+     */
+    @WorkerThread
+    fun clear(device: String, userId: String) {
+        val db = helper.writableDatabase
+        db.beginTransaction()
+        try {
+            db.delete(TABLE_POLICY, "$COLUMN_DEVICE = ? AND $COLUMN_USER_ID = ?", arrayOf(device, userId))
+            db.delete(TABLE_SYNC, "$COLUMN_DEVICE = ? AND $COLUMN_USER_ID = ?", arrayOf(device, userId))
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+    }
+
+    private fun nextPosition(db: SQLiteDatabase, device: String, userId: String): Long {
+        db.rawQuery("SELECT MAX($COLUMN_POSITION) FROM $TABLE_POLICY WHERE $COLUMN_DEVICE = ? AND $COLUMN_USER_ID = ?", arrayOf(device, userId)).use { cursor ->
+            return if (cursor.moveToFirst() && !cursor.isNull(0)) cursor.getLong(0) + 1 else 0
+        }
+    }
+
+    private class Helper(context: Context) : SQLiteOpenHelper(context, DATABASE_NAME, null, DATABASE_VERSION) {
+
+        override fun onCreate(db: SQLiteDatabase) {
+            db.execSQL("CREATE TABLE $TABLE_POLICY (" +
+                    "$COLUMN_DEVICE TEXT NOT NULL, " +
+                    "$COLUMN_USER_ID TEXT NOT NULL, " +
+                    "$COLUMN_POLICY_ID TEXT NOT NULL, " +
+                    "$COLUMN_VERSION TEXT, " +
+                    "$COLUMN_ACTION TEXT, " +
+                    "$COLUMN_POSITION INTEGER NOT NULL, " +
+                    "$COLUMN_JSON TEXT NOT NULL, " +
+                    "PRIMARY KEY ($COLUMN_DEVICE, $COLUMN_USER_ID, $COLUMN_POLICY_ID))")
+            db.execSQL("CREATE TABLE $TABLE_SYNC (" +
+                    "$COLUMN_DEVICE TEXT NOT NULL, " +
+                    "$COLUMN_USER_ID TEXT NOT NULL, " +
+                    "$COLUMN_VERSION TEXT, " +
+                    "PRIMARY KEY ($COLUMN_DEVICE, $COLUMN_USER_ID))")
+        }
+
+        override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+            // cache can always be rebuilt from the device
+            db.execSQL("DROP TABLE IF EXISTS $TABLE_POLICY")
+            db.execSQL("DROP TABLE IF EXISTS $TABLE_SYNC")
+            onCreate(db)
+        }
+    }
+
+    companion object {
+        private const val DATABASE_NAME = "policy_cache.db"
+        private const val DATABASE_VERSION = 3
+
+        private const val TABLE_POLICY = "policy"
+        private const val TABLE_SYNC = "sync_state"
+
+        private const val COLUMN_DEVICE = "device"
+        private const val COLUMN_USER_ID = "user_id"
+        private const val COLUMN_POLICY_ID = "policy_id"
+        private const val COLUMN_VERSION = "version"
+        private const val COLUMN_ACTION = "action"
+        private const val COLUMN_POSITION = "position"
+        private const val COLUMN_JSON = "json"
+
+        private const val KEY_POLICY_ID = "policy_id"
+        private const val KEY_VERSION = "version"
+        private const val KEY_ACTION = "action"
+    }
+}
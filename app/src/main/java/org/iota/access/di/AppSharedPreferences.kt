@@ -28,11 +28,15 @@ import org.iota.access.models.User
 import org.iota.access.utils.ResourceProvider
 import org.json.JSONArray
 import org.json.JSONObject
+import java.util.concurrent.Executors
 import javax.inject.Inject
 import javax.inject.Singleton
 
 /**
  * Custom [SharedPreferences] class providing different methods for saving data
+ *
+ * Writes are collected and applied together in a single edit on a background thread.
+ * Until then, reads of the written keys return pending values.
  */
 @Singleton
 class AppSharedPreferences @Inject internal constructor(
@@ -40,11 +44,67 @@ class AppSharedPreferences @Inject internal constructor(
         private val resourceProvider: ResourceProvider
 ) {
 
-    private fun putString(key: String?, value: String?) {
-        sharedPreferences.edit().putString(key, value).apply()
+    // guarded by itself
+    private val pendingWrites = HashMap<String, String?>()
+    private var isFlushScheduled = false
+
+    // own thread, so flushes do not wait behind work queued on shared schedulers
+    private val flushExecutor = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, FLUSH_THREAD_NAME).apply { isDaemon = true }
+    }
+
+    // kept in a field because shared preferences hold listeners only weakly
+    private val connectionSettingsListener = SharedPreferences.OnSharedPreferenceChangeListener { _, key ->
+        if (key in CONNECTION_KEYS) connectionSettings = loadConnectionSettings()
+    }
+
+    /**
+     * Current connection settings. Snapshot is replaced whenever one of its preferences
+     * changes, so it can be read on the network path without touching shared preferences.
+     */
+    @Volatile
+    var connectionSettings: ConnectionSettings = loadConnectionSettings()
+        private set
+
+    init {
+        sharedPreferences.registerOnSharedPreferenceChangeListener(connectionSettingsListener)
+    }
+
+    private fun loadConnectionSettings() = ConnectionSettings(
+            getInt(SettingsFragment.Keys.PREF_KEY_PROTOCOL),
+            getString(SettingsFragment.Keys.PREF_KEY_ACCESS_IP_ADDRESS) ?: "",
+            getInt(SettingsFragment.Keys.PREF_KEY_ACCESS_PORT_NUMBER))
+
+    private fun putString(key: String, value: String?) {
+        synchronized(pendingWrites) {
+            pendingWrites[key] = value
+            if (isFlushScheduled) return
+            isFlushScheduled = true
+        }
+        flushExecutor.execute(::flushPendingWrites)
+    }
+
+    private fun flushPendingWrites() {
+        val writes: Map<String, String?>
+        synchronized(pendingWrites) {
+            writes = HashMap(pendingWrites)
+            isFlushScheduled = false
+        }
+        val editor = sharedPreferences.edit()
+        for ((key, value) in writes) editor.putString(key, value)
+        editor.apply()
+        synchronized(pendingWrites) {
+            // keep values written meanwhile, they are flushed by the next scheduled flush
+            for ((key, value) in writes) {
+                if (pendingWrites.containsKey(key) && pendingWrites[key] == value) pendingWrites.remove(key)
+            }
+        }
     }
 
     fun getString(key: String?, defaultValue: String? = ""): String? {
+        synchronized(pendingWrites) {
+            if (pendingWrites.containsKey(key)) return pendingWrites[key] ?: defaultValue
+        }
         return sharedPreferences.getString(key, defaultValue)
     }
 
@@ -68,6 +128,14 @@ class AppSharedPreferences @Inject internal constructor(
         return getInt(key, 0)
     }
 
+    fun registerOnChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener) {
+        sharedPreferences.registerOnSharedPreferenceChangeListener(listener)
+    }
+
+    fun unregisterOnChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener) {
+        sharedPreferences.unregisterOnSharedPreferenceChangeListener(listener)
+    }
+
     fun putUser(user: User?) {
         if (user != null) {
             putString(SettingsFragment.Keys.PREF_KEY_USER, user.toJSONObject().toString())
@@ -78,10 +146,18 @@ class AppSharedPreferences @Inject internal constructor(
 
     val user: User?
         get() {
-            val userJson = sharedPreferences
-                    .getString(SettingsFragment.Keys.PREF_KEY_USER, null) ?: return null
+            val userJson = getString(SettingsFragment.Keys.PREF_KEY_USER, null) ?: return null
             val json = JSONObject(userJson)
             return User.fromJSONObject(json)
         }
 
+    companion object {
+        private const val FLUSH_THREAD_NAME = "AppSharedPreferences"
+
+        private val CONNECTION_KEYS = setOf(
+                SettingsFragment.Keys.PREF_KEY_PROTOCOL,
+                SettingsFragment.Keys.PREF_KEY_ACCESS_IP_ADDRESS,
+                SettingsFragment.Keys.PREF_KEY_ACCESS_PORT_NUMBER)
+    }
+
 }
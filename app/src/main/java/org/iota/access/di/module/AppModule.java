@@ -33,7 +33,16 @@ import org.iota.access.api.CommunicatorImpl;
 import org.iota.access.api.CommunicatorStub;
 import org.iota.access.api.OnMessageReceived;
 import org.iota.access.api.PSService;
+import org.iota.access.api.StubSimulation;
 import org.iota.access.api.asr.ASRClient;
+import org.iota.access.api.http.PolicyEndpointInterceptor;
+import org.iota.access.api.http.PolicyEndpointResolver;
+import org.iota.access.api.http.RequestMetrics;
+import org.iota.access.api.http.RequestMetricsInterceptor;
+import org.iota.access.api.http.SampledLoggingInterceptor;
+import org.iota.access.api.tcp.DeviceAddressResolver;
+import org.iota.access.api.tcp.NioEngine;
+import org.iota.access.api.tcp.SocketProfile;
 import org.iota.access.api.tcp.TCPClient;
 import org.iota.access.api.tcp.TCPClientImpl;
 import org.iota.access.api.udp.UDPClient;
@@ -58,7 +67,6 @@ import javax.net.ssl.X509TrustManager;
 
 import dagger.Module;
 import dagger.Provides;
-import me.jessyan.retrofiturlmanager.RetrofitUrlManager;
 import okhttp3.Cache;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
@@ -66,9 +74,6 @@ import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
 import retrofit2.converter.gson.GsonConverterFactory;
 
-import static org.iota.access.SettingsFragment.Keys.PREF_KEY_POLICY_IP_ADDRESS;
-import static org.iota.access.SettingsFragment.Keys.PREF_KEY_POLICY_PORT_NUMBER;
-
 /**
  * Module for providing components used by the application
  */
@@ -88,7 +93,7 @@ public class AppModule {
     @Singleton
     public Communicator providesCommunicator(TCPClient tcpClient, PSService psService) {
         if (BuildConfig.STUB_DEVICE_COMUNICATOR) {
-            return new CommunicatorStub(psService);
+            return new CommunicatorStub(psService, StubSimulation.forProfile(BuildConfig.STUB_SIMULATION_PROFILE));
         } else {
             return new CommunicatorImpl(tcpClient);
         }
@@ -96,8 +101,15 @@ public class AppModule {
 
     @Singleton
     @Provides
-    public TCPClient provideTCPClient(AppSharedPreferences preferences, APILibDacAuthNative apiLibDacAuthNative) {
-        return new TCPClientImpl(preferences, apiLibDacAuthNative);
+    public TCPClient provideTCPClient(AppSharedPreferences preferences, APILibDacAuthNative apiLibDacAuthNative,
+                                      SocketProfile socketProfile, DeviceAddressResolver addressResolver,
+                                      NioEngine engine) {
+        return new TCPClientImpl(preferences, apiLibDacAuthNative, socketProfile, addressResolver, engine);
+    }
+
+    @Provides
+    public SocketProfile provideSocketProfile() {
+        return new SocketProfile();
     }
 
     @Provides
@@ -147,21 +159,31 @@ public class AppModule {
     /**
      * Provides the HTTP client
      *
-     * @param cache The cache that should be used
+     * @param cache                  The cache that should be used
+     * @param metrics                Store for request metrics
+     * @param policyEndpointResolver Resolver of policy store replicas
      * @return {@link OkHttpClient} object
      */
     @Provides
     // should be created only once
     @Singleton
-    public OkHttpClient provideOkhttpClient(Cache cache, Context context) {
-        OkHttpClient.Builder client = RetrofitUrlManager.getInstance().with(new OkHttpClient.Builder());
+    public OkHttpClient provideOkhttpClient(Cache cache, Context context, RequestMetrics metrics,
+                                            PolicyEndpointResolver policyEndpointResolver) {
+        OkHttpClient.Builder client = new OkHttpClient.Builder();
         client.cache(cache);
         client.connectTimeout(40, TimeUnit.SECONDS);
         client.readTimeout(40, TimeUnit.SECONDS);
-        // interceptor for logging
-        HttpLoggingInterceptor logInterceptor = new HttpLoggingInterceptor();
-        logInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-        client.addInterceptor(logInterceptor);
+        // interceptor for request metrics, does not touch request or response bodies
+        client.addInterceptor(new RequestMetricsInterceptor(metrics));
+        // interceptor for resolving policy store replica
+        client.addInterceptor(new PolicyEndpointInterceptor(policyEndpointResolver));
+        client.addNetworkInterceptor(new PolicyEndpointInterceptor.ConnectionMarker());
+        // body logging is opt-in for debug builds and logs only a sample of requests
+        if (BuildConfig.DEBUG && BuildConfig.HTTP_BODY_LOG_SAMPLE_RATE > 0f) {
+            client.addInterceptor(new SampledLoggingInterceptor(
+                    HttpLoggingInterceptor.Level.BODY,
+                    BuildConfig.HTTP_BODY_LOG_SAMPLE_RATE));
+        }
 
         client.hostnameVerifier((hostname, session) -> true);
 
@@ -179,15 +201,12 @@ public class AppModule {
 
     @Provides
     @Singleton
-    public PSService providePService(Gson gson, OkHttpClient okHttpClient, AppSharedPreferences appSharedPreferences) {
-        final String policyServer = appSharedPreferences.getString(PREF_KEY_POLICY_IP_ADDRESS, "policy.store.ip.addr");
-        final int policyPort = appSharedPreferences.getInt(PREF_KEY_POLICY_PORT_NUMBER, 6008);
-        final String policyUrl = "http://" + policyServer + ":" + policyPort;
-
+    public PSService providePService(Gson gson, OkHttpClient okHttpClient) {
+        // actual policy store address is resolved per request by PolicyEndpointInterceptor
         Retrofit retrofit = new Retrofit.Builder()
                 .addConverterFactory(GsonConverterFactory.create(gson))
                 .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
-                .baseUrl(policyUrl)
+                .baseUrl(PolicyEndpointResolver.BASE_URL)
                 .client(okHttpClient)
                 .build();
         return retrofit.create(PSService.class);
@@ -0,0 +1,20 @@
+package org.iota.access.extensions
+
+import io.reactivex.disposables.Disposable
+import kotlinx.coroutines.suspendCancellableCoroutine
+import org.iota.access.api.Communicator
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * Suspending form of [Communicator.request]. Cancelling the coroutine disposes the request,
+ * so its response is dropped.
+ *
+ * @throws org.iota.access.api.tcp.TCPRequestException if the connection failed
+ */
+suspend fun Communicator.awaitResponse(message: String): String = suspendCancellableCoroutine { continuation ->
+    val disposable: Disposable = request(message).subscribe(
+            { response -> continuation.resume(response) },
+            { error -> continuation.resumeWithException(error) })
+    continuation.invokeOnCancellation { disposable.dispose() }
+}
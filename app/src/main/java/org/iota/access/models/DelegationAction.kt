@@ -23,9 +23,9 @@ data class DelegationAction(
         val attrValue: String
 ) : PolicyAttributeList.Builder {
 
-    override fun build(): PolicyAttributeList = PolicyAttributeComparable(
-            PolicyAttributeSingle("action", attrValue),
-            PolicyAttributeSingle("action", attrValue),
+    override fun build(): PolicyAttributeList = PolicyAttributeComparable.of(
+            PolicyAttributeSingle.of(PolicyAttributeTypes.ACTION, attrValue),
+            PolicyAttributeSingle.of(PolicyAttributeTypes.ACTION, attrValue),
             PolicyAttributeComparable.Operation.EQUAL
     )
 
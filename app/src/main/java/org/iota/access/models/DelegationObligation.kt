@@ -23,7 +23,7 @@ data class DelegationObligation(
         val attrValue: String
 ) : PolicyAttributeSingle.Builder {
 
-    override fun build(): PolicyAttributeSingle = PolicyAttributeSingle("obligation", attrValue)
+    override fun build(): PolicyAttributeSingle = PolicyAttributeSingle.of(PolicyAttributeTypes.OBLIGATION, attrValue)
 
     override fun toString(): String = displayName
 }
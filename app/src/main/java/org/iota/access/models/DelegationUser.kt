@@ -23,15 +23,15 @@ data class DelegationUser(
         val publicId: String
 ) : PolicyAttributeList.Builder {
 
-    override fun build(): PolicyAttributeList = PolicyAttributeComparable(
-            PolicyAttributeSingle("public_id", "0x$publicId"),
-            PolicyAttributeSingle("request.subject.type", "request.subject.value"),
+    override fun build(): PolicyAttributeList = PolicyAttributeComparable.of(
+            PolicyAttributeSingle.of(PolicyAttributeTypes.PUBLIC_ID, "0x$publicId"),
+            PolicyAttributeSingle.REQUEST_SUBJECT,
             PolicyAttributeComparable.Operation.EQUAL
     )
 
-    fun policyAttrList(obfuscate: Boolean) = PolicyAttributeComparable(
-            PolicyAttributeSingle("public_id", if (obfuscate) "**********" else "0x$publicId"),
-            PolicyAttributeSingle("request.subject.type", "request.subject.value"),
+    fun policyAttrList(obfuscate: Boolean) = PolicyAttributeComparable.of(
+            PolicyAttributeSingle.of(PolicyAttributeTypes.PUBLIC_ID, if (obfuscate) "**********" else "0x$publicId"),
+            PolicyAttributeSingle.REQUEST_SUBJECT,
             PolicyAttributeComparable.Operation.EQUAL
     )
 
@@ -0,0 +1,60 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.models
+
+/**
+ * Fixed vocabulary of policy attribute types and request attribute references.
+ */
+object PolicyAttributeTypes {
+    const val TIME = "time"
+    const val GEOLOCATION = "geolocation"
+    const val EXECUTION_NUM = "execution_num"
+    const val PUBLIC_ID = "public_id"
+    const val ACTION = "action"
+    const val OBLIGATION = "obligation"
+
+    const val REQUEST_TIME_TYPE = "request.time.type"
+    const val REQUEST_TIME_VALUE = "request.time.value"
+    const val REQUEST_GEOLOCATION_TYPE = "request.geolocation.type"
+    const val REQUEST_GEOLOCATION_VALUE = "request.geolocation.value"
+    const val REQUEST_EXECUTION_NUM_TYPE = "request.execution_num.type"
+    const val REQUEST_EXECUTION_NUM_VALUE = "request.execution_num.value"
+    const val REQUEST_SUBJECT_TYPE = "request.subject.type"
+    const val REQUEST_SUBJECT_VALUE = "request.subject.value"
+    const val REQUEST_ACTION_TYPE = "request.action.type"
+    const val REQUEST_ACTION_VALUE = "request.action.value"
+
+    private val canonical: Map<String, String> = listOf(
+            TIME, GEOLOCATION, EXECUTION_NUM, PUBLIC_ID, ACTION, OBLIGATION,
+            REQUEST_TIME_TYPE, REQUEST_TIME_VALUE,
+            REQUEST_GEOLOCATION_TYPE, REQUEST_GEOLOCATION_VALUE,
+            REQUEST_EXECUTION_NUM_TYPE, REQUEST_EXECUTION_NUM_VALUE,
+            REQUEST_SUBJECT_TYPE, REQUEST_SUBJECT_VALUE,
+            REQUEST_ACTION_TYPE, REQUEST_ACTION_VALUE
+    ).associateBy { it }
+
+    /**
+     * @return canonical instance of [value] if it is part of the vocabulary, otherwise [value]
+     */
+    @JvmStatic
+    fun intern(value: String): String = canonical[value] ?: value
+
+    @JvmStatic
+    fun isVocabulary(value: String): Boolean = canonical.containsKey(value)
+}
@@ -22,6 +22,8 @@ package org.iota.access.models
 
 import org.json.JSONArray
 import org.json.JSONObject
+import java.lang.ref.WeakReference
+import java.util.*
 
 sealed class PolicyAttribute : Mappable {
     interface Builder {
@@ -62,10 +64,36 @@ data class PolicyAttributeSingle(
             PolicyAttrKeys.VALUE to value)
 
     companion object {
+        @JvmField
+        val REQUEST_TIME = of(PolicyAttributeTypes.REQUEST_TIME_TYPE, PolicyAttributeTypes.REQUEST_TIME_VALUE)
+
+        @JvmField
+        val REQUEST_GEOLOCATION = of(PolicyAttributeTypes.REQUEST_GEOLOCATION_TYPE, PolicyAttributeTypes.REQUEST_GEOLOCATION_VALUE)
+
+        @JvmField
+        val REQUEST_EXECUTION_NUM = of(PolicyAttributeTypes.REQUEST_EXECUTION_NUM_TYPE, PolicyAttributeTypes.REQUEST_EXECUTION_NUM_VALUE)
+
+        @JvmField
+        val REQUEST_SUBJECT = of(PolicyAttributeTypes.REQUEST_SUBJECT_TYPE, PolicyAttributeTypes.REQUEST_SUBJECT_VALUE)
+
+        @JvmField
+        val REQUEST_ACTION = of(PolicyAttributeTypes.REQUEST_ACTION_TYPE, PolicyAttributeTypes.REQUEST_ACTION_VALUE)
+
+        /**
+         * Returns shared instance of attribute with given type and value.
+         *
+         * Type and value strings from the fixed vocabulary are replaced with their canonical
+         * instances. Attributes are shared through the same weak table as other policy nodes,
+         * so an attribute is dropped once no policy uses it.
+         */
+        @JvmStatic
+        fun of(type: String, value: String): PolicyAttributeSingle =
+                PolicyNodeInterner.intern(PolicyAttributeSingle(PolicyAttributeTypes.intern(type), PolicyAttributeTypes.intern(value)))
+
         fun fromJSON(json: JSONObject): PolicyAttributeSingle? {
             val type = json.optString(PolicyAttrKeys.TYPE) ?: return null
             val value = json.optString(PolicyAttrKeys.VALUE) ?: return null
-            return PolicyAttributeSingle(type, value)
+            return of(type, value)
         }
     }
 }
@@ -75,9 +103,26 @@ class PolicyAttributeLogical(
         val operation: LogicalOperator
 ) : PolicyAttributeList() {
 
-    override fun toMap(): Map<String, Any> = mapOf(
-            PolicyAttrKeys.ATTRIBUTE_LIST to attributeList.map { it.toMap() },
-            PolicyAttrKeys.OPERATION to operation.toString())
+    private val map: Map<String, Any> by lazy {
+        mapOf(
+                PolicyAttrKeys.ATTRIBUTE_LIST to attributeList.map { it.toMap() },
+                PolicyAttrKeys.OPERATION to operation.toString())
+    }
+
+    private var hash = 0
+
+    override fun toMap(): Map<String, Any> = map
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is PolicyAttributeLogical) return false
+        return hashCode() == other.hashCode() && operation == other.operation && attributeList == other.attributeList
+    }
+
+    override fun hashCode(): Int {
+        if (hash == 0) hash = 31 * attributeList.hashCode() + operation.hashCode()
+        return hash
+    }
 
     enum class LogicalOperator {
         AND,
@@ -116,8 +161,15 @@ class PolicyAttributeLogical(
                 attributeList.add(attribute)
             }
 
-            return PolicyAttributeLogical(attributeList, operation)
+            return of(attributeList, operation)
         }
+
+        /**
+         * @return shared instance of logical attribute
+         */
+        @JvmStatic
+        fun of(attributeList: List<PolicyAttributeList>, operation: LogicalOperator): PolicyAttributeLogical =
+                PolicyNodeInterner.intern(PolicyAttributeLogical(attributeList.map { PolicyNodeInterner.intern(it) }, operation))
     }
 }
 
@@ -127,11 +179,20 @@ data class PolicyAttributeComparable(
         val operation: Operation
 ) : PolicyAttributeList() {
 
-    override fun toMap(): Map<String, Any> = mapOf(
-            PolicyAttrKeys.ATTRIBUTE_LIST to attributeList.map { it.toMap() },
-            PolicyAttrKeys.OPERATION to operation.toString())
+    private val map: Map<String, Any> by lazy {
+        mapOf(
+                PolicyAttrKeys.ATTRIBUTE_LIST to listOf(first.toMap(), second.toMap()),
+                PolicyAttrKeys.OPERATION to operation.toString())
+    }
+
+    private var hash = 0
 
-    private val attributeList = listOf(first, second)
+    override fun toMap(): Map<String, Any> = map
+
+    override fun hashCode(): Int {
+        if (hash == 0) hash = 31 * (31 * first.hashCode() + second.hashCode()) + operation.hashCode()
+        return hash
+    }
 
     enum class Operation {
         EQUAL,
@@ -175,18 +236,49 @@ data class PolicyAttributeComparable(
             val first = parsePolicyAttr(firstObject) ?: return null
             val second = parsePolicyAttr(secondObject) ?: return null
 
-            return PolicyAttributeComparable(first, second, operation)
+            return of(first, second, operation)
         }
+
+        /**
+         * @return shared instance of comparable attribute
+         */
+        @JvmStatic
+        fun of(first: PolicyAttribute, second: PolicyAttribute, operation: Operation): PolicyAttributeComparable =
+                PolicyNodeInterner.intern(PolicyAttributeComparable(
+                        PolicyNodeInterner.intern(first),
+                        PolicyNodeInterner.intern(second),
+                        operation))
     }
 }
 
 class PolicyObligationList(val obligations: List<PolicyAttributeSingle>) : PolicyObligation() {
 
-    override fun toMap(): Map<String, Any> =
-            mapOf(PolicyAttrKeys.OBLIGATIONS to obligations.map { it.toMap() })
+    private val map: Map<String, Any> by lazy {
+        mapOf(PolicyAttrKeys.OBLIGATIONS to obligations.map { it.toMap() })
+    }
+
+    override fun toMap(): Map<String, Any> = map
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is PolicyObligationList) return false
+        return obligations == other.obligations
+    }
+
+    override fun hashCode(): Int = obligations.hashCode()
 
     companion object {
-        fun emptyList(): PolicyObligationList = PolicyObligationList(listOf())
+        private val EMPTY = PolicyObligationList(listOf())
+
+        fun emptyList(): PolicyObligationList = EMPTY
+
+        /**
+         * @return shared instance of obligation list
+         */
+        @JvmStatic
+        fun of(obligations: List<PolicyAttributeSingle>): PolicyObligationList =
+                if (obligations.isEmpty()) EMPTY
+                else PolicyNodeInterner.intern(PolicyObligationList(obligations.map { PolicyNodeInterner.intern(it) }))
 
         fun fromJSON(json: JSONObject): PolicyObligationList? {
             val jsonArray: JSONArray = json.optJSONArray(PolicyAttrKeys.OBLIGATIONS) ?: return null
@@ -199,7 +291,7 @@ class PolicyObligationList(val obligations: List<PolicyAttributeSingle>) : Polic
                 obligations.add(obligation)
             }
 
-            return PolicyObligationList(obligations)
+            return of(obligations)
         }
     }
 }
@@ -210,9 +302,20 @@ data class PolicyAttributeCondition(
         val ifFalse: PolicyObligationList = PolicyObligationList.emptyList()
 ) : PolicyAttributeList() {
 
-    override fun toMap(): Map<String, Any> = mapOf(
-            PolicyAttrKeys.OPERATION to operation,
-            PolicyAttrKeys.ATTRIBUTE_LIST to attributeList.map { it.toMap() })
+    private val map: Map<String, Any> by lazy {
+        mapOf(
+                PolicyAttrKeys.OPERATION to operation,
+                PolicyAttrKeys.ATTRIBUTE_LIST to attributeList.map { it.toMap() })
+    }
+
+    private var hash = 0
+
+    override fun toMap(): Map<String, Any> = map
+
+    override fun hashCode(): Int {
+        if (hash == 0) hash = 31 * (31 * condition.hashCode() + ifTrue.hashCode()) + ifFalse.hashCode()
+        return hash
+    }
 
     val operation: String
         get() = "if"
@@ -246,9 +349,21 @@ data class PolicyAttributeCondition(
                 val ifFalseObject = attrList.optJSONObject(2) ?: return null
                 ifFalse = PolicyObligationList.fromJSON(ifFalseObject) ?: return null
             }
-            return PolicyAttributeCondition(condition, ifTrue, ifFalse
-                    ?: PolicyObligationList.emptyList())
+            return of(condition, ifTrue, ifFalse ?: PolicyObligationList.emptyList())
         }
+
+        /**
+         * @return shared instance of condition attribute
+         */
+        @JvmStatic
+        fun of(
+                condition: PolicyAttributeList,
+                ifTrue: PolicyObligationList,
+                ifFalse: PolicyObligationList = PolicyObligationList.emptyList()
+        ): PolicyAttributeCondition = PolicyNodeInterner.intern(PolicyAttributeCondition(
+                PolicyNodeInterner.intern(condition),
+                PolicyNodeInterner.intern(ifTrue),
+                PolicyNodeInterner.intern(ifFalse)))
     }
 }
 
@@ -278,6 +393,25 @@ fun parsePolicyAttr(json: JSONObject?): PolicyAttribute? {
     return null
 }
 
+/**
+ * Hash-consing table of policy attribute nodes.
+ *
+ * Policy attributes are immutable, so structurally equal subtrees can be represented by
+ * a single instance. Nodes are referenced weakly and disappear once no policy uses them.
+ */
+private object PolicyNodeInterner {
+    private val nodes = WeakHashMap<PolicyAttribute, WeakReference<PolicyAttribute>>()
+
+    @Synchronized
+    fun <T : PolicyAttribute> intern(node: T): T {
+        @Suppress("UNCHECKED_CAST")
+        val existing = nodes[node]?.get() as T?
+        if (existing != null) return existing
+        nodes[node] = WeakReference(node)
+        return node
+    }
+}
+
 private object PolicyAttrKeys {
     const val OPERATION = "operation"
     const val ATTRIBUTE_LIST = "attribute_list"
@@ -18,7 +18,6 @@
  */
 package org.iota.access.models
 
-import android.util.Base64
 import org.json.JSONObject
 import java.io.Serializable
 
@@ -54,8 +53,6 @@ class User(
         put(KEY_SIGNING_KEY, signingKey)
     }
 
-    val privateKey: ByteArray = Base64.decode(signingKey, Base64.NO_WRAP)
-
     companion object {
         private const val KEY_ID = "id"
         private const val KEY_PUBLIC_ID = "publicId"
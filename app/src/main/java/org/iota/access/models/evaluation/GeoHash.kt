@@ -0,0 +1,67 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.models.evaluation
+
+/**
+ * Geohash encoding of geographic coordinates.
+ */
+object GeoHash {
+    private const val BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz"
+
+    @JvmStatic
+    fun encode(latitude: Double, longitude: Double, precision: Int): String {
+        var minLat = -90.0
+        var maxLat = 90.0
+        var minLon = -180.0
+        var maxLon = 180.0
+        val hash = StringBuilder(precision)
+        var isLongitude = true
+        var bit = 0
+        var value = 0
+
+        while (hash.length < precision) {
+            if (isLongitude) {
+                val mid = (minLon + maxLon) / 2
+                if (longitude >= mid) {
+                    value = value shl 1 or 1
+                    minLon = mid
+                } else {
+                    value = value shl 1
+                    maxLon = mid
+                }
+            } else {
+                val mid = (minLat + maxLat) / 2
+                if (latitude >= mid) {
+                    value = value shl 1 or 1
+                    minLat = mid
+                } else {
+                    value = value shl 1
+                    maxLat = mid
+                }
+            }
+            isLongitude = !isLongitude
+            if (++bit == 5) {
+                hash.append(BASE32[value])
+                bit = 0
+                value = 0
+            }
+        }
+        return hash.toString()
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.models.evaluation
+
+import android.util.LruCache
+import org.iota.access.api.model.CommandAction
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Bounded LRU cache of decisions predicted by [PolicyProgram].
+ *
+ * Decisions are keyed by policy ID and version together with a coarse bucket of the
+ * request context: time bucket of the policy (see [PolicyProgram.timeBucket]), geohash
+ * cell of the requester and execution count. A cached decision is reused until any of
+ * them changes. Policies without version are keyed by their compiled program instead, which
+ * is compiled anew whenever the policy is received again.
+ *
+ * Cache is cleared when the policy list is replaced or cleared.
+ */
+@Singleton
+class PolicyDecisionCache @Inject constructor() {
+
+    private data class Key(
+            val policyId: String,
+            val version: String?,
+            // compared by identity, set only if the policy has no version
+            val program: PolicyProgram?,
+            val subject: String?,
+            val action: String?,
+            val timeBucket: Long,
+            val geoCell: String?,
+            val executionNum: Long
+    )
+
+    private val cache = LruCache<Key, PolicyProgram.Decision>(MAX_SIZE)
+
+    /**
+     * @return predicted decision for [command], or `null` if command has no compiled policy
+     */
+    fun decide(command: CommandAction, context: RequestContext): PolicyProgram.Decision? {
+        val program = command.policyProgram ?: return null
+        val geoCell = if (context.hasLocation) {
+            GeoHash.encode(context.latitude, context.longitude, GEOHASH_PRECISION)
+        } else {
+            null
+        }
+        val key = Key(
+                command.policyId,
+                command.version,
+                if (command.version == null) program else null,
+                context.subject,
+                context.action,
+                program.timeBucket(context.time),
+                geoCell,
+                context.executionNum)
+
+        cache.get(key)?.let { return it }
+        return program.evaluate(context).also { cache.put(key, it) }
+    }
+
+    fun clear() = cache.evictAll()
+
+    companion object {
+        private const val MAX_SIZE = 512
+
+        /** Cell of roughly 150 x 150 meters. */
+        private const val GEOHASH_PRECISION = 7
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.models.evaluation
+
+import org.iota.access.models.*
+import org.iota.access.models.PolicyAttributeComparable.Operation
+
+/**
+ * [PolicyObject] compiled into a flat decision program.
+ *
+ * GoC and DoC trees are compiled into postfix code over a table of leaf comparisons, so
+ * evaluation is a single loop over an int array without recursion or allocation. Every
+ * expression evaluates to one of [FALSE], [TRUE] or [UNKNOWN]; the latter is used for
+ * attributes which are not known on the client (for example execution count tracked by
+ * the device) and for constructs the client does not evaluate, so a prediction is only
+ * made when the outcome does not depend on them.
+ *
+ * Instances are thread safe, evaluations are serialized on the program.
+ */
+class PolicyProgram private constructor(
+        private val code: IntArray,
+        private val gocEntry: Int,
+        private val docEntry: Int,
+        private val leafSlot: IntArray,
+        private val leafOp: IntArray,
+        private val leafLong: LongArray,
+        private val leafDouble: DoubleArray,
+        private val leafString: Array<String?>,
+        private val timeThresholds: LongArray,
+        maxStackDepth: Int
+) {
+
+    enum class Decision {
+        /** Device is expected to grant the request. */
+        GRANT,
+
+        /** Device will certainly deny the request. */
+        DENY,
+
+        /** Decision depends on attributes known only to the device. */
+        UNKNOWN
+    }
+
+    private val stack = IntArray(maxStackDepth.coerceAtLeast(1))
+
+    /**
+     * Maps request time to a bucket such that evaluation gives the same result for every
+     * time inside of one bucket. Buckets are delimited by time constants of the policy.
+     */
+    fun timeBucket(time: Long): Long {
+        var low = 0
+        var high = timeThresholds.size
+        // number of thresholds lower than time
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (timeThresholds[mid] < time) low = mid + 1 else high = mid
+        }
+        val onThreshold = low < timeThresholds.size && timeThresholds[low] == time
+        return 2L * low + if (onThreshold) 1 else 0
+    }
+
+    /**
+     * Predicts decision of the device for the request.
+     */
+    @Synchronized
+    fun evaluate(context: RequestContext): Decision {
+        val doc = run(docEntry, context)
+        if (doc == TRUE) return Decision.DENY
+        val goc = run(gocEntry, context)
+        return when {
+            goc == FALSE -> Decision.DENY
+            goc == TRUE && doc == FALSE -> Decision.GRANT
+            else -> Decision.UNKNOWN
+        }
+    }
+
+    private fun run(entry: Int, context: RequestContext): Int {
+        var sp = 0
+        var pc = entry
+        while (true) {
+            val op = code[pc]
+            val arg = code[pc + 1]
+            pc += 2
+            when (op) {
+                OP_CONST -> stack[sp++] = arg
+                OP_LEAF -> stack[sp++] = evaluateLeaf(arg, context)
+                OP_AND -> {
+                    var result = TRUE
+                    for (i in sp - arg until sp) {
+                        val value = stack[i]
+                        if (value == FALSE) {
+                            result = FALSE
+                        } else if (value == UNKNOWN && result == TRUE) {
+                            result = UNKNOWN
+                        }
+                    }
+                    sp -= arg
+                    stack[sp++] = result
+                }
+                OP_OR -> {
+                    var result = FALSE
+                    for (i in sp - arg until sp) {
+                        val value = stack[i]
+                        if (value == TRUE) {
+                            result = TRUE
+                        } else if (value == UNKNOWN && result == FALSE) {
+                            result = UNKNOWN
+                        }
+                    }
+                    sp -= arg
+                    stack[sp++] = result
+                }
+                OP_END -> return stack[sp - 1]
+            }
+        }
+    }
+
+    /**
+     * Evaluates leaf `constant OP request attribute`.
+     */
+    private fun evaluateLeaf(leaf: Int, context: RequestContext): Int {
+        val op = leafOp[leaf]
+        return when (leafSlot[leaf]) {
+            SLOT_TIME -> compare(leafLong[leaf].compareTo(context.time), op)
+            SLOT_EXECUTION_NUM ->
+                if (context.executionNum == RequestContext.UNKNOWN_EXECUTION_NUM) UNKNOWN
+                else compare(leafLong[leaf].compareTo(context.executionNum), op)
+            SLOT_GEOLOCATION -> {
+                if (!context.hasLocation) return UNKNOWN
+                val base = leaf * 3
+                val distance = distanceMeters(leafDouble[base], leafDouble[base + 1], context.latitude, context.longitude)
+                compare(leafDouble[base + 2].compareTo(distance), op)
+            }
+            SLOT_SUBJECT -> equalIds(leafString[leaf], context.subject)
+            SLOT_ACTION -> equalIds(leafString[leaf], context.action)
+            else -> UNKNOWN
+        }
+    }
+
+    private fun compare(comparison: Int, op: Int): Int {
+        val result = when (op) {
+            CMP_EQUAL -> comparison == 0
+            CMP_LESS_OR_EQUAL -> comparison <= 0
+            CMP_GREATER_OR_EQUAL -> comparison >= 0
+            CMP_LESS_THAN -> comparison < 0
+            CMP_GREATER_THAN -> comparison > 0
+            else -> return UNKNOWN
+        }
+        return if (result) TRUE else FALSE
+    }
+
+    private fun equalIds(constant: String?, value: String?): Int {
+        if (constant == null || value == null) return UNKNOWN
+        return if (stripHexPrefix(constant).equals(stripHexPrefix(value), ignoreCase = true)) TRUE else FALSE
+    }
+
+    /**
+     * Builds the program, recursion is used only here.
+     */
+    private class Compiler {
+        private var code = IntArray(32)
+        private var codeSize = 0
+        private val leafSlot = mutableListOf<Int>()
+        private val leafOp = mutableListOf<Int>()
+        private val leafLong = mutableListOf<Long>()
+        private val leafDouble = mutableListOf<Double>()
+        private val leafString = mutableListOf<String?>()
+        private var depth = 0
+        var maxDepth = 0
+            private set
+
+        fun compile(policyObject: PolicyObject): PolicyProgram {
+            val gocEntry = codeSize
+            // missing GoC says nothing about what device grants
+            emitTree(policyObject.policyGoc, UNKNOWN)
+            emit(OP_END, 0)
+            depth = 0
+            val docEntry = codeSize
+            // missing DoC means nothing is explicitly denied
+            emitTree(policyObject.policyDoc, FALSE)
+            emit(OP_END, 0)
+
+            return PolicyProgram(
+                    code.copyOf(codeSize),
+                    gocEntry,
+                    docEntry,
+                    leafSlot.toIntArray(),
+                    leafOp.toIntArray(),
+                    leafLong.toLongArray(),
+                    leafDouble.toDoubleArray(),
+                    leafString.toTypedArray(),
+                    leafLong.filterIndexed { index, _ -> leafSlot[index] == SLOT_TIME }
+                            .distinct()
+                            .sorted()
+                            .toLongArray(),
+                    maxDepth)
+        }
+
+        private fun emitTree(attribute: PolicyAttribute, emptyValue: Int) {
+            when (attribute) {
+                is PolicyAttributeEmpty,
+                is PolicyAttributeListEmpty,
+                is PolicyObligationEmpty -> push(OP_CONST, emptyValue)
+                is PolicyAttributeLogical -> {
+                    for (child in attribute.attributeList) emitTree(child, UNKNOWN)
+                    val count = attribute.attributeList.size
+                    val op = when (attribute.operation) {
+                        PolicyAttributeLogical.LogicalOperator.AND -> OP_AND
+                        PolicyAttributeLogical.LogicalOperator.OR -> OP_OR
+                    }
+                    depth -= count
+                    push(op, count)
+                }
+                is PolicyAttributeComparable -> emitComparable(attribute)
+                // obligations and conditions do not affect the decision itself
+                else -> push(OP_CONST, UNKNOWN)
+            }
+        }
+
+        private fun emitComparable(attribute: PolicyAttributeComparable) {
+            val first = attribute.first as? PolicyAttributeSingle
+            val second = attribute.second as? PolicyAttributeSingle
+            if (first == null || second == null) {
+                push(OP_CONST, UNKNOWN)
+                return
+            }
+
+            val firstSlot = slotOf(first.type)
+            val secondSlot = slotOf(second.type)
+            when {
+                firstSlot == SLOT_CONSTANT && secondSlot == SLOT_CONSTANT ->
+                    push(OP_CONST, evaluateConstants(first, second, attribute.operation))
+                firstSlot != SLOT_CONSTANT && secondSlot != SLOT_CONSTANT -> push(OP_CONST, UNKNOWN)
+                // leaves are normalized to `constant OP request attribute`
+                secondSlot != SLOT_CONSTANT -> emitLeaf(first, secondSlot, cmpOf(attribute.operation))
+                else -> emitLeaf(second, firstSlot, cmpOf(attribute.operation.reversed()))
+            }
+        }
+
+        private fun emitLeaf(constant: PolicyAttributeSingle, slot: Int, op: Int) {
+            var longValue = 0L
+            var latitude = 0.0
+            var longitude = 0.0
+            var radius = 0.0
+            var stringValue: String? = null
+
+            when (slot) {
+                SLOT_TIME, SLOT_EXECUTION_NUM -> {
+                    longValue = constant.value.toLongOrNull() ?: return push(OP_CONST, UNKNOWN)
+                }
+                SLOT_GEOLOCATION -> {
+                    val parts = constant.value.split(",")
+                    if (parts.size != 3) return push(OP_CONST, UNKNOWN)
+                    latitude = parts[0].trim().toDoubleOrNull() ?: return push(OP_CONST, UNKNOWN)
+                    longitude = parts[1].trim().toDoubleOrNull() ?: return push(OP_CONST, UNKNOWN)
+                    radius = parts[2].trim().toDoubleOrNull() ?: return push(OP_CONST, UNKNOWN)
+                }
+                SLOT_SUBJECT, SLOT_ACTION -> {
+                    if (op != CMP_EQUAL) return push(OP_CONST, UNKNOWN)
+                    stringValue = constant.value
+                }
+            }
+
+            val index = leafSlot.size
+            leafSlot.add(slot)
+            leafOp.add(op)
+            leafLong.add(longValue)
+            leafDouble.add(latitude)
+            leafDouble.add(longitude)
+            leafDouble.add(radius)
+            leafString.add(stringValue)
+            push(OP_LEAF, index)
+        }
+
+        private fun evaluateConstants(first: PolicyAttributeSingle, second: PolicyAttributeSingle, operation: Operation): Int {
+            if (operation == Operation.EQUAL && first.value == second.value) return TRUE
+            val firstNumber = first.value.toDoubleOrNull()
+            val secondNumber = second.value.toDoubleOrNull()
+            if (firstNumber == null || secondNumber == null) {
+                return if (operation == Operation.EQUAL) FALSE else UNKNOWN
+            }
+            return when (operation) {
+                Operation.EQUAL -> firstNumber == secondNumber
+                Operation.LESS_OR_EQUAL -> firstNumber <= secondNumber
+                Operation.GREATER_OR_EQUAL -> firstNumber >= secondNumber
+                Operation.LESS_THAN -> firstNumber < secondNumber
+                Operation.GREATER_THAN -> firstNumber > secondNumber
+            }.let { if (it) TRUE else FALSE }
+        }
+
+        private fun push(op: Int, arg: Int) {
+            emit(op, arg)
+            depth++
+            if (depth > maxDepth) maxDepth = depth
+        }
+
+        private fun emit(op: Int, arg: Int) {
+            if (codeSize + 2 > code.size) code = code.copyOf(code.size * 2)
+            code[codeSize++] = op
+            code[codeSize++] = arg
+        }
+    }
+
+    companion object {
+        const val FALSE = 0
+        const val TRUE = 1
+        const val UNKNOWN = 2
+
+        private const val OP_END = 0
+        private const val OP_CONST = 1
+        private const val OP_LEAF = 2
+        private const val OP_AND = 3
+        private const val OP_OR = 4
+
+        private const val SLOT_CONSTANT = 0
+        private const val SLOT_TIME = 1
+        private const val SLOT_EXECUTION_NUM = 2
+        private const val SLOT_GEOLOCATION = 3
+        private const val SLOT_SUBJECT = 4
+        private const val SLOT_ACTION = 5
+        private const val SLOT_OTHER_REQUEST = 6
+
+        private const val CMP_EQUAL = 0
+        private const val CMP_LESS_OR_EQUAL = 1
+        private const val CMP_GREATER_OR_EQUAL = 2
+        private const val CMP_LESS_THAN = 3
+        private const val CMP_GREATER_THAN = 4
+
+        private const val EARTH_RADIUS_METERS = 6_371_000.0
+
+        /**
+         * Compiles policy object into a program.
+         */
+        @JvmStatic
+        fun compile(policyObject: PolicyObject): PolicyProgram = Compiler().compile(policyObject)
+
+        private fun slotOf(type: String): Int = when (type) {
+            PolicyAttributeTypes.REQUEST_TIME_TYPE -> SLOT_TIME
+            PolicyAttributeTypes.REQUEST_EXECUTION_NUM_TYPE -> SLOT_EXECUTION_NUM
+            PolicyAttributeTypes.REQUEST_GEOLOCATION_TYPE -> SLOT_GEOLOCATION
+            PolicyAttributeTypes.REQUEST_SUBJECT_TYPE -> SLOT_SUBJECT
+            PolicyAttributeTypes.REQUEST_ACTION_TYPE -> SLOT_ACTION
+            else -> if (type.startsWith("request.")) SLOT_OTHER_REQUEST else SLOT_CONSTANT
+        }
+
+        private fun cmpOf(operation: Operation): Int = when (operation) {
+            Operation.EQUAL -> CMP_EQUAL
+            Operation.LESS_OR_EQUAL -> CMP_LESS_OR_EQUAL
+            Operation.GREATER_OR_EQUAL -> CMP_GREATER_OR_EQUAL
+            Operation.LESS_THAN -> CMP_LESS_THAN
+            Operation.GREATER_THAN -> CMP_GREATER_THAN
+        }
+
+        /**
+         * @return operation with swapped operands, `a OP b` is equal to `b OP.reversed() a`
+         */
+        private fun Operation.reversed(): Operation = when (this) {
+            Operation.EQUAL -> Operation.EQUAL
+            Operation.LESS_OR_EQUAL -> Operation.GREATER_OR_EQUAL
+            Operation.GREATER_OR_EQUAL -> Operation.LESS_OR_EQUAL
+            Operation.LESS_THAN -> Operation.GREATER_THAN
+            Operation.GREATER_THAN -> Operation.LESS_THAN
+        }
+
+        private fun stripHexPrefix(value: String): String =
+                if (value.startsWith("0x") || value.startsWith("0X")) value.substring(2) else value
+
+        private fun distanceMeters(lat1: Double, lon1: Double, lat2: Double, lon2: Double): Double {
+            val dLat = Math.toRadians(lat2 - lat1)
+            val dLon = Math.toRadians(lon2 - lon1)
+            val a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                    Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                    Math.sin(dLon / 2) * Math.sin(dLon / 2)
+            return 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a))
+        }
+    }
+}
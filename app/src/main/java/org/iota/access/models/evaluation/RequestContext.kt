@@ -0,0 +1,64 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.models.evaluation
+
+/**
+ * Values of request attributes against which policies are evaluated.
+ *
+ * Attributes which are not known on the client are left unset and every comparison
+ * involving them evaluates to unknown. Instances are mutable so that one context can be
+ * reused between evaluations.
+ */
+class RequestContext {
+
+    /** Request time in seconds since epoch. */
+    var time: Long = 0
+
+    /** Number of times the action was already executed, or [UNKNOWN_EXECUTION_NUM]. */
+    var executionNum: Long = UNKNOWN_EXECUTION_NUM
+
+    /** Latitude of the requester in degrees, or [Double.NaN] if unknown. */
+    var latitude: Double = Double.NaN
+
+    /** Longitude of the requester in degrees, or [Double.NaN] if unknown. */
+    var longitude: Double = Double.NaN
+
+    /** Public ID of the requester. */
+    var subject: String? = null
+
+    /** Requested action. */
+    var action: String? = null
+
+    val hasLocation: Boolean
+        get() = !latitude.isNaN() && !longitude.isNaN()
+
+    companion object {
+        const val UNKNOWN_EXECUTION_NUM = -1L
+
+        /**
+         * Creates context for request made right now.
+         */
+        @JvmStatic
+        fun now(subject: String?, action: String?): RequestContext = RequestContext().apply {
+            this.time = System.currentTimeMillis() / 1000
+            this.subject = subject
+            this.action = action
+        }
+    }
+}
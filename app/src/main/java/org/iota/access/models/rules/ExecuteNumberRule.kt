@@ -3,12 +3,13 @@ package org.iota.access.models.rules
 import org.iota.access.models.PolicyAttributeComparable
 import org.iota.access.models.PolicyAttributeList
 import org.iota.access.models.PolicyAttributeSingle
+import org.iota.access.models.PolicyAttributeTypes
 
 
 class ExecuteNumberRule(private val numOfExecutions: Int) : Rule() {
-    override fun build(): PolicyAttributeList = PolicyAttributeComparable(
-            PolicyAttributeSingle("execution_num", numOfExecutions.toString()),
-            PolicyAttributeSingle("request.execution_num.type", "request.execution_num.value"),
+    override fun build(): PolicyAttributeList = PolicyAttributeComparable.of(
+            PolicyAttributeSingle.of(PolicyAttributeTypes.EXECUTION_NUM, numOfExecutions.toString()),
+            PolicyAttributeSingle.REQUEST_EXECUTION_NUM,
             PolicyAttributeComparable.Operation.GREATER_THAN
     )
 }
@@ -3,6 +3,7 @@ package org.iota.access.models.rules
 import org.iota.access.models.PolicyAttributeComparable
 import org.iota.access.models.PolicyAttributeList
 import org.iota.access.models.PolicyAttributeSingle
+import org.iota.access.models.PolicyAttributeTypes
 
 class LocationRule(
         id: String,
@@ -40,10 +41,10 @@ class LocationRule(
     }
 
     override fun build(): PolicyAttributeList {
-        val first = PolicyAttributeSingle("geolocation", "$latitude,$longitude,${locationUnit.toMeters(radius)}")
+        val first = PolicyAttributeSingle.of(PolicyAttributeTypes.GEOLOCATION, "$latitude,$longitude,${locationUnit.toMeters(radius)}")
 
-        val second = PolicyAttributeSingle("request.geolocation.type", "request.geolocation.value")
+        val second = PolicyAttributeSingle.REQUEST_GEOLOCATION
 
-        return PolicyAttributeComparable(first, second, PolicyAttributeComparable.Operation.GREATER_OR_EQUAL)
+        return PolicyAttributeComparable.of(first, second, PolicyAttributeComparable.Operation.GREATER_OR_EQUAL)
     }
 }
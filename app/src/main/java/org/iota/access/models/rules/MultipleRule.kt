@@ -19,7 +19,7 @@ class MultipleRule(
                 for (rule in ruleList) {
                     policyAttrList.add(rule.build())
                 }
-                PolicyAttributeLogical(policyAttrList, ruleSatisfyType.logicalOperation)
+                PolicyAttributeLogical.of(policyAttrList, ruleSatisfyType.logicalOperation)
             }
 
 }
@@ -4,6 +4,7 @@ import org.iota.access.models.PolicyAttributeComparable
 import org.iota.access.models.PolicyAttributeList
 import org.iota.access.models.PolicyAttributeLogical
 import org.iota.access.models.PolicyAttributeSingle
+import org.iota.access.models.PolicyAttributeTypes
 import java.util.*
 
 class TimeRule(
@@ -13,18 +14,18 @@ class TimeRule(
 ) : Rule(id) {
 
     override fun build(): PolicyAttributeList {
-        val from = PolicyAttributeComparable(
-                PolicyAttributeSingle("time", (fromDate.time / 1000).toString()),
-                PolicyAttributeSingle("request.time.type", "request.time.value"),
+        val from = PolicyAttributeComparable.of(
+                PolicyAttributeSingle.of(PolicyAttributeTypes.TIME, (fromDate.time / 1000).toString()),
+                PolicyAttributeSingle.REQUEST_TIME,
                 PolicyAttributeComparable.Operation.LESS_OR_EQUAL
         )
 
-        val until = PolicyAttributeComparable(
-                PolicyAttributeSingle("time", (untilDate.time / 1000).toString()),
-                PolicyAttributeSingle("request.time.type", "request.time.value"),
+        val until = PolicyAttributeComparable.of(
+                PolicyAttributeSingle.of(PolicyAttributeTypes.TIME, (untilDate.time / 1000).toString()),
+                PolicyAttributeSingle.REQUEST_TIME,
                 PolicyAttributeComparable.Operation.GREATER_OR_EQUAL
         )
 
-        return PolicyAttributeLogical(listOf(from, until), PolicyAttributeLogical.LogicalOperator.AND)
+        return PolicyAttributeLogical.of(listOf(from, until), PolicyAttributeLogical.LogicalOperator.AND)
     }
 }
@@ -26,6 +26,8 @@ import android.widget.ImageButton
 import android.widget.ImageView
 import android.widget.TextView
 import androidx.databinding.DataBindingUtil
+import androidx.recyclerview.widget.DiffUtil
+import androidx.recyclerview.widget.ListAdapter
 import androidx.recyclerview.widget.RecyclerView
 import org.iota.access.R
 import org.iota.access.api.model.CommandAction
@@ -34,11 +36,13 @@ import java.lang.ref.WeakReference
 
 /**
  * Adapter for the command action list.
+ *
+ * New lists are diffed against the current one on a background thread, so only changed
+ * rows are rebound. Items are identified by their policy ID.
  */
 class CommandActionAdapter constructor(
-        private val commands: MutableList<CommandAction>,
         listener: CommandActionAdapterListener
-) : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
+) : ListAdapter<CommandAction, RecyclerView.ViewHolder>(DIFF_CALLBACK) {
 
     class CommandViewHolder(binding: CommandListItemBinding) : RecyclerView.ViewHolder(binding.root) {
         private val commandName: TextView = binding.textCommandName
@@ -65,6 +69,10 @@ class CommandActionAdapter constructor(
 
     private val listener: WeakReference<CommandActionAdapterListener> = WeakReference(listener)
 
+    init {
+        setHasStableIds(true)
+    }
+
     override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): RecyclerView.ViewHolder {
         val binding: CommandListItemBinding = DataBindingUtil.inflate(LayoutInflater.from(parent.context),
                 R.layout.command_list_item,
@@ -75,12 +83,36 @@ class CommandActionAdapter constructor(
 
     override fun onBindViewHolder(viewHolder: RecyclerView.ViewHolder, position: Int) {
         val commandHolder = viewHolder as CommandViewHolder
-        val command = commands[position]
+        val command = getItem(position)
         commandHolder.bind(command, listener)
     }
 
-    override fun getItemCount(): Int {
-        return commands.size
-    }
+    override fun getItemId(position: Int): Long = stableId(getItem(position).policyId)
+
+    companion object {
+        private val DIFF_CALLBACK = object : DiffUtil.ItemCallback<CommandAction>() {
+            override fun areItemsTheSame(oldItem: CommandAction, newItem: CommandAction): Boolean =
+                    oldItem.policyId == newItem.policyId
 
+            override fun areContentsTheSame(oldItem: CommandAction, newItem: CommandAction): Boolean =
+                    oldItem == newItem &&
+                            oldItem.actionName == newItem.actionName &&
+                            oldItem.headerName == newItem.headerName &&
+                            oldItem.imageResId == newItem.imageResId &&
+                            oldItem.deletable == newItem.deletable
+        }
+
+        /**
+         * 64-bit FNV-1a hash of policy ID, collisions are far less likely than with
+         * [String.hashCode].
+         */
+        private fun stableId(policyId: String): Long {
+            var hash = -0x340d631b7bdddcdbL
+            for (char in policyId) {
+                hash = hash xor char.toLong()
+                hash *= 0x100000001b3L
+            }
+            return hash
+        }
+    }
 }
@@ -18,8 +18,10 @@
  */
 package org.iota.access.ui.main.commandlist
 
+import android.Manifest
 import android.app.Activity
 import android.content.Intent
+import android.content.pm.PackageManager
 import android.os.Bundle
 import android.util.Pair
 import android.view.Menu
@@ -29,8 +31,11 @@ import android.view.View
 import androidx.activity.OnBackPressedCallback
 import androidx.annotation.DrawableRes
 import androidx.annotation.StringRes
+import androidx.core.content.ContextCompat
 import androidx.databinding.DataBindingUtil
 import androidx.lifecycle.ViewModelProvider
+import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.RecyclerView
 import io.reactivex.android.schedulers.AndroidSchedulers
 import io.reactivex.disposables.CompositeDisposable
 import org.iota.access.BaseFragment
@@ -64,8 +69,6 @@ class CommandListFragment : BaseFragment(R.layout.fragment_command_list), Inject
     private lateinit var binding: FragmentCommandListBinding
     private lateinit var viewModel: CommandListViewModel
 
-    private val commands: MutableList<CommandAction> = mutableListOf()
-
     private var unpaidCommand: CommandAction? = null
     private var commandToDelete: CommandAction? = null
     private var disposable: CompositeDisposable? = null
@@ -81,12 +84,22 @@ class CommandListFragment : BaseFragment(R.layout.fragment_command_list), Inject
         super.onStart()
         if (!viewModel.isPolicyRequested) viewModel.getPolicyList() else if (!viewModel.commandList.isEmpty) {
             binding.fab.show()
+            viewModel.onCommandListShown()
         }
     }
 
     override fun onActivityCreated(savedInstanceState: Bundle?) {
         super.onActivityCreated(savedInstanceState)
-        binding.recyclerView.adapter = CommandActionAdapter(commands, this)
+        binding.recyclerView.adapter = CommandActionAdapter(this)
+        binding.recyclerView.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+            override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                val layoutManager = recyclerView.layoutManager as? LinearLayoutManager ?: return
+                val itemCount = layoutManager.itemCount
+                if (itemCount > 0 && layoutManager.findLastVisibleItemPosition() >= itemCount - PAGE_PREFETCH_DISTANCE) {
+                    viewModel.loadNextPolicyPage()
+                }
+            }
+        })
         binding.swipeRefreshLayout.setOnRefreshListener { viewModel.getPolicyList() }
 
         val storeOwner = navController.getViewModelStoreOwner(navController.graph.id)
@@ -200,8 +213,32 @@ class CommandListFragment : BaseFragment(R.layout.fragment_command_list), Inject
         showQuestionDialog(question, DELETE_COMMAND_QUESTION)
     }
 
-    private fun onMicrophoneButtonClicked() =
+    private fun onMicrophoneButtonClicked() {
+        val context = context ?: return
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(arrayOf(Manifest.permission.RECORD_AUDIO), REQUEST_RECORD_AUDIO)
+            return
+        }
+        startVoiceCommand()
+    }
+
+    private fun startVoiceCommand() {
+        // system speech activity does not publish partial results, it is used only as a fallback
+        if (!viewModel.startVoiceCommand()) {
             startActivityForResult(viewModel.asrIntent, ACTIVITY_RESULT_SPEECH)
+        }
+    }
+
+    override fun onRequestPermissionsResult(requestCode: Int, permissions: Array<out String>, grantResults: IntArray) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults)
+        if (requestCode == REQUEST_RECORD_AUDIO) {
+            if (grantResults.firstOrNull() == PackageManager.PERMISSION_GRANTED) {
+                startVoiceCommand()
+            } else {
+                startActivityForResult(viewModel.asrIntent, ACTIVITY_RESULT_SPEECH)
+            }
+        }
+    }
 
     override fun onActivityResult(requestCode: Int, resultCode: Int, data: Intent?) {
         super.onActivityResult(requestCode, resultCode, data)
@@ -235,9 +272,7 @@ class CommandListFragment : BaseFragment(R.layout.fragment_command_list), Inject
             binding.fab.show()
             hideBackgroundMessage()
         }
-        commands.clear()
-        commands.addAll(commandList)
-        binding.recyclerView.adapter?.notifyDataSetChanged()
+        (binding.recyclerView.adapter as? CommandActionAdapter)?.submitList(commandList)
     }
 
     private fun bindViewModel() {
@@ -275,10 +310,12 @@ class CommandListFragment : BaseFragment(R.layout.fragment_command_list), Inject
 
     companion object {
         private const val ACTIVITY_RESULT_SPEECH = 10
+        private const val REQUEST_RECORD_AUDIO = 11
         private const val TAG_CLEAR_POLICY = "clear_policy_dialog"
         private const val REFILL_ACCOUNT_QUESTION: String = "refillAccountQuestion"
         private const val PAY_ACTION_QUESTION = "payActionQuestion"
         private const val DELETE_COMMAND_QUESTION = "deleteCommandQuestion"
+        private const val PAGE_PREFETCH_DISTANCE = 10
 
         @JvmStatic
         fun newInstance(): CommandListFragment {
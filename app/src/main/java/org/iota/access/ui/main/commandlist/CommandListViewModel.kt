@@ -21,19 +21,29 @@ package org.iota.access.ui.main.commandlist
 import android.content.Intent
 import android.speech.RecognizerIntent
 import android.util.Pair
+import androidx.annotation.WorkerThread
 import com.google.gson.Gson
 import com.google.gson.JsonSyntaxException
 import com.google.gson.reflect.TypeToken
+import io.reactivex.Completable
+import io.reactivex.Maybe
 import io.reactivex.Observable
+import io.reactivex.Single
+import io.reactivex.android.schedulers.AndroidSchedulers
+import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.schedulers.Schedulers
 import io.reactivex.subjects.BehaviorSubject
 import io.reactivex.subjects.PublishSubject
 import org.iota.access.CommunicationViewModel
 import org.iota.access.R
 import org.iota.access.api.Communicator
+import org.iota.access.api.ConnectionWarmUp
 import org.iota.access.api.PSService
 import org.iota.access.api.asr.ASRClient
+import org.iota.access.api.asr.ASRClientException
 import org.iota.access.api.model.CommandAction
 import org.iota.access.api.model.CommunicationMessage
+import org.iota.access.api.model.PolicyListUpdate
 import org.iota.access.api.model.TCPResponse
 import org.iota.access.api.model.policy_server.PSClearPolicyListRequest
 import org.iota.access.api.model.policy_server.PSEmptyResponse
@@ -42,15 +52,22 @@ import org.iota.access.api.model.token_server.TSFundRequest
 import org.iota.access.api.model.token_server.TSSendRequest
 import org.iota.access.api.tcp.TCPClient.TCPError
 import org.iota.access.data.DataProvider
+import org.iota.access.data.PolicyCache
+import org.iota.access.di.AppSharedPreferences
+import org.iota.access.models.evaluation.PolicyDecisionCache
+import org.iota.access.models.evaluation.PolicyProgram
+import org.iota.access.models.evaluation.RequestContext
 import org.iota.access.user.UserManager
 import org.iota.access.utils.JSONUtils
 import org.iota.access.utils.Optional
 import org.iota.access.utils.ResourceProvider
-import org.json.JSONArray
 import retrofit2.Call
 import retrofit2.Callback
 import retrofit2.Response
 import timber.log.Timber
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 
 class CommandListViewModel
@@ -61,6 +78,10 @@ class CommandListViewModel
         private val asrClient: ASRClient,
         private val userManager: UserManager,
         private val psService: PSService,
+        private val policyCache: PolicyCache,
+        private val preferences: AppSharedPreferences,
+        private val decisionCache: PolicyDecisionCache,
+        private val connectionWarmUp: ConnectionWarmUp,
         private val gson: Gson
 ) : CommunicationViewModel(communicator, resourceProvider) {
 
@@ -69,7 +90,35 @@ class CommandListViewModel
     private var mAccountRefillCall: Call<TSEmptyResponse>? = null
     private var mSendTokenResponseBodyCall: Call<TSEmptyResponse>? = null
     private var invokedCommand: CommandAction? = null
-    private var policyIdToEnable: String? = null
+    private val cacheDisposable = CompositeDisposable()
+    // requests end with the view model, their responses are dropped
+    private val requestDisposable = CompositeDisposable()
+    // device the policy list is synced with, its address is read when the sync starts
+    private var syncDevice: String? = null
+    private var nextPolicyCursor: String? = null
+    private var isPolicyPageRequested = false
+    // thread of the view model for shown policies and cache I/O, which does not wait behind
+    // other users of shared schedulers; it ends when idle, so it outlives the view model only
+    // by tasks which are still queued
+    private val cacheScheduler = Schedulers.from(ThreadPoolExecutor(1, 1,
+            CACHE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, LinkedBlockingQueue()) { runnable ->
+        Thread(runnable, CACHE_THREAD_NAME).apply { isDaemon = true }
+    }.apply { allowCoreThreadTimeOut(true) })
+    // policies shown in the list are always the first shownRowCount rows of the cache; they
+    // are touched on the cache scheduler only, so cache reads and updates apply in order
+    private val shownPolicies = mutableListOf<CommandAction>()
+    private var shownDevice: String? = null
+    private var shownRowCount = 0
+    private var shownLimit = POLICY_PAGE_SIZE
+    private var isCacheEndShown = false
+    private var isCachedPageRequested = false
+    // names of all cached policies, not only of the shown ones; touched on the cache scheduler
+    private val voiceCommandIndex = VoiceCommandIndex()
+    private var indexedUserId: String? = null
+    private var asrDisposable: CompositeDisposable? = null
+    private var isConnectionPrepared = false
+    // one warm-up per visit of the screen, whichever trigger comes first
+    private var isWarmUpRequested = false
 
     var isPolicyRequested = false
         private set
@@ -90,6 +139,12 @@ class CommandListViewModel
      */
     fun executeCommand(command: CommandAction) {
         val user = userManager.user ?: return
+        // do not bother the device with requests it will certainly deny
+        val decision = decisionCache.decide(command, RequestContext.now(user.publicId, command.action))
+        if (decision == PolicyProgram.Decision.DENY) {
+            mShowDialogMessage.onNext(resourceProvider.getString(R.string.msg_command_denied_by_policy, command.actionName))
+            return
+        }
         invokedCommand = command
         val policy = command.policyId
         sendTCPMessage(
@@ -97,22 +152,116 @@ class CommandListViewModel
                 resourceProvider.getString(R.string.msg_executing_command, command.actionName))
     }
 
+    /**
+     * Shows first page of the cached policy list, if there is one, and requests changes
+     * since the last sync from the device.
+     */
     fun getPolicyList() {
         val user = userManager.user ?: return
         isPolicyRequested = true
         _showRefresh.onNext(true)
         val userId = user.publicId
-        sendTCPMessage(CommunicationMessage.makePolicyListRequest(userId))
+        val device = preferences.connectionSettings.deviceAddress
+        if (device != syncDevice) {
+            syncDevice = device
+            // cursor belongs to the sync with the previous device
+            nextPolicyCursor = null
+        }
+        cacheDisposable.add(Single
+                .fromCallable {
+                    showDevice(device)
+                    if (shownPolicies.isEmpty()) showCachedPolicies(userId)
+                    if (indexedUserId != userId) indexCachedPolicies(userId)
+                    Optional(policyCache.getVersion(device, userId))
+                }
+                .subscribeOn(cacheScheduler)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe({ cachedVersion ->
+                    val version = if (cachedVersion.isEmpty) null else cachedVersion.get()
+                    sendTCPMessage(CommunicationMessage.makePolicyListRequest(userId, version, null, POLICY_PAGE_SIZE))
+                }) { throwable ->
+                    Timber.e(throwable)
+                    sendTCPMessage(CommunicationMessage.makePolicyListRequest(userId, null, null, POLICY_PAGE_SIZE))
+                })
+    }
+
+    /**
+     * Connects to the device in advance when the screen returns with commands already shown,
+     * so that the first tapped command does not wait for the handshake.
+     */
+    fun onCommandListShown() {
+        if (!commandList.isEmpty && commandList.get().isNotEmpty()) warmUpConnection()
+    }
+
+    private fun warmUpConnection() {
+        if (isWarmUpRequested) return
+        isWarmUpRequested = true
+        connectionWarmUp.onCommandListVisible()
+    }
+
+    /**
+     * Shows the next page of cached policies. Also retries the sync of the remaining pages,
+     * if it stopped at a failed page.
+     */
+    fun loadNextPolicyPage() {
+        val user = userManager.user ?: return
+        if (!isCachedPageRequested) {
+            isCachedPageRequested = true
+            cacheDisposable.add(Completable
+                    .fromAction {
+                        if (shownPolicies.size >= shownLimit) {
+                            shownLimit += POLICY_PAGE_SIZE
+                            showCachedPolicies(user.publicId)
+                        }
+                    }
+                    .subscribeOn(cacheScheduler)
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .doFinally { isCachedPageRequested = false }
+                    .subscribe({}, Timber::e))
+        }
+        requestNextPolicyPage()
+    }
+
+    /**
+     * Requests the next page of the policy list from the device, if there is one and it is
+     * not being loaded already.
+     */
+    private fun requestNextPolicyPage() {
+        val cursor = nextPolicyCursor ?: return
+        if (isPolicyPageRequested) return
+        val user = userManager.user ?: return
+        isPolicyPageRequested = true
+        sendTCPMessage(CommunicationMessage.makePolicyListRequest(user.publicId, null, cursor, POLICY_PAGE_SIZE))
     }
 
     fun enablePolicy(policyId: String) {
         val user = userManager.user ?: return
-        policyIdToEnable = policyId
-        sendTCPMessage(CommunicationMessage.makeEnablePolicyRequest(policyId, user.publicId))
+        requestDisposable.add(request(CommunicationMessage.makeEnablePolicyRequest(policyId, user.publicId), null)
+                .subscribe({ response ->
+                    if (JSONUtils.extractJsonElement(response) != null) enablePolicyAfterServerResponse(policyId)
+                }, Timber::e))
     }
 
     fun clearUserList() {
-        sendTCPMessage(CommunicationMessage.makeClearAllUsersRequest(), resourceProvider.getString(R.string.msg_clearing_users))
+        requestDisposable.add(request(CommunicationMessage.makeClearAllUsersRequest(), resourceProvider.getString(R.string.msg_clearing_users))
+                .subscribe(::onClearAllUsersResponse, Timber::e))
+    }
+
+    private fun onClearAllUsersResponse(response: String) {
+        val jsonElement = JSONUtils.extractJsonElement(response) ?: return
+        try {
+            val tcpResponse = gson.fromJson<TCPResponse<Any>>(jsonElement,
+                    object : TypeToken<TCPResponse<Any?>?>() {}.type)
+            if (tcpResponse.isSuccessful) {
+                mShowDialogMessage.onNext(resourceProvider.getString(R.string.msg_users_list_cleared_successfully))
+            } else {
+                var message = tcpResponse.message
+                if (message == null) message = resourceProvider.getString(R.string.something_wrong_happened)
+                mShowDialogMessage.onNext(message!!)
+            }
+        } catch (ignored: JsonSyntaxException) {
+            mShowDialogMessage.onNext(resourceProvider.getString(R.string.msg_unable_to_clear_users))
+        }
     }
 
     /**
@@ -126,6 +275,7 @@ class CommandListViewModel
                         // check if request was done
                         mShowLoading.onNext(Pair(false, null))
                         if (response.isSuccessful) {
+                            clearPolicyCache()
                             mSnackbarMessage.onNext(resourceProvider.getString(R.string.msg_policy_list_cleared_successfully))
                         } else {
                             val message = """
@@ -147,37 +297,96 @@ class CommandListViewModel
     val asrIntent: Intent
         get() = asrClient.generateIntent()
 
-    fun onAsrResult(data: Intent) {
-        val text = data.getStringArrayListExtra(RecognizerIntent.EXTRA_RESULTS)
-        if (text != null && text.size > 0) {
-            val matchingCommand = findCommandByCommandName(text[0])
-            if (matchingCommand != null) {
-                executeCommand(matchingCommand)
-            } else {
-                mSnackbarMessage.onNext(resourceProvider.getString(R.string.unknown_command))
-            }
-        }
-    }
-
     /**
-     * Tries to find command by it's action name.
+     * Starts in-app speech recognition. While the user speaks, connection to the device is
+     * opened as soon as a partial hypothesis matches a command, so the handshake is done by
+     * the time the final result arrives.
      *
-     * @param inputAction Name of action which is being searched in list of available actions.
-     * @return If found, returns command which contains passed action, otherwise return null.
+     * @return false if in-app speech recognition is not available
      */
-    private fun findCommandByCommandName(inputAction: String): CommandAction? {
-        if (_commandList.value!!.isEmpty) return null
-        for (command in _commandList.value!!.get()!!) {
-            if (command.action.equals(inputAction, ignoreCase = true)) {
-                return command
-            }
+    fun startVoiceCommand(): Boolean {
+        stopVoiceCommand()
+        isConnectionPrepared = false
+        val disposable = CompositeDisposable()
+        disposable.add(asrClient.observablePartialResults.subscribe({ onAsrPartialResult(it) }, Timber::e))
+        disposable.add(asrClient.observableResults.subscribe({
+            stopVoiceCommand()
+            onAsrAlternatives(it)
+        }, Timber::e))
+        disposable.add(asrClient.observableErrors.subscribe({
+            stopVoiceCommand()
+            mSnackbarMessage.onNext(resourceProvider.getString(R.string.unknown_command))
+        }, Timber::e))
+        asrDisposable = disposable
+        try {
+            asrClient.startListening()
+        } catch (e: ASRClientException) {
+            Timber.w(e)
+            stopVoiceCommand()
+            return false
         }
-        return null
+        mShowLoading.onNext(Pair(true, resourceProvider.getString(R.string.msg_listening)))
+        return true
+    }
+
+    fun stopVoiceCommand() {
+        val disposable = asrDisposable ?: return
+        asrDisposable = null
+        disposable.dispose()
+        asrClient.stopListening()
+        mShowLoading.onNext(Pair(false, null))
+    }
+
+    private fun onAsrPartialResult(hypotheses: List<String>) {
+        if (isConnectionPrepared) return
+        val disposable = asrDisposable ?: return
+        val user = userManager.user ?: return
+        disposable.add(findVoiceCommand(user.publicId, hypotheses).subscribe({ command ->
+            if (isConnectionPrepared) return@subscribe
+            if (decisionCache.decide(command, RequestContext.now(user.publicId, command.action)) == PolicyProgram.Decision.DENY) return@subscribe
+            Timber.d("Preparing connection for voice command %s", command.action)
+            isConnectionPrepared = true
+            mCommunicator.prepareConnection()
+        }, Timber::e))
+    }
+
+    fun onAsrResult(data: Intent) {
+        val alternatives = data.getStringArrayListExtra(RecognizerIntent.EXTRA_RESULTS)
+        if (alternatives != null) onAsrAlternatives(alternatives)
     }
 
+    private fun onAsrAlternatives(alternatives: List<String>) {
+        if (alternatives.isEmpty()) return
+        val user = userManager.user ?: return
+        cacheDisposable.add(findVoiceCommand(user.publicId, alternatives).subscribe({ executeCommand(it) }, { throwable ->
+            Timber.e(throwable)
+            mSnackbarMessage.onNext(resourceProvider.getString(R.string.unknown_command))
+        }) {
+            mSnackbarMessage.onNext(resourceProvider.getString(R.string.unknown_command))
+        })
+    }
+
+    /**
+     * Finds command matching recognized speech among all cached policies of the user. Policy
+     * which is not shown is read from the cache.
+     */
+    private fun findVoiceCommand(userId: String, alternatives: List<String>): Maybe<CommandAction> =
+            Maybe
+                    .fromCallable<CommandAction> {
+                        if (indexedUserId != userId) indexCachedPolicies(userId)
+                        val policyId = voiceCommandIndex.find(alternatives) ?: return@fromCallable null
+                        shownPolicies.firstOrNull { it.policyId == policyId }
+                                ?: shownDevice?.let { device -> policyCache.getPolicy(device, userId, policyId) }
+                                        ?.let { CommandAction.fromJSON(it, resourceProvider) }
+                    }
+                    .subscribeOn(cacheScheduler)
+                    .observeOn(AndroidSchedulers.mainThread())
+
     override fun handleTCPError(error: TCPError) {
         super.handleTCPError(error)
         _showRefresh.onNext(false)
+        // page may be requested again
+        isPolicyPageRequested = false
     }
 
     override fun handleTCPResponse(sentMessage: String, response: String) {
@@ -187,29 +396,19 @@ class CommandListViewModel
         val jsonElement = JSONUtils.extractJsonElement(response) ?: return
         if (cmd != null) {
             when (cmd) {
-                CommunicationMessage.CLEAR_ALL_USERS -> try {
-                    val tcpResponse = gson.fromJson<TCPResponse<Any>>(jsonElement,
-                            object : TypeToken<TCPResponse<Any?>?>() {}.type)
-                    if (tcpResponse.isSuccessful) {
-                        mShowDialogMessage.onNext(resourceProvider.getString(R.string.msg_users_list_cleared_successfully))
-                    } else {
-                        var message = tcpResponse.message
-                        if (message == null) message = resourceProvider.getString(R.string.something_wrong_happened)
-                        mShowDialogMessage.onNext(message!!)
-                    }
-                } catch (ignored: JsonSyntaxException) {
-                    mShowDialogMessage.onNext(resourceProvider.getString(R.string.msg_unable_to_clear_users))
-                }
-                CommunicationMessage.ENABLE_POLICY -> if (policyIdToEnable != null) {
-                    enablePolicyAfterServerResponse(policyIdToEnable!!)
-                    policyIdToEnable = null
-                }
-                CommunicationMessage.GET_POLICY_LIST -> try {
-                    val jsonArray = jsonElement.asJsonArray
-                    val actionList = CommandAction.parseFromJSONArray(JSONArray(jsonArray.toString()), resourceProvider)
-                    _commandList.onNext(Optional(actionList))
+                CommunicationMessage.GET_POLICY_LIST -> {
+                    isPolicyPageRequested = false
+                    val update = PolicyListUpdate.fromJsonElement(jsonElement) ?: return
+                    val user = userManager.user ?: return
+                    val device = syncDevice ?: return
+                    val isFirstPage = CommunicationMessage.getElementFromMessage(
+                            sentMessage, CommunicationMessage.POLICY_LIST_CURSOR_ELEMENT) == null
+                    nextPolicyCursor = update.nextCursor
+                    applyPolicyListUpdate(device, user.publicId, update, isFirstPage)
+                    // remaining pages go to the cache right away, so that the sync completes
+                    // and stores the version even if the user never scrolls to the end
+                    requestNextPolicyPage()
                     return
-                } catch (ignored: IllegalStateException) {
                 }
                 CommunicationMessage.RESOLVE -> if (invokedCommand != null) {
 //                    val resolvedResponse = resolveResponse(response)
@@ -222,18 +421,199 @@ class CommandListViewModel
         }
     }
 
-    private fun enablePolicyAfterServerResponse(policyId: String) {
-        if (_commandList.value!!.isEmpty) return
-        val commandList = _commandList.value!!.get()
-        val index = commandList.indexOfFirst { it.policyId == policyId }
-        if (index != -1) {
-            commandList[index].isPaid = true
+    /**
+     * Stores update in policy cache and applies it to the shown policies.
+     *
+     * Only the first page may replace the whole list, the following pages are added to it.
+     * Version is stored once the last page is received, an interrupted sync is repeated in
+     * full.
+     */
+    private fun applyPolicyListUpdate(device: String, userId: String, update: PolicyListUpdate, isFirstPage: Boolean) {
+        val full = update.isFull && isFirstPage
+        val version = if (update.nextCursor == null) update.version else null
+        cacheDisposable.add(Single
+                .fromCallable {
+                    policyCache.update(device, userId, full, update.policies, update.removedPolicyIds, version)
+                    // list of another device is shown meanwhile, it is read from the cache when shown again
+                    if (device != shownDevice) return@fromCallable false
+                    // only the page is parsed, policies are not read back from the cache
+                    val policies = CommandAction.parseFromJSONArray(update.policies, resourceProvider)
+                            .filter { it.policyId.isNotEmpty() }
+                    showPolicyUpdate(full, policies, update.removedPolicyIds)
+                    indexPolicyUpdate(userId, full, policies, update.removedPolicyIds)
+                    shownPolicies.isNotEmpty()
+                }
+                .subscribeOn(cacheScheduler)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe({ hasPolicies ->
+                    // the whole list is synced now, the session of the sync itself is already closed
+                    if (update.nextCursor == null && hasPolicies) warmUpConnection()
+                }, Timber::e))
+    }
+
+    /**
+     * Switches shown policies and voice command index to the list of the device. Called on the
+     * cache scheduler.
+     */
+    @WorkerThread
+    private fun showDevice(device: String) {
+        if (device == shownDevice) return
+        val isSwitch = shownDevice != null
+        shownDevice = device
+        shownPolicies.clear()
+        shownRowCount = 0
+        isCacheEndShown = false
+        indexedUserId = null
+        voiceCommandIndex.update(emptyList())
+        if (!isSwitch) return
+        // decisions are made for policies of the previous device
+        decisionCache.clear()
+        publishShownPolicies()
+    }
+
+    /**
+     * Shows cached policies after the shown ones, up to the shown limit. Called on the
+     * cache scheduler.
+     */
+    @WorkerThread
+    private fun showCachedPolicies(userId: String) {
+        val device = shownDevice ?: return
+        val count = shownLimit - shownPolicies.size
+        if (isCacheEndShown || count <= 0) return
+        val page = policyCache.getPolicies(device, userId, shownRowCount, count)
+        shownRowCount += page.rowCount
+        if (page.rowCount < count) isCacheEndShown = true
+        if (page.rowCount == 0) return
+        shownPolicies.addAll(CommandAction.parseFromJSONArray(page.policies, resourceProvider))
+        publishShownPolicies()
+    }
+
+    /**
+     * Applies update, which is already stored in the cache, to the shown policies. Called on
+     * the cache scheduler.
+     *
+     * New policies are added to the end of the cache, so they are shown only if the end of
+     * the cache is shown and the shown limit is not reached.
+     */
+    @WorkerThread
+    private fun showPolicyUpdate(full: Boolean, policies: List<CommandAction>, removedPolicyIds: List<String>) {
+        if (full) {
+            shownPolicies.clear()
+            shownRowCount = 0
+            isCacheEndShown = true
+            // decisions of replaced policies must not outlive them
+            decisionCache.clear()
+        }
+        if (removedPolicyIds.isNotEmpty()) {
+            val removed = removedPolicyIds.toHashSet()
+            val countBefore = shownPolicies.size
+            shownPolicies.removeAll { it.policyId in removed }
+            shownRowCount -= countBefore - shownPolicies.size
+        }
+
+        val indexById = HashMap<String, Int>(shownPolicies.size)
+        shownPolicies.forEachIndexed { index, policy -> indexById[policy.policyId] = index }
+        for (policy in policies) {
+            val index = indexById[policy.policyId]
+            when {
+                index != null -> shownPolicies[index] = policy
+                !isCacheEndShown -> Unit
+                shownPolicies.size < shownLimit -> {
+                    indexById[policy.policyId] = shownPolicies.size
+                    shownPolicies.add(policy)
+                    shownRowCount++
+                }
+                // the rest is read from the cache when the user scrolls
+                else -> isCacheEndShown = false
+            }
         }
-        _commandList.onNext(Optional(commandList))
+        publishShownPolicies()
+    }
+
+    /**
+     * Fills voice command index with names of all cached policies of the user. Called on the
+     * cache scheduler.
+     */
+    @WorkerThread
+    private fun indexCachedPolicies(userId: String) {
+        val device = shownDevice ?: return
+        voiceCommandIndex.update(policyCache.getPolicyNames(device, userId).map { name ->
+            VoiceCommandIndex.Command(name.policyId, name.action, CommandAction.actionNameOf(name.action, resourceProvider))
+        })
+        indexedUserId = userId
+    }
+
+    /**
+     * Applies update, which is already stored in the cache, to the voice command index.
+     * Called on the cache scheduler.
+     */
+    @WorkerThread
+    private fun indexPolicyUpdate(userId: String, full: Boolean, policies: List<CommandAction>, removedPolicyIds: List<String>) {
+        if (indexedUserId != userId) {
+            indexCachedPolicies(userId)
+            return
+        }
+        val commands = policies.map { VoiceCommandIndex.Command(it.policyId, it.action, it.actionName) }
+        if (full) voiceCommandIndex.update(commands) else voiceCommandIndex.put(commands)
+        voiceCommandIndex.remove(removedPolicyIds)
+    }
+
+    private fun publishShownPolicies() {
+        _commandList.onNext(Optional(shownPolicies.toList()))
+    }
+
+    private fun clearPolicyCache() {
+        val user = userManager.user ?: return
+        val device = syncDevice ?: preferences.connectionSettings.deviceAddress
+        cacheDisposable.add(Completable
+                .fromAction {
+                    policyCache.clear(device, user.publicId)
+                    decisionCache.clear()
+                    voiceCommandIndex.update(emptyList())
+                    // shown policies stay until the next sync, which reads the cache again
+                    shownPolicies.clear()
+                    shownRowCount = 0
+                    isCacheEndShown = false
+                }
+                .subscribeOn(cacheScheduler)
+                .subscribe({}, Timber::e))
+    }
+
+    override fun unsubscribeFromEvents() {
+        super.unsubscribeFromEvents()
+        stopVoiceCommand()
+        isWarmUpRequested = false
+    }
+
+    override fun onCleared() {
+        super.onCleared()
+        stopVoiceCommand()
+        asrClient.release()
+        cacheDisposable.dispose()
+        requestDisposable.dispose()
+    }
+
+    private fun enablePolicyAfterServerResponse(policyId: String) {
+        cacheDisposable.add(Completable
+                .fromAction {
+                    val index = shownPolicies.indexOfFirst { it.policyId == policyId }
+                    if (index < 0) return@fromAction
+                    // items are replaced rather than mutated so that list differ sees the change
+                    shownPolicies[index] = shownPolicies[index].paidCopy()
+                    publishShownPolicies()
+                }
+                .subscribeOn(cacheScheduler)
+                .subscribe({}, Timber::e))
     }
 
     companion object {
         const val REFILL_AMOUNT = 1
+
+        /** Number of policies requested from the device at once. */
+        private const val POLICY_PAGE_SIZE = 50
+
+        private const val CACHE_THREAD_NAME = "CommandListCache"
+        private const val CACHE_THREAD_KEEP_ALIVE_SECONDS = 10L
     }
 
 }
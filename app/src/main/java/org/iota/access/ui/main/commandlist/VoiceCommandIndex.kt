@@ -0,0 +1,246 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.ui.main.commandlist
+
+import java.util.Locale
+
+/**
+ * Index of commands by their spoken names, used to resolve ASR results.
+ *
+ * Both action and display name of every command are normalized (case-folded, split into
+ * alphanumeric tokens) and stored in a hash map, so exact matches are found in constant
+ * time. If no alternative matches exactly, commands whose name is spoken inside a longer
+ * sentence or which are within a small edit distance of it are accepted.
+ *
+ * A wrong match executes a different access command, so matching is conservative: a name
+ * shared by several commands never matches, tokens with digits must match exactly, and a
+ * fuzzy match is accepted only if no other command is nearly as close.
+ *
+ * Index holds only names of the commands, so it covers the whole cached policy list and not
+ * only the policies shown. It is updated incrementally: only keys of added, removed and
+ * renamed commands are touched, names of commands which did not change are not normalized
+ * again.
+ */
+class VoiceCommandIndex {
+
+    /**
+     * Names of a command.
+     *
+     * @param action action executed by the command
+     * @param actionName user friendly name of [action]
+     */
+    class Command(val policyId: String, val action: String, val actionName: String)
+
+    private class Entry(val command: Command, val keys: List<String>)
+
+    // by policy ID
+    private val entries = HashMap<String, Entry>()
+    // policy IDs of commands with the name, a name of several commands identifies none of them
+    private val policyIdsByKey = HashMap<String, MutableList<String>>()
+    private val keysByLength = HashMap<Int, MutableSet<String>>()
+
+    /**
+     * Updates index to contain exactly the commands from [commands].
+     */
+    @Synchronized
+    fun update(commands: List<Command>) {
+        val policyIds = HashSet<String>(commands.size * 2)
+        for (command in commands) policyIds.add(command.policyId)
+
+        val iterator = entries.values.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            if (entry.command.policyId in policyIds) continue
+            iterator.remove()
+            removeKeys(entry.command.policyId, entry.keys)
+        }
+        put(commands)
+    }
+
+    /**
+     * Adds commands from [commands] to the index, replacing the ones with the same policy ID.
+     */
+    @Synchronized
+    fun put(commands: List<Command>) {
+        for (command in commands) {
+            val old = entries[command.policyId]
+            if (old != null && old.command.action == command.action && old.command.actionName == command.actionName) continue
+            if (old != null) removeKeys(command.policyId, old.keys)
+            val keys = listOf(command.action, command.actionName).map(::normalize).filter { it.isNotEmpty() }.distinct()
+            entries[command.policyId] = Entry(command, keys)
+            addKeys(command.policyId, keys)
+        }
+    }
+
+    /**
+     * Removes commands of policies with IDs from [policyIds] from the index.
+     */
+    @Synchronized
+    fun remove(policyIds: Collection<String>) {
+        for (policyId in policyIds) {
+            val entry = entries.remove(policyId) ?: continue
+            removeKeys(policyId, entry.keys)
+        }
+    }
+
+    private fun addKeys(policyId: String, keys: List<String>) {
+        for (key in keys) {
+            val ids = policyIdsByKey.getOrPut(key) { mutableListOf() }
+            if (ids.isEmpty()) keysByLength.getOrPut(key.length) { LinkedHashSet() }.add(key)
+            ids.add(policyId)
+        }
+    }
+
+    private fun removeKeys(policyId: String, keys: List<String>) {
+        for (key in keys) {
+            val ids = policyIdsByKey[key] ?: continue
+            ids.remove(policyId)
+            if (ids.isNotEmpty()) continue
+            policyIdsByKey.remove(key)
+            val sameLength = keysByLength[key.length] ?: continue
+            sameLength.remove(key)
+            if (sameLength.isEmpty()) keysByLength.remove(key.length)
+        }
+    }
+
+    /**
+     * @return command with the name, or `null` if it is not a name of exactly one command
+     */
+    private fun commandOf(key: String): Command? {
+        val ids = policyIdsByKey[key] ?: return null
+        return if (ids.size == 1) entries[ids[0]]?.command else null
+    }
+
+    private fun isAmbiguous(key: String): Boolean = (policyIdsByKey[key]?.size ?: 0) > 1
+
+    /**
+     * Finds command matching recognized speech.
+     *
+     * @param alternatives ASR hypotheses, ordered from the most to the least confident one
+     * @return policy ID of the best matching command, or `null` if none of the alternatives
+     * matches a command or the best alternative that matches does not identify a single command
+     */
+    @Synchronized
+    fun find(alternatives: List<String>): String? {
+        if (policyIdsByKey.isEmpty()) return null
+        val normalized = alternatives.map(::normalize).filter { it.isNotEmpty() }
+
+        // exact match of any alternative
+        for (text in normalized) {
+            if (isAmbiguous(text)) return null
+            commandOf(text)?.let { return it.policyId }
+        }
+
+        // command name spoken as a part of a longer sentence, the longest name wins
+        for (text in normalized) {
+            val tokens = text.split(' ')
+            for (length in tokens.size - 1 downTo 1) {
+                val matches = HashSet<String>()
+                var match: Command? = null
+                for (start in 0..tokens.size - length) {
+                    val key = tokens.subList(start, start + length).joinToString(" ")
+                    if (isAmbiguous(key)) return null
+                    val command = commandOf(key) ?: continue
+                    matches.add(command.policyId)
+                    match = command
+                }
+                if (matches.size > 1) return null
+                if (match != null) return match.policyId
+            }
+        }
+
+        // recognition noise
+        for (text in normalized) {
+            val numbers = numericTokens(text)
+            val maxDistance = maxDistance(text.length)
+            // closest distance of every command within the limit
+            val distances = HashMap<String, Int>()
+            var best: Command? = null
+            var bestDistance = Int.MAX_VALUE
+            for (length in text.length - maxDistance..text.length + maxDistance) {
+                val keys = keysByLength[length] ?: continue
+                for (key in keys) {
+                    // "action 1" heard as "action 7" is a different command, not a typo
+                    if (numericTokens(key) != numbers) continue
+                    val distance = editDistance(text, key, maxDistance)
+                    if (distance == Int.MAX_VALUE) continue
+                    val command = commandOf(key)
+                    val id = command?.policyId ?: key
+                    if (distance < (distances[id] ?: Int.MAX_VALUE)) distances[id] = distance
+                    if (distance < bestDistance) {
+                        bestDistance = distance
+                        best = command
+                    }
+                }
+            }
+            if (distances.isEmpty()) continue
+            val bestId = best?.policyId ?: return null
+            val isClear = distances.none { (id, distance) -> id != bestId && distance < bestDistance + MIN_DISTANCE_MARGIN }
+            return if (isClear) bestId else null
+        }
+        return null
+    }
+
+    companion object {
+
+        private val SEPARATOR = Regex("[^\\p{L}\\p{Nd}]+")
+
+        /** Fuzzy match is accepted only if every other command is at least this many edits further. */
+        private const val MIN_DISTANCE_MARGIN = 2
+
+        /**
+         * @return text case-folded and split into alphanumeric tokens separated by a space
+         */
+        @JvmStatic
+        fun normalize(text: String): String =
+                text.toLowerCase(Locale.ROOT).split(SEPARATOR).filter { it.isNotEmpty() }.joinToString(" ")
+
+        /**
+         * @return tokens of normalized text which contain a digit
+         */
+        private fun numericTokens(text: String): List<String> =
+                text.split(' ').filter { token -> token.any { it.isDigit() } }
+
+        /** Allows one typo in every four characters, but at least one. */
+        private fun maxDistance(length: Int): Int = maxOf(1, length / 4)
+
+        /**
+         * @return Levenshtein distance of [a] and [b], or [Int.MAX_VALUE] if it exceeds [limit]
+         */
+        private fun editDistance(a: String, b: String, limit: Int): Int {
+            if (limit < 0 || Math.abs(a.length - b.length) > limit) return Int.MAX_VALUE
+            var previous = IntArray(b.length + 1) { it }
+            var current = IntArray(b.length + 1)
+            for (i in 1..a.length) {
+                current[0] = i
+                var rowMin = current[0]
+                for (j in 1..b.length) {
+                    val cost = if (a[i - 1] == b[j - 1]) 0 else 1
+                    current[j] = minOf(previous[j] + 1, current[j - 1] + 1, previous[j - 1] + cost)
+                    rowMin = minOf(rowMin, current[j])
+                }
+                if (rowMin > limit) return Int.MAX_VALUE
+                val tmp = previous
+                previous = current
+                current = tmp
+            }
+            return if (previous[b.length] <= limit) previous[b.length] else Int.MAX_VALUE
+        }
+    }
+}
@@ -22,7 +22,7 @@ import android.os.Parcelable
 import android.util.Pair
 import androidx.databinding.Bindable
 import io.reactivex.Observable
-import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.disposables.Disposable
 import io.reactivex.schedulers.Schedulers
 import io.reactivex.subjects.BehaviorSubject
 import org.iota.access.BR
@@ -30,9 +30,8 @@ import org.iota.access.CommunicationViewModel
 import org.iota.access.R
 import org.iota.access.api.APILibDacAuthNative
 import org.iota.access.api.Communicator
-import org.iota.access.api.PSService
+import org.iota.access.api.PolicyStoreClient
 import org.iota.access.api.model.policy_server.PSDelegatePolicyRequest
-import org.iota.access.api.model.policy_server.PSEmptyResponse
 import org.iota.access.data.DataProvider
 import org.iota.access.extensions.toBase64
 import org.iota.access.models.*
@@ -52,7 +51,7 @@ class DelegationViewModel @Inject constructor(
         dataProvider: DataProvider,
         private val authNative: APILibDacAuthNative,
         private val userManager: UserManager,
-        private val psService: PSService
+        private val policyStoreClient: PolicyStoreClient
 ) : CommunicationViewModel(communicator, resourceProvider) {
 
     val allActions: List<DelegationAction> = dataProvider.availableActions
@@ -70,8 +69,7 @@ class DelegationViewModel @Inject constructor(
     private val _delegationActionList = BehaviorSubject.createDefault<List<DelegationAction>>(ArrayList())
     private val maxNumOfExecutions = BehaviorSubject.createDefault(Optional<Int>(null))
 
-    private var requestsDisposable: CompositeDisposable? = null
-    private var requests: MutableList<Observable<PSEmptyResponse>>? = null
+    private var requestDisposable: Disposable? = null
 
     private val obligationGrant: DelegationObligation?
         get() = if (selectedObligationGrantIndex == 0) null else allObligations[selectedObligationGrantIndex - 1]
@@ -140,55 +138,51 @@ class DelegationViewModel @Inject constructor(
 
         mShowLoading.onNext(Pair(true, resourceProvider.getString(R.string.msg_delegating)))
 
-        requests = ArrayList()
-
         val ownerId = user.publicId
-        val privateKey = user.privateKey
-
-        for (action in delegationActionList) {
-            val policy = createPolicy(false, action, gocRule, docRule)
-
-            val request = createDelegatePolicyRequest(policy, ownerId, privateKey)
-
-            requests?.add(psService
-                    .delegatePolicy(request)
-                    .subscribeOn(Schedulers.io()))
-        }
-        if (requestsDisposable != null) {
-            requestsDisposable!!.dispose()
-        } else {
-            requestsDisposable = CompositeDisposable()
-        }
 
-        val combined = Observable.zip(requests) { responses: Array<Any?> ->
-            var isSuccess = true
-            for (obj in responses) {
-                if (obj !is PSEmptyResponse) return@zip false
-                isSuccess = !obj.isError && isSuccess
-                Timber.d(obj.toString())
+        val template = createPolicyTemplate(false, gocRule, docRule)
+        val requests = userManager.withPrivateKey { privateKey ->
+            delegationActionList.map { action ->
+                val policy = template.createPolicy(action)
+                createDelegatePolicyRequest(policy, ownerId, privateKey)
             }
-            isSuccess
+        }
+        if (requests == null) {
+            mShowLoading.onNext(Pair(false, null))
+            mShowDialogMessage.onNext(resourceProvider.getString(R.string.error_msg_user_must_be_logged_in))
+            return
         }
 
-        requestsDisposable?.add(combined
+        // one request per chunk of actions, servers without batch command get one per policy
+        val mode = if (requests.size > 1) PolicyStoreClient.Mode.BATCH else PolicyStoreClient.Mode.SINGLE
+        requestDisposable?.dispose()
+        requestDisposable = policyStoreClient
+                .delegatePolicies(requests, PolicyStoreClient.Config(mode = mode))
                 .subscribeOn(Schedulers.io())
-                .subscribe( // on next
-                        { isSuccessful: Boolean ->
-                            if (requestsDisposable != null) requestsDisposable!!.dispose()
-                            requestsDisposable = null
+                .subscribe(
+                        { result: PolicyStoreClient.DelegationResult ->
+                            requestDisposable = null
                             mShowLoading.onNext(Pair(false, null))
-                            if (isSuccessful) {
-                                mShowDialogMessage.onNext(resourceProvider.getString(R.string.msg_delegating_success))
-                            } else {
-                                mShowDialogMessage.onNext(resourceProvider.getString(R.string.error_msg_delegation_failed))
+                            for (failure in result.failed) {
+                                Timber.e("Delegation of policy %s failed: %s", failure.policyId, failure.message)
+                            }
+                            when {
+                                result.isSuccessful ->
+                                    mShowDialogMessage.onNext(resourceProvider.getString(R.string.msg_delegating_success))
+                                result.isPartiallySuccessful ->
+                                    mShowDialogMessage.onNext(resourceProvider.getString(
+                                            R.string.msg_delegating_partial_success,
+                                            result.succeeded.size,
+                                            result.total))
+                                else ->
+                                    mShowDialogMessage.onNext(resourceProvider.getString(R.string.error_msg_delegation_failed))
                             }
-                        }  // on error
+                        }
                 ) { throwable: Throwable ->
-                    if (requestsDisposable != null) requestsDisposable!!.dispose()
-                    requestsDisposable = null
+                    requestDisposable = null
                     mShowLoading.onNext(Pair(false, null))
                     mShowDialogMessage.onNext(throwable.message ?: "Unknown error")
-                })
+                }
     }
 
     /**
@@ -205,54 +199,82 @@ class DelegationViewModel @Inject constructor(
             action: DelegationAction? = null,
             gocRule: Rule? = null,
             docRule: Rule? = null
-    ): Policy {
-        val gocAttrList: MutableList<PolicyAttributeList> = mutableListOf()
+    ): Policy = createPolicyTemplate(obfuscate, gocRule, docRule).createPolicy(action)
 
-        // Add GoC rule to GoC
-        gocRule?.let {
-            gocAttrList.add(it.build())
-        }
-
-        // Add users to GoC
-        createUsersPolicyAttribute(obfuscate)?.let { usersAttr ->
-            gocAttrList.add(usersAttr)
-        }
-
-        // Add action to GoC
-        action?.build()?.let { actionAttr ->
-            gocAttrList.add(actionAttr)
-        }
-
-        // Add number of executions to GoC
+    /**
+     * Builds parts of policy which are shared by every delegated action.
+     */
+    private fun createPolicyTemplate(
+            obfuscate: Boolean,
+            gocRule: Rule?,
+            docRule: Rule?
+    ): PolicyTemplate {
         val optNumOfExecutions = maxNumOfExecutions.value
-        if (optNumOfExecutions != null && !optNumOfExecutions.isEmpty) {
-            val numOfExecutionsAttr = ExecuteNumberRule(optNumOfExecutions.get()).build()
-            gocAttrList.add(numOfExecutionsAttr)
-        }
-
-        val policyGoc = PolicyAttributeLogical(gocAttrList, PolicyAttributeLogical.LogicalOperator.AND)
-
-        val policyDoc = docRule?.build()
+        val numOfExecutionsAttr =
+                if (optNumOfExecutions != null && !optNumOfExecutions.isEmpty) ExecuteNumberRule(optNumOfExecutions.get()).build()
+                else null
 
         val obligationDeny = this.obligationDeny
         val polOblDenyList =
-                if (obligationDeny != null) PolicyObligationList(listOf(obligationDeny.build()))
+                if (obligationDeny != null) PolicyObligationList.of(listOf(obligationDeny.build()))
                 else PolicyObligationEmpty
 
         val obligationGrant = this.obligationGrant
         val polOblGrantList =
-                if (obligationGrant != null) PolicyObligationList(listOf(obligationGrant.build()))
+                if (obligationGrant != null) PolicyObligationList.of(listOf(obligationGrant.build()))
                 else PolicyObligationEmpty
 
-        val policyObject = PolicyObject(
+        return PolicyTemplate(
+                obfuscate = obfuscate,
+                gocRule = gocRule?.build(),
+                users = createUsersPolicyAttribute(obfuscate),
+                numOfExecutions = numOfExecutionsAttr,
+                policyDoc = docRule?.build() ?: PolicyAttributeEmpty,
                 obligationDeny = polOblDenyList,
                 obligationGrant = polOblGrantList,
-                policyDoc = policyDoc ?: PolicyAttributeEmpty,
-                policyGoc = policyGoc
-        )
+                cost = COST_VALUES[selectedCostIndex].toString())
+    }
 
-        val cost = COST_VALUES[selectedCostIndex]
-        return Policy("sha-256", policyObject, cost.toString(), if (obfuscate) "**********" else null)
+    /**
+     * Policy parts shared by all actions of one delegation. Attribute nodes are hash-consed,
+     * so policies created from one template share everything except the action leaf.
+     */
+    private class PolicyTemplate(
+            val obfuscate: Boolean,
+            val gocRule: PolicyAttributeList?,
+            val users: PolicyAttributeList?,
+            val numOfExecutions: PolicyAttributeList?,
+            val policyDoc: PolicyAttribute,
+            val obligationDeny: PolicyObligation,
+            val obligationGrant: PolicyObligation,
+            val cost: String
+    ) {
+        fun createPolicy(action: DelegationAction?): Policy {
+            val gocAttrList: MutableList<PolicyAttributeList> = mutableListOf()
+
+            // Add GoC rule to GoC
+            gocRule?.let { gocAttrList.add(it) }
+
+            // Add users to GoC
+            users?.let { gocAttrList.add(it) }
+
+            // Add action to GoC
+            action?.build()?.let { gocAttrList.add(it) }
+
+            // Add number of executions to GoC
+            numOfExecutions?.let { gocAttrList.add(it) }
+
+            val policyGoc = PolicyAttributeLogical.of(gocAttrList, PolicyAttributeLogical.LogicalOperator.AND)
+
+            val policyObject = PolicyObject(
+                    obligationDeny = obligationDeny,
+                    obligationGrant = obligationGrant,
+                    policyDoc = policyDoc,
+                    policyGoc = policyGoc
+            )
+
+            return Policy("sha-256", policyObject, cost, if (obfuscate) "**********" else null)
+        }
     }
 
     /**
@@ -294,7 +316,7 @@ class DelegationViewModel @Inject constructor(
             for (user in selectedUsers) {
                 list.add(user.policyAttrList(obfuscate))
             }
-            PolicyAttributeLogical(list, PolicyAttributeLogical.LogicalOperator.OR)
+            PolicyAttributeLogical.of(list, PolicyAttributeLogical.LogicalOperator.OR)
         }
     }
 
@@ -18,30 +18,93 @@
  */
 package org.iota.access.user
 
+import android.util.Base64
 import org.iota.access.di.AppSharedPreferences
 import org.iota.access.models.User
+import java.nio.ByteBuffer
+import java.util.*
 import javax.inject.Inject
 import javax.inject.Singleton
 
+/**
+ * Holds the logged in user for the whole session.
+ *
+ * Stored user is deserialized on first access and its private key is decoded on first use,
+ * both only once per session. Decoded key is kept in a direct buffer outside of the Java
+ * heap and zeroed when the session ends.
+ */
 @Singleton
 class UserManager @Inject constructor(var preferences: AppSharedPreferences) {
-    var user: User?
+
+    private var isLoaded = false
+    private var privateKey: ByteBuffer? = null
+
+    var user: User? = null
+        @Synchronized get() {
+            if (!isLoaded) {
+                field = preferences.user
+                isLoaded = true
+            }
+            return field
+        }
         private set
 
+    @Synchronized
     fun startSession(user: User) {
+        wipePrivateKey()
         this.user = user
+        isLoaded = true
         preferences.putUser(user)
     }
 
+    @Synchronized
     fun endSession() {
+        wipePrivateKey()
         user = null
+        isLoaded = true
         preferences.putUser(null)
     }
 
     val isUserLoggedIn: Boolean
         get() = user != null
 
-    init {
-        user = preferences.user
+    /**
+     * Runs [block] with the private key of the logged in user. Array passed to [block] is
+     * zeroed when [block] returns, so it must not be kept.
+     *
+     * @return result of [block], or `null` if no user is logged in
+     */
+    fun <T> withPrivateKey(block: (ByteArray) -> T): T? {
+        val key = copyPrivateKey() ?: return null
+        try {
+            return block(key)
+        } finally {
+            Arrays.fill(key, 0.toByte())
+        }
+    }
+
+    @Synchronized
+    private fun copyPrivateKey(): ByteArray? {
+        val buffer = privateKey ?: decodePrivateKey() ?: return null
+        val key = ByteArray(buffer.capacity())
+        buffer.duplicate().apply { clear() }.get(key)
+        return key
+    }
+
+    private fun decodePrivateKey(): ByteBuffer? {
+        val user = user ?: return null
+        val decoded = Base64.decode(user.signingKey, Base64.NO_WRAP)
+        val buffer = ByteBuffer.allocateDirect(decoded.size)
+        buffer.put(decoded)
+        Arrays.fill(decoded, 0.toByte())
+        privateKey = buffer
+        return buffer
+    }
+
+    private fun wipePrivateKey() {
+        val buffer = privateKey ?: return
+        buffer.clear()
+        while (buffer.hasRemaining()) buffer.put(0.toByte())
+        privateKey = null
     }
 }
@@ -37,6 +37,10 @@ public class ResourceProvider {
         return mContext.getString(resId, value);
     }
 
+    public String getString(int resId, Object... formatArgs) {
+        return mContext.getString(resId, formatArgs);
+    }
+
     public Resources getResources() {
         return mContext.getResources();
     }
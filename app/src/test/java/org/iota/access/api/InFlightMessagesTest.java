@@ -0,0 +1,131 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.iota.access.api;
+
+import org.iota.access.api.tcp.TCPClient;
+import org.iota.access.api.tcp.TCPRequestException;
+import org.junit.Test;
+
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InFlightMessagesTest {
+
+    private final InFlightMessages mInFlight = new InFlightMessages();
+
+    private TestObserver<String> request(String message) {
+        return Single.<String>create(emitter -> {
+            InFlightMessages.Entry entry = new InFlightMessages.Entry(message, emitter);
+            emitter.setCancellable(entry::cancel);
+            mInFlight.add(entry);
+        }).test();
+    }
+
+    @Test
+    public void responseGoesToRequestWithSameMessage() {
+        TestObserver<String> first = request("a");
+        TestObserver<String> second = request("b");
+
+        assertTrue(mInFlight.deliverResponse("b", "response b"));
+        assertTrue(mInFlight.deliverResponse("a", "response a"));
+
+        first.assertValue("response a");
+        second.assertValue("response b");
+        assertEquals(0, mInFlight.size());
+    }
+
+    @Test
+    public void responsesToSameMessageGoInOrder() {
+        TestObserver<String> first = request("a");
+        TestObserver<String> second = request("a");
+
+        mInFlight.deliverResponse("a", "1");
+        mInFlight.deliverResponse("a", "2");
+
+        first.assertValue("1");
+        second.assertValue("2");
+    }
+
+    @Test
+    public void responseOfPlainMessageIsPublished() {
+        mInFlight.add(new InFlightMessages.Entry("a", null));
+        TestObserver<String> request = request("b");
+
+        assertFalse(mInFlight.deliverResponse("a", "response"));
+
+        request.assertNoValues();
+        assertEquals(1, mInFlight.size());
+    }
+
+    @Test
+    public void unknownResponseIsPublished() {
+        assertFalse(mInFlight.deliverResponse("a", "response"));
+        assertFalse(mInFlight.deliverError("a", TCPClient.TCPError.UNKNOWN));
+    }
+
+    @Test
+    public void errorFailsOnlyItsRequest() {
+        TestObserver<String> first = request("a");
+        TestObserver<String> second = request("b");
+
+        assertTrue(mInFlight.deliverError("b", TCPClient.TCPError.TIMEOUT));
+
+        first.assertNoErrors();
+        first.assertNotComplete();
+        second.assertError(error -> error instanceof TCPRequestException
+                && ((TCPRequestException) error).getError() == TCPClient.TCPError.TIMEOUT);
+        assertEquals(1, mInFlight.size());
+    }
+
+    @Test
+    public void everyQueuedMessageFailsWhenConnectionCloses() {
+        TestObserver<String> first = request("a");
+        mInFlight.add(new InFlightMessages.Entry("b", null));
+        TestObserver<String> third = request("c");
+
+        // client fails each message left in its queue
+        assertTrue(mInFlight.deliverError("a", TCPClient.TCPError.CLOSED));
+        assertFalse(mInFlight.deliverError("b", TCPClient.TCPError.CLOSED));
+        assertTrue(mInFlight.deliverError("c", TCPClient.TCPError.CLOSED));
+
+        first.assertError(TCPRequestException.class);
+        third.assertError(TCPRequestException.class);
+        assertEquals(0, mInFlight.size());
+    }
+
+    @Test
+    public void outcomeOfCancelledRequestIsDropped() {
+        TestObserver<String> cancelled = request("a");
+        TestObserver<String> next = request("a");
+        cancelled.dispose();
+
+        // error of the cancelled request must not reach the next one
+        assertTrue(mInFlight.deliverError("a", TCPClient.TCPError.UNKNOWN));
+        assertTrue(mInFlight.deliverResponse("a", "response"));
+
+        cancelled.assertNoErrors();
+        cancelled.assertNoValues();
+        next.assertValue("response");
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.models.evaluation
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Test
+
+class GeoHashTest {
+
+    @Test
+    fun encodesKnownLocations() {
+        assertEquals("ezs42", GeoHash.encode(42.6, -5.6, 5))
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11))
+    }
+
+    @Test
+    fun encodesCornersOfTheWorld() {
+        assertEquals("s0000", GeoHash.encode(0.0, 0.0, 5))
+        assertEquals("00000", GeoHash.encode(-90.0, -180.0, 5))
+        assertEquals("zzzzz", GeoHash.encode(90.0, 180.0, 5))
+    }
+
+    @Test
+    fun longerHashRefinesShorterOne() {
+        val hash = GeoHash.encode(46.0569, 14.5058, 9)
+        for (precision in 0 until 9) {
+            assertEquals(hash.substring(0, precision), GeoHash.encode(46.0569, 14.5058, precision))
+        }
+    }
+
+    @Test
+    fun nearbyLocationsShareCellAndDistantOnesDoNot() {
+        // middle of a precision 7 cell, about 150 x 150 meters
+        val cell = GeoHash.encode(46.05, 14.5, 7)
+        assertEquals(cell, GeoHash.encode(46.0501, 14.5001, 7))
+        assertNotEquals(cell, GeoHash.encode(46.06, 14.5, 7))
+    }
+}
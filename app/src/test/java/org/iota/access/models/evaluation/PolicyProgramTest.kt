@@ -0,0 +1,268 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.models.evaluation
+
+import org.iota.access.delegation.RuleSatisfyType
+import org.iota.access.models.PolicyAttribute
+import org.iota.access.models.PolicyAttributeComparable
+import org.iota.access.models.PolicyAttributeComparable.Operation
+import org.iota.access.models.PolicyAttributeEmpty
+import org.iota.access.models.PolicyAttributeList
+import org.iota.access.models.PolicyAttributeListEmpty
+import org.iota.access.models.PolicyAttributeLogical
+import org.iota.access.models.PolicyAttributeLogical.LogicalOperator
+import org.iota.access.models.PolicyAttributeSingle
+import org.iota.access.models.PolicyAttributeTypes
+import org.iota.access.models.PolicyObject
+import org.iota.access.models.PolicyObligationEmpty
+import org.iota.access.models.rules.ExecuteNumberRule
+import org.iota.access.models.rules.MultipleRule
+import org.iota.access.models.rules.Rule
+import org.iota.access.models.rules.TimeRule
+import org.iota.access.models.evaluation.PolicyProgram.Decision
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Date
+import java.util.Random
+
+class PolicyProgramTest {
+
+    @Test
+    fun timeRangeGrantsInsideAndDeniesOutside() {
+        val program = PolicyProgram.compile(policy(goc = timeRule(1000, 2000).build()))
+
+        assertEquals(Decision.DENY, program.evaluate(context(999)))
+        assertEquals(Decision.GRANT, program.evaluate(context(1000)))
+        assertEquals(Decision.GRANT, program.evaluate(context(1500)))
+        assertEquals(Decision.GRANT, program.evaluate(context(2000)))
+        assertEquals(Decision.DENY, program.evaluate(context(2001)))
+    }
+
+    @Test
+    fun andWithUnknownIsFalseOnlyIfAnotherOperandIsFalse() {
+        val goc = MultipleRule(Rule.generateId(), listOf(timeRule(1000, 2000), ExecuteNumberRule(3)), RuleSatisfyType.EVERY).build()
+        val program = PolicyProgram.compile(policy(goc = goc))
+
+        assertEquals(Decision.UNKNOWN, program.evaluate(context(1500)))
+        assertEquals(Decision.DENY, program.evaluate(context(2500)))
+        assertEquals(Decision.GRANT, program.evaluate(context(1500, executionNum = 2)))
+        assertEquals(Decision.DENY, program.evaluate(context(1500, executionNum = 3)))
+    }
+
+    @Test
+    fun orWithUnknownIsTrueOnlyIfAnotherOperandIsTrue() {
+        val goc = MultipleRule(Rule.generateId(), listOf(timeRule(1000, 2000), ExecuteNumberRule(3)), RuleSatisfyType.ONE_OR_MORE).build()
+        val program = PolicyProgram.compile(policy(goc = goc))
+
+        assertEquals(Decision.GRANT, program.evaluate(context(1500)))
+        assertEquals(Decision.UNKNOWN, program.evaluate(context(2500)))
+        assertEquals(Decision.GRANT, program.evaluate(context(2500, executionNum = 2)))
+        assertEquals(Decision.DENY, program.evaluate(context(2500, executionNum = 5)))
+    }
+
+    @Test
+    fun docDeniesInsideOfGoc() {
+        val program = PolicyProgram.compile(policy(goc = timeRule(1000, 3000).build(), doc = timeRule(1500, 2000).build()))
+
+        assertEquals(Decision.GRANT, program.evaluate(context(1200)))
+        assertEquals(Decision.DENY, program.evaluate(context(1700)))
+        assertEquals(Decision.GRANT, program.evaluate(context(2500)))
+        assertEquals(Decision.DENY, program.evaluate(context(3500)))
+    }
+
+    @Test
+    fun unknownDocPreventsGrantButNotDeny() {
+        val program = PolicyProgram.compile(policy(goc = timeRule(1000, 2000).build(), doc = ExecuteNumberRule(3).build()))
+
+        assertEquals(Decision.UNKNOWN, program.evaluate(context(1500)))
+        assertEquals(Decision.DENY, program.evaluate(context(2500)))
+        // DoC is true below the limit
+        assertEquals(Decision.DENY, program.evaluate(context(1500, executionNum = 1)))
+        assertEquals(Decision.GRANT, program.evaluate(context(1500, executionNum = 3)))
+    }
+
+    @Test
+    fun missingGocIsUnknownAndMissingDocDeniesNothing() {
+        assertEquals(Decision.UNKNOWN, PolicyProgram.compile(policy(goc = PolicyAttributeEmpty)).evaluate(context(0)))
+        assertEquals(Decision.DENY, PolicyProgram.compile(policy(goc = PolicyAttributeEmpty, doc = timeRule(0, 10).build())).evaluate(context(5)))
+    }
+
+    @Test
+    fun subjectIsComparedWithoutHexPrefixAndCase() {
+        val goc = PolicyAttributeComparable.of(
+                PolicyAttributeSingle.of(PolicyAttributeTypes.PUBLIC_ID, "0xABCD"),
+                PolicyAttributeSingle.REQUEST_SUBJECT,
+                Operation.EQUAL)
+        val program = PolicyProgram.compile(policy(goc = goc))
+
+        assertEquals(Decision.GRANT, program.evaluate(context(0, subject = "abcd")))
+        assertEquals(Decision.DENY, program.evaluate(context(0, subject = "abce")))
+        assertEquals(Decision.UNKNOWN, program.evaluate(context(0)))
+    }
+
+    @Test
+    fun geolocationGrantsInsideOfRadius() {
+        val goc = PolicyAttributeComparable.of(
+                PolicyAttributeSingle.of(PolicyAttributeTypes.GEOLOCATION, "45.0,15.0,1000"),
+                PolicyAttributeSingle.REQUEST_GEOLOCATION,
+                Operation.GREATER_OR_EQUAL)
+        val program = PolicyProgram.compile(policy(goc = goc))
+
+        assertEquals(Decision.GRANT, program.evaluate(context(0).apply { latitude = 45.005; longitude = 15.0 }))
+        assertEquals(Decision.DENY, program.evaluate(context(0).apply { latitude = 45.1; longitude = 15.0 }))
+        assertEquals(Decision.UNKNOWN, program.evaluate(context(0)))
+    }
+
+    @Test
+    fun compiledProgramMatchesRuleEvaluation() {
+        val random = Random(0)
+        repeat(500) {
+            val policy = policy(goc = randomTree(random, 3), doc = if (random.nextBoolean()) randomTree(random, 2) else PolicyObligationEmpty)
+            val program = PolicyProgram.compile(policy)
+            for (time in 0L..MAX_TIME + 1) {
+                for (executionNum in listOf(RequestContext.UNKNOWN_EXECUTION_NUM, 0L, 2L, 5L)) {
+                    val context = context(time, executionNum)
+                    assertEquals("$policy at $time, $executionNum", reference(policy, context), program.evaluate(context))
+                }
+            }
+        }
+    }
+
+    @Test
+    fun decisionIsSameInsideOfTimeBucket() {
+        val random = Random(1)
+        repeat(200) {
+            val program = PolicyProgram.compile(policy(goc = randomTree(random, 3), doc = randomTree(random, 2)))
+            val decisions = HashMap<Long, Decision>()
+            for (time in 0L..MAX_TIME + 1) {
+                val decision = program.evaluate(context(time, 2))
+                val bucketDecision = decisions.getOrPut(program.timeBucket(time)) { decision }
+                assertEquals("time $time", bucketDecision, decision)
+            }
+        }
+    }
+
+    private fun randomTree(random: Random, depth: Int): PolicyAttributeList {
+        if (depth > 0 && random.nextInt(3) == 0) {
+            val children = List(2 + random.nextInt(2)) { randomTree(random, depth - 1) }
+            val operator = if (random.nextBoolean()) LogicalOperator.AND else LogicalOperator.OR
+            return PolicyAttributeLogical.of(children, operator)
+        }
+        return when (random.nextInt(6)) {
+            0 -> {
+                val from = random.nextInt(MAX_TIME.toInt()).toLong()
+                timeRule(from, from + random.nextInt(MAX_TIME.toInt())).build()
+            }
+            1 -> ExecuteNumberRule(random.nextInt(6)).build()
+            // request attribute first
+            2 -> PolicyAttributeComparable.of(
+                    PolicyAttributeSingle.REQUEST_TIME,
+                    PolicyAttributeSingle.of(PolicyAttributeTypes.TIME, random.nextInt(MAX_TIME.toInt()).toString()),
+                    Operation.values()[random.nextInt(Operation.values().size)])
+            3 -> PolicyAttributeComparable.of(
+                    PolicyAttributeSingle.of(PolicyAttributeTypes.TIME, random.nextInt(MAX_TIME.toInt()).toString()),
+                    PolicyAttributeSingle.REQUEST_TIME,
+                    Operation.values()[random.nextInt(Operation.values().size)])
+            4 -> PolicyAttributeComparable.of(
+                    PolicyAttributeSingle.of(PolicyAttributeTypes.TIME, random.nextInt(3).toString()),
+                    PolicyAttributeSingle.of(PolicyAttributeTypes.TIME, random.nextInt(3).toString()),
+                    Operation.values()[random.nextInt(Operation.values().size)])
+            // attribute known only to the device
+            else -> PolicyAttributeComparable.of(
+                    PolicyAttributeSingle.of("request.balance.type", "request.balance.value"),
+                    PolicyAttributeSingle.of(PolicyAttributeTypes.TIME, "1"),
+                    Operation.GREATER_THAN)
+        }
+    }
+
+    /**
+     * Evaluates policy tree directly, as the device evaluates rules, with attributes unknown
+     * on the client evaluating to unknown.
+     */
+    private fun reference(policy: PolicyObject, context: RequestContext): Decision {
+        val doc = reference(policy.policyDoc, context, PolicyProgram.FALSE)
+        val goc = reference(policy.policyGoc, context, PolicyProgram.UNKNOWN)
+        return when {
+            doc == PolicyProgram.TRUE -> Decision.DENY
+            goc == PolicyProgram.FALSE -> Decision.DENY
+            goc == PolicyProgram.TRUE && doc == PolicyProgram.FALSE -> Decision.GRANT
+            else -> Decision.UNKNOWN
+        }
+    }
+
+    private fun reference(attribute: PolicyAttribute, context: RequestContext, emptyValue: Int): Int = when (attribute) {
+        PolicyAttributeEmpty, PolicyAttributeListEmpty, PolicyObligationEmpty -> emptyValue
+        is PolicyAttributeLogical -> {
+            val values = attribute.attributeList.map { reference(it, context, PolicyProgram.UNKNOWN) }
+            when (attribute.operation) {
+                LogicalOperator.AND -> when {
+                    PolicyProgram.FALSE in values -> PolicyProgram.FALSE
+                    PolicyProgram.UNKNOWN in values -> PolicyProgram.UNKNOWN
+                    else -> PolicyProgram.TRUE
+                }
+                LogicalOperator.OR -> when {
+                    PolicyProgram.TRUE in values -> PolicyProgram.TRUE
+                    PolicyProgram.UNKNOWN in values -> PolicyProgram.UNKNOWN
+                    else -> PolicyProgram.FALSE
+                }
+            }
+        }
+        is PolicyAttributeComparable -> {
+            val first = valueOf(attribute.first as PolicyAttributeSingle, context)
+            val second = valueOf(attribute.second as PolicyAttributeSingle, context)
+            if (first == null || second == null) {
+                PolicyProgram.UNKNOWN
+            } else {
+                val holds = when (attribute.operation) {
+                    Operation.EQUAL -> first == second
+                    Operation.LESS_OR_EQUAL -> first <= second
+                    Operation.GREATER_OR_EQUAL -> first >= second
+                    Operation.LESS_THAN -> first < second
+                    Operation.GREATER_THAN -> first > second
+                }
+                if (holds) PolicyProgram.TRUE else PolicyProgram.FALSE
+            }
+        }
+        else -> PolicyProgram.UNKNOWN
+    }
+
+    private fun valueOf(attribute: PolicyAttributeSingle, context: RequestContext): Long? = when (attribute.type) {
+        PolicyAttributeTypes.REQUEST_TIME_TYPE -> context.time
+        PolicyAttributeTypes.REQUEST_EXECUTION_NUM_TYPE ->
+            if (context.executionNum == RequestContext.UNKNOWN_EXECUTION_NUM) null else context.executionNum
+        else -> if (attribute.type.startsWith("request.")) null else attribute.value.toLong()
+    }
+
+    private fun timeRule(fromSeconds: Long, untilSeconds: Long) =
+            TimeRule(Rule.generateId(), Date(fromSeconds * 1000), Date(untilSeconds * 1000))
+
+    private fun policy(goc: PolicyAttribute, doc: PolicyAttribute = PolicyObligationEmpty) =
+            PolicyObject(PolicyObligationEmpty, PolicyObligationEmpty, doc, goc)
+
+    private fun context(time: Long, executionNum: Long = RequestContext.UNKNOWN_EXECUTION_NUM, subject: String? = null) =
+            RequestContext().apply {
+                this.time = time
+                this.executionNum = executionNum
+                this.subject = subject
+            }
+
+    companion object {
+        private const val MAX_TIME = 20L
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *  This file is part of the IOTA Access distribution
+ *  (https://github.com/iotaledger/access)
+ *
+ *  Copyright (c) 2020 IOTA Stiftung.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.iota.access.ui.main.commandlist
+
+import org.iota.access.ui.main.commandlist.VoiceCommandIndex.Command
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class VoiceCommandIndexTest {
+
+    private val index = VoiceCommandIndex().apply {
+        update(listOf(
+                Command("1", "open_door", "Open door"),
+                Command("2", "close_door", "Close door"),
+                Command("3", "action_1", "Action 1"),
+                Command("4", "action_2", "Action 2")))
+    }
+
+    @Test
+    fun findsExactNameIgnoringCaseAndPunctuation() {
+        assertEquals("1", index.find(listOf("open door")))
+        assertEquals("2", index.find(listOf("Close door!")))
+        assertEquals("3", index.find(listOf("action_1")))
+    }
+
+    @Test
+    fun findsNameSpokenInsideOfSentence() {
+        assertEquals("2", index.find(listOf("please close door now")))
+    }
+
+    @Test
+    fun findsNameWithRecognitionNoise() {
+        assertEquals("1", index.find(listOf("open dor")))
+    }
+
+    @Test
+    fun doesNotConfuseNumbers() {
+        assertNull(index.find(listOf("action 7")))
+        assertEquals("4", index.find(listOf("action 2")))
+    }
+
+    @Test
+    fun prefersMoreConfidentAlternative() {
+        assertEquals("2", index.find(listOf("close door", "open door")))
+    }
+
+    @Test
+    fun nameOfSeveralCommandsMatchesNone() {
+        index.put(listOf(Command("5", "open_gate", "Open door")))
+
+        assertNull(index.find(listOf("open door")))
+    }
+
+    @Test
+    fun unclearFuzzyMatchMatchesNone() {
+        val index = VoiceCommandIndex()
+        index.update(listOf(Command("1", "lamp_on", "Kitchen lamp on"), Command("2", "lamb_on", "Kitchen lamb on")))
+
+        assertNull(index.find(listOf("kitchen lamp in")))
+        assertEquals("1", index.find(listOf("kitchen lamp on")))
+    }
+
+    @Test
+    fun putReplacesRenamedCommand() {
+        index.put(listOf(Command("1", "unlock_door", "Unlock door")))
+
+        assertNull(index.find(listOf("open door")))
+        assertEquals("1", index.find(listOf("unlock door")))
+    }
+
+    @Test
+    fun removedCommandIsNotFound() {
+        index.remove(listOf("2"))
+
+        assertNull(index.find(listOf("close door")))
+        assertEquals("1", index.find(listOf("open door")))
+    }
+
+    @Test
+    fun updateKeepsOnlyGivenCommands() {
+        index.update(listOf(Command("2", "close_door", "Close door"), Command("6", "ring_bell", "Ring bell")))
+
+        assertNull(index.find(listOf("open door")))
+        assertEquals("2", index.find(listOf("close door")))
+        assertEquals("6", index.find(listOf("ring bell")))
+    }
+
+    @Test
+    fun emptyIndexMatchesNothing() {
+        index.update(emptyList())
+
+        assertNull(index.find(listOf("open door")))
+    }
+}
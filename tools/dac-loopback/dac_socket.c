@@ -0,0 +1,95 @@
+/*
+* This file is part of the IOTA Access distribution
+* (https://github.com/iotaledger/access)
+*
+* Copyright (c) 2020 IOTA Stiftung.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+/****************************************************************************
+ * \project Decentralized Access Control
+ * \file dac_socket.c
+ * \brief
+ * Blocking socket transport for libdac sessions on the host.
+ *
+ * \notes
+ * Reads and writes loop until the whole buffer is transferred, the same as
+ * TCPSocketObject does on the device side.
+ *
+ * \history
+ * 19.10.2026. Initial version.
+ ****************************************************************************/
+
+#include <errno.h>
+#include <string.h>
+#include <unistd.h>
+
+#include "dac_socket.h"
+
+static ssize_t socket_read(void *ext, void *data, unsigned short len)
+{
+	int fd = *(int *) ext;
+	ssize_t n;
+
+	/* libdac reads ahead, so whatever has arrived is returned */
+	do {
+		n = read(fd, data, len);
+	} while (n < 0 && errno == EINTR);
+
+	return n;
+}
+
+static ssize_t socket_write(void *ext, void *data, unsigned short len)
+{
+	int fd = *(int *) ext;
+	size_t done = 0;
+
+	while (done < len) {
+		ssize_t n = write(fd, (const unsigned char *) data + done, len - done);
+		if (n < 0 && errno == EINTR) continue;
+		if (n <= 0) return done > 0 ? (ssize_t) done : n;
+		done += (size_t) n;
+	}
+
+	return (ssize_t) done;
+}
+
+static int accept_any_key(unsigned char *key, int len)
+{
+	/* keys are not pinned, the same as in the application */
+	(void) key;
+	(void) len;
+	return DAC_OK;
+}
+
+int dac_socket_init(dacSession_t *session, int *fd, int server)
+{
+	int ret = server ? dacInitServer(session, fd) : dacInitClient(session, fd);
+
+	if (DAC_OK == ret) {
+		session->f_read = socket_read;
+		session->f_write = socket_write;
+		session->f_verify = accept_any_key;
+	}
+
+	return ret;
+}
+
+double dac_elapsed_ms(const struct timespec *start)
+{
+	struct timespec now;
+
+	clock_gettime(CLOCK_MONOTONIC, &now);
+	return (now.tv_sec - start->tv_sec) * 1e3 + (now.tv_nsec - start->tv_nsec) / 1e6;
+}
@@ -0,0 +1,60 @@
+/*
+* This file is part of the IOTA Access distribution
+* (https://github.com/iotaledger/access)
+*
+* Copyright (c) 2020 IOTA Stiftung.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+/****************************************************************************
+ * \project Decentralized Access Control
+ * \file dac_socket.h
+ * \brief
+ * Blocking socket transport for libdac sessions on the host.
+ *
+ * \notes
+ *
+ * \history
+ * 19.10.2026. Initial version.
+ ****************************************************************************/
+
+#ifndef DAC_SOCKET_H
+#define DAC_SOCKET_H
+
+#include <sys/types.h>
+#include <time.h>
+
+#include "libauthdac.h"
+
+/**
+ * @fn      int dac_socket_init(dacSession_t *session, int *fd, int server)
+ *
+ * @brief   Initializes session which reads from and writes to socket.
+ *
+ * @param   session    Session to be initialized.
+ * @param   fd         Connected socket, must outlive the session.
+ * @param   server     Non-zero for server side session.
+ *
+ * @return  DAC_OK if it succeeds, DAC_ERROR if it fails.
+ */
+int dac_socket_init(dacSession_t *session, int *fd, int server);
+
+/**
+ * @fn      double dac_elapsed_ms(const struct timespec *start)
+ *
+ * @brief   Milliseconds elapsed since start, measured by monotonic clock.
+ */
+double dac_elapsed_ms(const struct timespec *start);
+
+#endif /* DAC_SOCKET_H */
@@ -0,0 +1,239 @@
+/*
+* This file is part of the IOTA Access distribution
+* (https://github.com/iotaledger/access)
+*
+* Copyright (c) 2020 IOTA Stiftung.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+/****************************************************************************
+ * \project Decentralized Access Control
+ * \file load_test.c
+ * \brief
+ * Load test driver for TinyEmbedded servers.
+ *
+ * \notes
+ * Every worker repeatedly opens a connection, authenticates and sends a
+ * number of requests over it, the same way TCPClientImpl does: request
+ * string with terminating null, one response per request. Handshake and
+ * request latencies are reported together with the throughput.
+ *
+ * \history
+ * 19.10.2026. Initial version.
+ ****************************************************************************/
+
+#include <arpa/inet.h>
+#include <netdb.h>
+#include <netinet/in.h>
+#include <pthread.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/socket.h>
+#include <unistd.h>
+
+#include "dac_socket.h"
+#include "libdacCrypto.h"
+
+#define DEFAULT_REQUEST "{\"cmd\":\"resolve\",\"policy_id\":\"531565B8F40ECA5AAC55FEE6664A233E2D0312856B777D875EB9ACC4F85D1E99\",\"user_id\":\"load-test\"}"
+
+typedef struct worker {
+	pthread_t thread;
+	int sessions;
+	int requests;
+	double *handshakes;
+	double *round_trips;
+	int handshake_count;
+	int round_trip_count;
+	int errors;
+	long long received;
+} worker_t;
+
+static struct sockaddr_in server_address;
+static const char *request = DEFAULT_REQUEST;
+static unsigned char legacy_records = 0;
+
+static int connect_server(void)
+{
+	int fd = socket(AF_INET, SOCK_STREAM, 0);
+
+	if (fd < 0) return -1;
+	if (connect(fd, (struct sockaddr *) &server_address, sizeof(server_address)) < 0) {
+		close(fd);
+		return -1;
+	}
+	return fd;
+}
+
+static void run_session(worker_t *worker)
+{
+	dacSession_t session;
+	struct timespec start;
+	int fd;
+
+	clock_gettime(CLOCK_MONOTONIC, &start);
+	fd = connect_server();
+	if (fd < 0) {
+		worker->errors++;
+		return;
+	}
+	if (DAC_OK != dac_socket_init(&session, &fd, 0)
+			|| DAC_OK != dacSetOption(&session, "legacy", &legacy_records)
+			|| DAC_OK != dacAuthenticate(&session)) {
+		worker->errors++;
+		goto done;
+	}
+	worker->handshakes[worker->handshake_count++] = dac_elapsed_ms(&start);
+
+	for (int i = 0; i < worker->requests; i++) {
+		unsigned char *response = NULL;
+		unsigned short length = 0;
+
+		clock_gettime(CLOCK_MONOTONIC, &start);
+		if (DAC_OK != dacSend(&session, (const unsigned char *) request, (unsigned short) (strlen(request) + 1))
+				|| DAC_OK != dacReceive(&session, &response, &length)) {
+			worker->errors++;
+			break;
+		}
+		free(response);
+		worker->received += length;
+		worker->round_trips[worker->round_trip_count++] = dac_elapsed_ms(&start);
+	}
+
+done:
+	dacRelease(&session);
+	close(fd);
+}
+
+static void *run_worker(void *arg)
+{
+	worker_t *worker = arg;
+
+	for (int i = 0; i < worker->sessions; i++) {
+		run_session(worker);
+	}
+	return NULL;
+}
+
+static int compare_doubles(const void *a, const void *b)
+{
+	double x = *(const double *) a;
+	double y = *(const double *) b;
+	return (x > y) - (x < y);
+}
+
+static void print_latencies(const char *name, double *values, int count)
+{
+	double sum = 0;
+
+	if (count == 0) {
+		printf("%-10s no samples\n", name);
+		return;
+	}
+	qsort(values, (size_t) count, sizeof(double), compare_doubles);
+	for (int i = 0; i < count; i++) sum += values[i];
+	printf("%-10s n=%d avg=%.2f p50=%.2f p99=%.2f max=%.2f ms\n", name, count, sum / count,
+			values[count / 2], values[(int) (count * 0.99)], values[count - 1]);
+}
+
+static void usage(const char *name)
+{
+	fprintf(stderr, "usage: %s [-h host] [-p port] [-c workers] [-n sessions] [-r requests] [-m request] [-l]\n", name);
+}
+
+int main(int argc, char **argv)
+{
+	const char *host = "127.0.0.1";
+	int port = AUTH_SERVER_PORT;
+	int workers = 4;
+	int sessions = 100;
+	int requests = 10;
+	int opt;
+
+	while ((opt = getopt(argc, argv, "h:p:c:n:r:m:l")) != -1) {
+		switch (opt) {
+			case 'h': host = optarg; break;
+			case 'p': port = atoi(optarg); break;
+			case 'c': workers = atoi(optarg); break;
+			case 'n': sessions = atoi(optarg); break;
+			case 'r': requests = atoi(optarg); break;
+			case 'm': request = optarg; break;
+			case 'l': legacy_records = 1; break;
+			default:
+				usage(argv[0]);
+				return 1;
+		}
+	}
+	if (workers < 1 || sessions < 1 || requests < 0) {
+		usage(argv[0]);
+		return 1;
+	}
+
+	struct hostent *entry = gethostbyname(host);
+	if (NULL == entry) {
+		fprintf(stderr, "unknown host %s\n", host);
+		return 1;
+	}
+	memset(&server_address, 0, sizeof(server_address));
+	server_address.sin_family = AF_INET;
+	memcpy(&server_address.sin_addr, entry->h_addr_list[0], sizeof(server_address.sin_addr));
+	server_address.sin_port = htons((uint16_t) port);
+
+	worker_t *pool = calloc((size_t) workers, sizeof(worker_t));
+	if (NULL == pool) return 1;
+
+	struct timespec start;
+	clock_gettime(CLOCK_MONOTONIC, &start);
+	for (int i = 0; i < workers; i++) {
+		pool[i].sessions = sessions;
+		pool[i].requests = requests;
+		pool[i].handshakes = calloc((size_t) sessions, sizeof(double));
+		pool[i].round_trips = calloc((size_t) sessions * (requests > 0 ? requests : 1), sizeof(double));
+		if (NULL == pool[i].handshakes || NULL == pool[i].round_trips) return 1;
+		pthread_create(&pool[i].thread, NULL, run_worker, &pool[i]);
+	}
+
+	int handshake_count = 0;
+	int round_trip_count = 0;
+	int errors = 0;
+	long long received = 0;
+	for (int i = 0; i < workers; i++) {
+		pthread_join(pool[i].thread, NULL);
+		handshake_count += pool[i].handshake_count;
+		round_trip_count += pool[i].round_trip_count;
+		errors += pool[i].errors;
+		received += pool[i].received;
+	}
+	double elapsed = dac_elapsed_ms(&start);
+
+	double *handshakes = malloc(sizeof(double) * (handshake_count > 0 ? handshake_count : 1));
+	double *round_trips = malloc(sizeof(double) * (round_trip_count > 0 ? round_trip_count : 1));
+	if (NULL == handshakes || NULL == round_trips) return 1;
+	for (int i = 0, h = 0, r = 0; i < workers; i++) {
+		memcpy(handshakes + h, pool[i].handshakes, sizeof(double) * pool[i].handshake_count);
+		memcpy(round_trips + r, pool[i].round_trips, sizeof(double) * pool[i].round_trip_count);
+		h += pool[i].handshake_count;
+		r += pool[i].round_trip_count;
+	}
+
+	printf("crypto     %s\n", dacCryptoBackend());
+	printf("elapsed    %.0f ms, errors %d\n", elapsed, errors);
+	printf("throughput %.1f sessions/s, %.1f commands/s\n",
+			handshake_count * 1e3 / elapsed, round_trip_count * 1e3 / elapsed);
+	printf("received   %.2f MB/s\n", received / 1e3 / elapsed);
+	print_latencies("handshake", handshakes, handshake_count);
+	print_latencies("request", round_trips, round_trip_count);
+
+	return errors > 0 ? 2 : 0;
+}
@@ -0,0 +1,218 @@
+/*
+* This file is part of the IOTA Access distribution
+* (https://github.com/iotaledger/access)
+*
+* Copyright (c) 2020 IOTA Stiftung.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+/****************************************************************************
+ * \project Decentralized Access Control
+ * \file loopback_server.c
+ * \brief
+ * Access device emulator speaking the TinyEmbedded protocol.
+ *
+ * \notes
+ * Every connection is authenticated with dacServerAuthenticate and served
+ * in its own thread. Requests are answered with scripted responses:
+ *
+ *   resolve          {"response":"access granted"}
+ *   get_policy_list  content of the policy file, or two built-in policies
+ *   enable_policy    {"error":0,"message":"success"}
+ *
+ * Other commands get {"error":1,"message":"unknown command"}.
+ * With -l sessions stay in the legacy record mode, as on older devices.
+ *
+ * \history
+ * 19.10.2026. Initial version.
+ ****************************************************************************/
+
+#include <arpa/inet.h>
+#include <netinet/in.h>
+#include <pthread.h>
+#include <signal.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/socket.h>
+#include <unistd.h>
+
+#include "dac_socket.h"
+
+#define RESPONSE_GRANTED "{\"response\":\"access granted\"}"
+#define RESPONSE_ENABLED "{\"error\":0,\"message\":\"success\"}"
+#define RESPONSE_UNKNOWN "{\"error\":1,\"message\":\"unknown command\"}"
+
+/* largest response, with its terminating null, which fits a padded legacy record */
+#define MAX_RESPONSE_LENGTH 65518
+
+static const char *default_policies =
+	"[{\"policy_id\":\"531565B8F40ECA5AAC55FEE6664A233E2D0312856B777D875EB9ACC4F85D1E99\",\"action\":\"action#1\"},"
+	"{\"policy_id\":\"45C88599131156AED16B48FB6A57B8211F24B92877076164AC5D143A81730645\",\"action\":\"action#2\"}]";
+
+static const char *policies;
+static int verbose;
+static unsigned char legacy_records;
+
+/* Checks "cmd" of the request without a JSON parser, requests are generated by the app. */
+static int is_command(const char *request, const char *cmd)
+{
+	char pattern[64];
+
+	snprintf(pattern, sizeof(pattern), "\"cmd\":\"%s\"", cmd);
+	return NULL != strstr(request, pattern);
+}
+
+static const char *respond(const char *request)
+{
+	if (is_command(request, "resolve")) return RESPONSE_GRANTED;
+	if (is_command(request, "get_policy_list")) return policies;
+	if (is_command(request, "enable_policy")) return RESPONSE_ENABLED;
+	return RESPONSE_UNKNOWN;
+}
+
+static void *serve(void *arg)
+{
+	int fd = (int) (intptr_t) arg;
+	dacSession_t session;
+	struct timespec start;
+
+	clock_gettime(CLOCK_MONOTONIC, &start);
+	if (DAC_OK != dac_socket_init(&session, &fd, 1)
+			|| DAC_OK != dacSetOption(&session, "legacy", &legacy_records)
+			|| DAC_OK != dacAuthenticate(&session)) {
+		fprintf(stderr, "handshake failed\n");
+		goto done;
+	}
+	if (verbose) fprintf(stderr, "handshake %.2f ms\n", dac_elapsed_ms(&start));
+
+	for (;;) {
+		unsigned char *request = NULL;
+		unsigned short length = 0;
+
+		if (DAC_OK != dacReceive(&session, &request, &length)) break;
+
+		/* requests are null terminated strings, but do not rely on it */
+		char *text = malloc(length + 1);
+		if (NULL == text) {
+			free(request);
+			break;
+		}
+		memcpy(text, request, length);
+		text[length] = '\0';
+		free(request);
+
+		const char *response = respond(text);
+		if (verbose) fprintf(stderr, "> %s\n< %s\n", text, response);
+		free(text);
+
+		/* terminating null is sent as well, the app reads up to it */
+		if (DAC_OK != dacSend(&session, (const unsigned char *) response, (unsigned short) (strlen(response) + 1))) break;
+	}
+
+done:
+	dacRelease(&session);
+	close(fd);
+	return NULL;
+}
+
+static char *read_file(const char *path)
+{
+	FILE *file = fopen(path, "rb");
+	char *content = NULL;
+	long size;
+
+	if (NULL == file) return NULL;
+	if (0 == fseek(file, 0, SEEK_END) && (size = ftell(file)) >= 0 && 0 == fseek(file, 0, SEEK_SET)) {
+		content = malloc((size_t) size + 1);
+		if (NULL != content && fread(content, 1, (size_t) size, file) == (size_t) size) {
+			content[size] = '\0';
+		} else {
+			free(content);
+			content = NULL;
+		}
+	}
+	fclose(file);
+	return content;
+}
+
+static void usage(const char *name)
+{
+	fprintf(stderr, "usage: %s [-p port] [-f policy_list.json] [-l] [-v]\n", name);
+}
+
+int main(int argc, char **argv)
+{
+	int port = AUTH_SERVER_PORT;
+	int opt;
+
+	policies = default_policies;
+	while ((opt = getopt(argc, argv, "p:f:lv")) != -1) {
+		switch (opt) {
+			case 'p':
+				port = atoi(optarg);
+				break;
+			case 'f':
+				policies = read_file(optarg);
+				if (NULL == policies) {
+					fprintf(stderr, "unable to read %s\n", optarg);
+					return 1;
+				}
+				if (strlen(policies) + 1 > MAX_RESPONSE_LENGTH) {
+					fprintf(stderr, "%s does not fit a single record\n", optarg);
+					return 1;
+				}
+				break;
+			case 'l':
+				legacy_records = 1;
+				break;
+			case 'v':
+				verbose = 1;
+				break;
+			default:
+				usage(argv[0]);
+				return 1;
+		}
+	}
+
+	signal(SIGPIPE, SIG_IGN);
+
+	int listen_fd = socket(AF_INET, SOCK_STREAM, 0);
+	int reuse = 1;
+	struct sockaddr_in address;
+
+	memset(&address, 0, sizeof(address));
+	address.sin_family = AF_INET;
+	address.sin_addr.s_addr = htonl(INADDR_ANY);
+	address.sin_port = htons((uint16_t) port);
+
+	setsockopt(listen_fd, SOL_SOCKET, SO_REUSEADDR, &reuse, sizeof(reuse));
+	if (listen_fd < 0 || bind(listen_fd, (struct sockaddr *) &address, sizeof(address)) < 0 || listen(listen_fd, 64) < 0) {
+		perror("listen");
+		return 1;
+	}
+	fprintf(stderr, "listening on port %d\n", port);
+
+	for (;;) {
+		int fd = accept(listen_fd, NULL, NULL);
+		pthread_t thread;
+
+		if (fd < 0) continue;
+		if (0 != pthread_create(&thread, NULL, serve, (void *) (intptr_t) fd)) {
+			close(fd);
+			continue;
+		}
+		pthread_detach(thread);
+	}
+}